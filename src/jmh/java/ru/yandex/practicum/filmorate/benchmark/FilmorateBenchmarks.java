@@ -0,0 +1,128 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.exception.UserDataException;
+import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//набор замеров общий, количество потоков задают наследники
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class FilmorateBenchmarks {
+
+    @Benchmark
+    public Film getFilm(FilmorateState state) {
+        return state.filmService.getFilm(state.randomFilm());
+    }
+
+    @Benchmark
+    public List<Film> findAllFilms(FilmorateState state) {
+        return state.filmService.findAll();
+    }
+
+    //тело ответа GET /films без чтения из хранилища: готовые байты фильмов против разбора модели через рефлексию
+    @Benchmark
+    public void writeAllFilmsJson(FilmorateState state) throws IOException {
+        state.objectMapper.writeValue(OutputStream.nullOutputStream(), state.allFilms);
+    }
+
+    @Benchmark
+    public void writeAllFilmsJsonReflective(FilmorateState state) throws IOException {
+        state.reflectiveObjectMapper.writeValue(OutputStream.nullOutputStream(), state.allFilms);
+    }
+
+    @Benchmark
+    public List<Film> topLikedFilms(FilmorateState state) {
+        return state.filmService.topLikedFilms(10);
+    }
+
+    @Benchmark
+    public List<Film> getRecommendations(FilmorateState state) {
+        return state.filmService.getRecommendations(state.randomUser(), 10);
+    }
+
+    @Benchmark
+    public FacetedPage<Film> filterFilms(FilmorateState state) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int yearFrom = random.nextInt(1950, 2014);
+        return state.filmService.findAll(100, null, new FilmFilter(Set.of(1, 3), Set.of(random.nextInt(1, 6)),
+                yearFrom, yearFrom + 10, FilmSort.LIKES));
+    }
+
+    //тот же фильтр с фасетами напрямую через SQL — для сравнения с индексами в памяти.
+    //параметры случайные, иначе H2 отдаёт закэшированный результат повторного запроса
+    @Benchmark
+    public Object[] filterFilmsSql(FilmorateState state) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int mpaId = random.nextInt(1, 6);
+        int yearFrom = random.nextInt(1950, 2014);
+        String year = "EXTRACT(YEAR FROM f.release_date)";
+        String genre = "EXISTS (SELECT 1 FROM film_genres g WHERE g.film_id = f.film_id AND g.genre_id IN (1, 3))";
+        List<Film> films = state.jdbcTemplate.query("SELECT f.* FROM film f WHERE " + year + " BETWEEN ? AND ? " +
+                        "AND f.mpa_id = ? AND " + genre + " ORDER BY f.likes DESC, f.film_id LIMIT 100",
+                (rs, rowNum) -> new Film(rs.getInt("film_id"), rs.getString("name"), rs.getString("description"),
+                        rs.getObject("release_date", LocalDate.class), rs.getInt("duration"), rs.getInt("likes"),
+                        new LinkedHashSet<>(), new FilmMpa(rs.getInt("mpa_id"), null)),
+                yearFrom, yearFrom + 10, mpaId);
+        state.context.getBean(FilmStorage.class).loadGenre(films);
+        Integer total = state.jdbcTemplate.queryForObject("SELECT COUNT(*) FROM film f WHERE " + year +
+                " BETWEEN ? AND ? AND f.mpa_id = ? AND " + genre, Integer.class, yearFrom, yearFrom + 10, mpaId);
+        List<Map<String, Object>> genres = state.jdbcTemplate.queryForList("SELECT g.genre_id, COUNT(*) " +
+                "FROM film f JOIN film_genres g ON g.film_id = f.film_id WHERE " + year + " BETWEEN ? AND ? " +
+                "AND f.mpa_id = ? GROUP BY g.genre_id", yearFrom, yearFrom + 10, mpaId);
+        List<Map<String, Object>> mpa = state.jdbcTemplate.queryForList("SELECT f.mpa_id, COUNT(*) FROM film f " +
+                "WHERE " + year + " BETWEEN ? AND ? AND " + genre + " GROUP BY f.mpa_id", yearFrom, yearFrom + 10);
+        List<Map<String, Object>> years = state.jdbcTemplate.queryForList("SELECT " + year + ", COUNT(*) " +
+                "FROM film f WHERE f.mpa_id = ? AND " + genre + " GROUP BY " + year, mpaId);
+        return new Object[]{films, total, genres, mpa, years};
+    }
+
+    @Benchmark
+    public List<Film> searchFilms(FilmorateState state) {
+        //названия фильмов — «Film <число>», префикс из одной цифры раскрывается во множество терминов
+        return state.filmService.search("film " + ThreadLocalRandom.current().nextInt(1, 10), 10);
+    }
+
+    @Benchmark
+    public void setLike(FilmorateState state) {
+        state.filmService.setLike(state.randomFilm(), state.randomUser());
+    }
+
+    @Benchmark
+    public Film createFilm(FilmorateState state) {
+        return state.filmService.create(state.newFilm());
+    }
+
+    @Benchmark
+    public List<User> getMutualFriends(FilmorateState state) {
+        return state.userService.getMutualFriends(state.randomUser(), state.randomUser());
+    }
+
+    @Benchmark
+    public void addFriend(FilmorateState state) {
+        int id = state.randomUser();
+        int friendId = state.randomUser();
+        if (id == friendId) {
+            return;
+        }
+        try {
+            state.userService.addFriend(id, friendId);
+        } catch (UserDataException e) {
+            //уже друзья — удаляем, чтобы количество связей не росло бесконечно
+            state.userService.deleteFriend(id, friendId);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+//поднимает приложение на отдельной H2 в памяти и заполняет её данными заданного объёма;
+//engine выбирает хранилище фильмов и пользователей: db или memory
+@State(Scope.Benchmark)
+public class FilmorateState {
+    private static final int CHUNK_SIZE = 1000;
+
+    @Param("1000")
+    public int users;
+    @Param("1000")
+    public int films;
+    @Param("20")
+    public int likesPerUser;
+    @Param("20")
+    public int friendsPerUser;
+    @Param("db")
+    public String engine;
+
+    public ConfigurableApplicationContext context;
+    public FilmService filmService;
+    public UserService userService;
+    public JdbcTemplate jdbcTemplate;
+    //ObjectMapper приложения и тот же без модуля готового JSON — для сравнения сериализации
+    public ObjectMapper objectMapper;
+    public ObjectMapper reflectiveObjectMapper;
+    public List<Film> allFilms;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String memoryPath;
+        try {
+            memoryPath = Files.createTempDirectory("filmorate-memory").toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                //аргументами, а не properties(): значения по умолчанию перекрываются application.properties
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "--spring.main.banner-mode=off",
+                        "--logging.level.root=WARN",
+                        "--filmorate.storage.engine=" + engine,
+                        "--filmorate.storage.memory.path=" + memoryPath,
+                        "--filmorate.storage.memory.snapshot-interval-seconds=0");
+        filmService = context.getBean(FilmService.class);
+        userService = context.getBean(UserService.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        seed(context.getBean(FilmStorage.class), context.getBean(UserStorage.class));
+        objectMapper = context.getBean(ObjectMapper.class);
+        reflectiveObjectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        allFilms = filmService.findAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    public int randomUser() {
+        return ThreadLocalRandom.current().nextInt(1, users + 1);
+    }
+
+    public int randomFilm() {
+        return ThreadLocalRandom.current().nextInt(1, films + 1);
+    }
+
+    public Film newFilm() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LinkedHashSet<FilmGenre> genres = new LinkedHashSet<>();
+        genres.add(new FilmGenre(random.nextInt(1, 7), null));
+        return new Film(0, "Film " + random.nextInt(), "Benchmark film",
+                LocalDate.of(random.nextInt(1950, 2024), 1, 1), random.nextInt(60, 200), 0,
+                genres, new FilmMpa(random.nextInt(1, 6), null));
+    }
+
+    private void seed(FilmStorage filmStorage, UserStorage userStorage) {
+        Random random = new Random(42);
+        List<User> userChunk = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            userChunk.add(new User(0, "User " + i, "user" + i, "user" + i + "@mail.ru",
+                    LocalDate.of(1990, 1, 1), null));
+            if (userChunk.size() == CHUNK_SIZE || i == users - 1) {
+                userStorage.createAll(userChunk);
+                userChunk = new ArrayList<>();
+            }
+        }
+        List<Film> filmChunk = new ArrayList<>();
+        for (int i = 0; i < films; i++) {
+            filmChunk.add(newFilm());
+            if (filmChunk.size() == CHUNK_SIZE || i == films - 1) {
+                filmStorage.createAll(filmChunk);
+                filmChunk = new ArrayList<>();
+            }
+        }
+        List<FilmLike> likes = new ArrayList<>();
+        List<Friendship> friendships = new ArrayList<>();
+        for (int userId = 1; userId <= users; userId++) {
+            for (int i = 0; i < likesPerUser; i++) {
+                likes.add(new FilmLike(random.nextInt(films) + 1, userId));
+            }
+            for (int i = 0; i < friendsPerUser; i++) {
+                int friendId = random.nextInt(users) + 1;
+                if (friendId != userId) {
+                    friendships.add(new Friendship(userId, friendId));
+                }
+            }
+            if (likes.size() >= CHUNK_SIZE || userId == users) {
+                filmStorage.setLikes(likes);
+                likes = new ArrayList<>();
+            }
+            if (friendships.size() >= CHUNK_SIZE || userId == users) {
+                userStorage.addFriends(friendships);
+                friendships = new ArrayList<>();
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Threads;
+
+@Threads(4)
+public class MultiThreadBenchmark extends FilmorateBenchmarks {
+}
@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Threads;
+
+@Threads(1)
+public class SingleThreadBenchmark extends FilmorateBenchmarks {
+}
@@ -8,6 +8,7 @@ import ru.yandex.practicum.filmorate.exception.*;
 import ru.yandex.practicum.filmorate.model.ErrorResponse;
 
 import javax.validation.ValidationException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestControllerAdvice
 public class ErrorHandler {
@@ -60,6 +61,12 @@ public class ErrorHandler {
         return new ErrorResponse(e.getMessage());
     }
 
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ErrorResponse handleRejectedExecutionException(final RejectedExecutionException e) {
+        return new ErrorResponse("Сервер перегружен, повторите запрос позже");
+    }
+
     @ExceptionHandler
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ErrorResponse handleThrowable(final Throwable e) {
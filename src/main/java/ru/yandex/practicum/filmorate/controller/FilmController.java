@@ -2,12 +2,23 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.executor.RequestExecutors;
+import ru.yandex.practicum.filmorate.model.BatchResult;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import javax.validation.Valid;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @RestController
@@ -15,46 +26,97 @@ import java.util.List;
 public class FilmController {
 
     private final FilmService filmService;
+    private final RequestExecutors executors;
 
     @Autowired
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService, RequestExecutors executors) {
         this.filmService = filmService;
+        this.executors = executors;
     }
 
     @GetMapping("{id}")
-    public Film getFilm(@PathVariable("id") int id) {
-        return filmService.getFilm(id);
+    public CompletableFuture<Film> getFilm(@PathVariable("id") int id, WebRequest request) {
+        //ETag проверяется без обращения к БД, поэтому прямо в потоке запроса
+        if (request.checkNotModified(filmService.getFilmETag(id))) {
+            return null;
+        }
+        return executors.read(() -> filmService.getFilm(id));
     }
 
     @GetMapping
-    public List<Film> findAll() {
-        return filmService.findAll();
+    public CompletableFuture<ResponseEntity<List<Film>>> findAll(@RequestParam(required = false) Integer limit,
+                                                                 @RequestParam(required = false) String after,
+                                                                 @RequestParam(required = false) Set<Integer> genre,
+                                                                 @RequestParam(required = false) Set<Integer> mpa,
+                                                                 @RequestParam(required = false) Integer yearFrom,
+                                                                 @RequestParam(required = false) Integer yearTo,
+                                                                 @RequestParam(required = false) String sort) {
+        if (genre == null && mpa == null && yearFrom == null && yearTo == null && sort == null) {
+            return executors.read(() -> PageResponses.of(filmService.findAll(limit, after)));
+        }
+        //с фильтрами ответ собирается по индексам в памяти и дополняется счётчиками фасетов
+        FilmFilter filter = new FilmFilter(genre, mpa, yearFrom, yearTo, FilmService.parseSort(sort));
+        return executors.read(() -> PageResponses.of(filmService.findAll(limit, after, filter)));
+    }
+
+    @GetMapping("search")
+    public CompletableFuture<List<Film>> search(@RequestParam("q") String query,
+                                                @RequestParam(defaultValue = "10") int limit) {
+        return executors.read(() -> filmService.search(query, limit));
+    }
+
+    @GetMapping(value = "export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(filmService::exportFilms);
     }
 
     @PostMapping
-    public Film create(@Valid @RequestBody Film film) {
-        return filmService.create(film);
+    public CompletableFuture<Film> create(@Valid @RequestBody Film film) {
+        return executors.write(() -> filmService.create(film));
+    }
+
+    @PostMapping("batch")
+    public CompletableFuture<BatchResult> createAll(InputStream body) {
+        return executors.write(() -> filmService.importFilms(body));
     }
 
     @PutMapping
-    public Film put(@Valid @RequestBody Film film) {
-        return filmService.put(film);
+    public CompletableFuture<Film> put(@Valid @RequestBody Film film) {
+        return executors.write(() -> filmService.put(film));
     }
 
     @PutMapping("{id}/like/{userId}")
-    public void setLike(@PathVariable("id") int id,
-                        @PathVariable("userId") int userId) {
-        filmService.setLike(id, userId);
+    public CompletableFuture<Void> setLike(@PathVariable("id") int id,
+                                           @PathVariable("userId") int userId) {
+        return executors.write(() -> filmService.setLike(id, userId));
     }
 
     @DeleteMapping("{id}/like/{userId}")
-    public void deleteLike(@PathVariable("id") int id,
-                           @PathVariable("userId") int userId) {
-        filmService.deleteLike(id, userId);
+    public CompletableFuture<Void> deleteLike(@PathVariable("id") int id,
+                                              @PathVariable("userId") int userId) {
+        return executors.write(() -> filmService.deleteLike(id, userId));
+    }
+
+    @PostMapping("likes/batch")
+    public CompletableFuture<BatchResult> setLikes(InputStream body) {
+        return executors.write(() -> filmService.importLikes(body));
     }
 
     @GetMapping("popular")
-    public List<Film> getTopLikedFilms(@RequestParam(defaultValue = "10") int count) {
-        return filmService.topLikedFilms(count);
+    public CompletableFuture<List<Film>> getTopLikedFilms(@RequestParam(defaultValue = "10") int count,
+                                                          WebRequest request) {
+        if (request.checkNotModified(filmService.getTopLikedFilmsETag(count))) {
+            return null;
+        }
+        return executors.read(() -> filmService.topLikedFilms(count));
+    }
+
+    @GetMapping("trending")
+    public CompletableFuture<List<Film>> getTrendingFilms(@RequestParam(defaultValue = "24h") String window,
+                                                          @RequestParam(defaultValue = "10") int count) {
+        TrendingWindow trendingWindow = FilmService.parseWindow(window);
+        return executors.read(() -> filmService.trendingFilms(trendingWindow, count));
     }
 }
\ No newline at end of file
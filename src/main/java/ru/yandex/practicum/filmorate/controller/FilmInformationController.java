@@ -5,6 +5,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.model.FilmGenre;
 import ru.yandex.practicum.filmorate.model.FilmMpa;
 import ru.yandex.practicum.filmorate.service.FilmService;
@@ -23,22 +24,38 @@ public class FilmInformationController {
     }
 
     @GetMapping("/genres")
-    public Set<FilmGenre> getAllGenres() {
+    public Set<FilmGenre> getAllGenres(WebRequest request) {
+        if (request.checkNotModified(filmService.getFilmInformationETag())) {
+            return null;
+        }
         return filmService.getAllGenres();
     }
 
     @GetMapping("/genres/{genreId}")
-    public FilmGenre getGenre(@PathVariable int genreId) {
-        return filmService.getGenre(genreId);
+    public FilmGenre getGenre(@PathVariable int genreId, WebRequest request) {
+        //сначала проверяем существование, чтобы на несуществующий id не ответить 304
+        FilmGenre genre = filmService.getGenre(genreId);
+        if (request.checkNotModified(filmService.getFilmInformationETag())) {
+            return null;
+        }
+        return genre;
     }
 
     @GetMapping("/mpa")
-    public Set<FilmMpa> getAllMpa() {
+    public Set<FilmMpa> getAllMpa(WebRequest request) {
+        if (request.checkNotModified(filmService.getFilmInformationETag())) {
+            return null;
+        }
         return filmService.getAllMpa();
     }
 
     @GetMapping("/mpa/{mpaId}")
-    public FilmMpa getMpa(@PathVariable int mpaId) {
-        return filmService.getMpa(mpaId);
+    public FilmMpa getMpa(@PathVariable int mpaId, WebRequest request) {
+        //сначала проверяем существование, чтобы на несуществующий id не ответить 304
+        FilmMpa mpa = filmService.getMpa(mpaId);
+        if (request.checkNotModified(filmService.getFilmInformationETag())) {
+            return null;
+        }
+        return mpa;
     }
 }
\ No newline at end of file
@@ -0,0 +1,170 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.FilmMpa;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//фильмы, жанры и рейтинги пишутся в JsonGenerator готовыми байтами вместо разбора модели через рефлексию.
+//Жанр и рейтинг кодируются один раз, фильм — при первой отдаче и после каждого изменения.
+//Закэшированные байты используются, только если объект совпадает с тем, из которого они получены:
+//версии из FilmVersions для этого не подходят, реплика может вернуть фильм старее текущей версии
+@Component
+public class FilmJsonModule extends SimpleModule {
+    private final JsonFactory factory = new JsonFactory();
+    //справочники маленькие, поэтому без ограничения размера
+    private final Map<Integer, Encoded<FilmGenre>> genres = new ConcurrentHashMap<>();
+    private final Map<Integer, Encoded<FilmMpa>> mpa = new ConcurrentHashMap<>();
+    private final Cache<Integer, Encoded<Film>> films;
+
+    public FilmJsonModule(MeterRegistry registry,
+                          @Value("${filmorate.json.films.maximum-size:10000}") long maximumSize) {
+        super("filmorate-json");
+        films = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, films, "film-json");
+        addSerializer(Film.class, new StdSerializer<>(Film.class) {
+            @Override
+            public void serialize(Film film, JsonGenerator generator, SerializerProvider provider)
+                    throws IOException {
+                generator.writeRawValue(encode(film));
+            }
+        });
+        addSerializer(FilmGenre.class, new StdSerializer<>(FilmGenre.class) {
+            @Override
+            public void serialize(FilmGenre genre, JsonGenerator generator, SerializerProvider provider)
+                    throws IOException {
+                generator.writeRawValue(encode(genre));
+            }
+        });
+        addSerializer(FilmMpa.class, new StdSerializer<>(FilmMpa.class) {
+            @Override
+            public void serialize(FilmMpa mpa, JsonGenerator generator, SerializerProvider provider)
+                    throws IOException {
+                generator.writeRawValue(encode(mpa));
+            }
+        });
+    }
+
+    private RawJson encode(Film film) throws IOException {
+        Encoded<Film> encoded = films.getIfPresent(film.getId());
+        if (encoded != null && encoded.value.equals(film)) {
+            return encoded.json;
+        }
+        //модель изменяемая, поэтому для сравнения храним свою копию
+        Film copy = new Film(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+                film.getDuration(), film.getLikes(), null,
+                film.getMpa() == null ? null : new FilmMpa(film.getMpa().getId(), film.getMpa().getName()));
+        if (film.getGenres() != null) {
+            copy.setGenres(new LinkedHashSet<>());
+            for (FilmGenre genre : film.getGenres()) {
+                copy.getGenres().add(genre == null ? null : new FilmGenre(genre.getId(), genre.getName()));
+            }
+        }
+        RawJson json = write(generator -> writeFilm(copy, generator));
+        films.put(film.getId(), new Encoded<>(copy, json));
+        return json;
+    }
+
+    private RawJson encode(FilmGenre genre) throws IOException {
+        Encoded<FilmGenre> encoded = genres.get(genre.getId());
+        if (encoded != null && encoded.value.equals(genre)) {
+            return encoded.json;
+        }
+        FilmGenre copy = new FilmGenre(genre.getId(), genre.getName());
+        RawJson json = write(generator -> writeReference(copy.getId(), copy.getName(), generator));
+        genres.put(copy.getId(), new Encoded<>(copy, json));
+        return json;
+    }
+
+    private RawJson encode(FilmMpa rating) throws IOException {
+        Encoded<FilmMpa> encoded = mpa.get(rating.getId());
+        if (encoded != null && encoded.value.equals(rating)) {
+            return encoded.json;
+        }
+        FilmMpa copy = new FilmMpa(rating.getId(), rating.getName());
+        RawJson json = write(generator -> writeReference(copy.getId(), copy.getName(), generator));
+        mpa.put(copy.getId(), new Encoded<>(copy, json));
+        return json;
+    }
+
+    //порядок и формат полей совпадают с тем, что Jackson выводит для модели по умолчанию
+    private void writeFilm(Film film, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", film.getId());
+        generator.writeStringField("name", film.getName());
+        generator.writeStringField("description", film.getDescription());
+        generator.writeStringField("releaseDate",
+                film.getReleaseDate() == null ? null : film.getReleaseDate().toString());
+        generator.writeNumberField("duration", film.getDuration());
+        generator.writeNumberField("likes", film.getLikes());
+        generator.writeFieldName("genres");
+        if (film.getGenres() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeStartArray();
+            for (FilmGenre genre : film.getGenres()) {
+                if (genre == null) {
+                    generator.writeNull();
+                } else {
+                    generator.writeRawValue(encode(genre));
+                }
+            }
+            generator.writeEndArray();
+        }
+        generator.writeFieldName("mpa");
+        if (film.getMpa() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeRawValue(encode(film.getMpa()));
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeReference(int id, String name, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", id);
+        generator.writeStringField("name", name);
+        generator.writeEndObject();
+    }
+
+    private RawJson write(JsonWriter writer) throws IOException {
+        ByteArrayBuilder bytes = new ByteArrayBuilder();
+        try (JsonGenerator generator = factory.createGenerator(bytes)) {
+            writer.write(generator);
+        }
+        return new RawJson(bytes.toByteArray());
+    }
+
+    private interface JsonWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    private static final class Encoded<T> {
+        private final T value;
+        private final RawJson json;
+
+        private Encoded(T value, RawJson json) {
+            this.value = value;
+            this.json = json;
+        }
+    }
+}
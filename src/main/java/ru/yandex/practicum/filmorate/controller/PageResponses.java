@@ -0,0 +1,40 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.http.ResponseEntity;
+import ru.yandex.practicum.filmorate.model.FacetedPage;
+import ru.yandex.practicum.filmorate.model.Page;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+final class PageResponses {
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+    //фасет передаётся заголовком X-Facet-<название> вида «1=12,3=5»
+    static final String FACET_HEADER_PREFIX = "X-Facet-";
+
+    private PageResponses() {
+    }
+
+    static <T> ResponseEntity<List<T>> of(Page<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
+    }
+
+    static <T> ResponseEntity<List<T>> of(FacetedPage<T> page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(TOTAL_COUNT_HEADER, String.valueOf(page.getTotal()));
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        page.getFacets().forEach((name, counts) -> response.header(FACET_HEADER_PREFIX + name,
+                counts.entrySet().stream()
+                        .map(count -> count.getKey() + "=" + count.getValue())
+                        .collect(Collectors.joining(","))));
+        return response.body(page.getItems());
+    }
+}
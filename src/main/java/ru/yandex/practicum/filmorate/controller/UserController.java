@@ -2,12 +2,21 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.executor.RequestExecutors;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import javax.validation.Valid;
+import java.io.InputStream;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 @RestController
@@ -15,52 +24,92 @@ import java.util.List;
 public class UserController {
 
     private final UserService userService;
+    private final FilmService filmService;
+    private final RequestExecutors executors;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, FilmService filmService, RequestExecutors executors) {
         this.userService = userService;
+        this.filmService = filmService;
+        this.executors = executors;
     }
 
     @GetMapping("{id}")
-    public User getUser(@PathVariable("id") int id) {
-        return userService.getUser(id);
+    public CompletableFuture<User> getUser(@PathVariable("id") int id) {
+        return executors.read(() -> userService.getUser(id));
     }
 
     @GetMapping
-    public List<User> findAll() {
-        return userService.findAll();
+    public CompletableFuture<ResponseEntity<List<User>>> findAll(@RequestParam(required = false) Integer limit,
+                                                                 @RequestParam(required = false) String after) {
+        return executors.read(() -> PageResponses.of(userService.findAll(limit, after)));
+    }
+
+    @GetMapping(value = "export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(userService::exportUsers);
     }
 
     @PostMapping
-    public User create(@Valid @RequestBody User user) {
-        return userService.create(user);
+    public CompletableFuture<User> create(@Valid @RequestBody User user) {
+        return executors.write(() -> userService.create(user));
+    }
+
+    @PostMapping("batch")
+    public CompletableFuture<BatchResult> createAll(InputStream body) {
+        return executors.write(() -> userService.importUsers(body));
     }
 
     @PutMapping
-    public User update(@Valid @RequestBody User user) {
-        return userService.update(user);
+    public CompletableFuture<User> update(@Valid @RequestBody User user) {
+        return executors.write(() -> userService.update(user));
     }
 
     @PutMapping("{id}/friends/{friendId}")
-    public void addFriend(@PathVariable("id") int id,
-                          @PathVariable("friendId") int friendId) {
-        userService.addFriend(id, friendId);
+    public CompletableFuture<Void> addFriend(@PathVariable("id") int id,
+                                             @PathVariable("friendId") int friendId) {
+        return executors.write(() -> userService.addFriend(id, friendId));
+    }
+
+    @PutMapping("{id}/friends")
+    public CompletableFuture<List<User>> setFriends(@PathVariable("id") int id,
+                                                    @RequestBody List<Integer> friendIds) {
+        return executors.write(() -> userService.setFriends(id, friendIds));
+    }
+
+    @PostMapping("friends/batch")
+    public CompletableFuture<BatchResult> addFriends(InputStream body) {
+        return executors.write(() -> userService.importFriends(body));
     }
 
     @DeleteMapping("{id}/friends/{friendId}")
-    public void deleteFriend(@PathVariable("id") int id,
-                             @PathVariable("friendId") int friendId) {
-        userService.deleteFriend(id, friendId);
+    public CompletableFuture<Void> deleteFriend(@PathVariable("id") int id,
+                                                @PathVariable("friendId") int friendId) {
+        return executors.write(() -> userService.deleteFriend(id, friendId));
     }
 
     @GetMapping("{id}/friends")
-    public List<User> listOfFriends(@PathVariable("id") int id) {
-        return userService.getFriends(id);
+    public CompletableFuture<List<User>> listOfFriends(@PathVariable("id") int id) {
+        return executors.read(() -> userService.getFriends(id));
     }
 
     @GetMapping("{id}/friends/common/{otherId}")
-    public List<User> listOfMutualFriends(@PathVariable("id") int id,
-                                          @PathVariable("otherId") int otherId) {
-        return userService.getMutualFriends(id, otherId);
+    public CompletableFuture<List<User>> listOfMutualFriends(@PathVariable("id") int id,
+                                                             @PathVariable("otherId") int otherId) {
+        return executors.read(() -> userService.getMutualFriends(id, otherId));
+    }
+
+    @GetMapping("{id}/friends/suggestions")
+    public CompletableFuture<List<User>> friendSuggestions(@PathVariable("id") int id,
+                                                           @RequestParam(defaultValue = "10") int limit) {
+        return executors.read(() -> userService.getFriendSuggestions(id, limit));
+    }
+
+    @GetMapping("{id}/recommendations")
+    public CompletableFuture<List<Film>> recommendations(@PathVariable("id") int id,
+                                                         @RequestParam(defaultValue = "10") int count) {
+        return executors.read(() -> filmService.getRecommendations(id, count));
     }
-}
\ No newline at end of file
+}
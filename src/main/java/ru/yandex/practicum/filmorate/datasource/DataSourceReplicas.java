@@ -0,0 +1,155 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+//основная БД и реплики для чтения. Отставание реплики измеряется меткой времени, которую основная БД
+//периодически записывает в replication_heartbeat: реплика содержит все изменения, зафиксированные
+//до метки, которую она уже получила
+@Slf4j
+public class DataSourceReplicas implements MeterBinder, SmartInitializingSingleton, Closeable {
+    private static final String WRITE_HEARTBEAT =
+            "MERGE INTO replication_heartbeat (id, beat) KEY (id) VALUES (1, ?)";
+    private static final String READ_HEARTBEAT = "SELECT beat FROM replication_heartbeat WHERE id = 1";
+    //реплика недоступна или ещё не получила ни одной метки
+    private static final long UNKNOWN = Long.MIN_VALUE;
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagMs;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder replicaReads = new LongAdder();
+    private final ScheduledExecutorService heartbeat;
+    private final long heartbeatIntervalMs;
+
+    public DataSourceReplicas(DataSource primary, List<DataSource> replicas, long maxLagMs, long heartbeatIntervalMs) {
+        this.primary = primary;
+        this.maxLagMs = maxLagMs;
+        for (int i = 0; i < replicas.size(); i++) {
+            this.replicas.add(new Replica("replica-" + (i + 1), replicas.get(i)));
+        }
+        heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "filmorate-replica-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+    }
+
+    //таблица меток создаётся schema.sql, поэтому метки начинают писаться после инициализации БД
+    @Override
+    public void afterSingletonsInstantiated() {
+        refresh();
+        heartbeat.scheduleWithFixedDelay(this::refresh, heartbeatIntervalMs, heartbeatIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    //реестр метрик сам зависит от DataSource, поэтому метрики регистрируются уже после создания пулов
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Replica replica : replicas) {
+            Gauge.builder("filmorate.datasource.replica.lag", replica, Replica::lag)
+                    .tag("replica", replica.name)
+                    .baseUnit("milliseconds")
+                    .register(registry);
+        }
+        FunctionCounter.builder("filmorate.datasource.reads", primaryReads, LongAdder::sum)
+                .tag("target", "primary")
+                .register(registry);
+        FunctionCounter.builder("filmorate.datasource.reads", replicaReads, LongAdder::sum)
+                .tag("target", "replica")
+                .register(registry);
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    //записывает новую метку на основную БД и перечитывает полученные репликами метки
+    public void refresh() {
+        try {
+            new JdbcTemplate(primary).update(WRITE_HEARTBEAT, System.currentTimeMillis());
+        } catch (DataAccessException e) {
+            log.warn("Не удалось записать метку репликации на основную БД", e);
+        }
+        for (Replica replica : replicas) {
+            try {
+                List<Long> beat = replica.jdbcTemplate.queryForList(READ_HEARTBEAT, Long.class);
+                replica.beat = beat.isEmpty() ? UNKNOWN : beat.get(0);
+            } catch (DataAccessException e) {
+                if (replica.beat != UNKNOWN) {
+                    log.warn("Реплика " + replica.name + " недоступна, чтение идёт с основной БД", e);
+                }
+                replica.beat = UNKNOWN;
+            }
+        }
+    }
+
+    //реплика, которая отстаёт не больше допустимого и уже получила запись клиента; иначе основная БД.
+    //сравнение строгое: метка с тем же значением, что и время записи, могла быть записана до её фиксации
+    DataSource forRead(long lastWrite) {
+        long required = Math.max(lastWrite, System.currentTimeMillis() - maxLagMs);
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.beat != UNKNOWN && replica.beat > required) {
+                replicaReads.increment();
+                return replica.dataSource;
+            }
+        }
+        primaryReads.increment();
+        return primary;
+    }
+
+    @Override
+    public void close() throws IOException {
+        heartbeat.shutdownNow();
+        close(primary);
+        for (Replica replica : replicas) {
+            close(replica.dataSource);
+        }
+    }
+
+    private static void close(DataSource dataSource) throws IOException {
+        if (dataSource instanceof Closeable) {
+            ((Closeable) dataSource).close();
+        }
+    }
+
+    private static final class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private final JdbcTemplate jdbcTemplate;
+        private volatile long beat = UNKNOWN;
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+            jdbcTemplate = new JdbcTemplate(dataSource);
+        }
+
+        private double lag() {
+            long current = beat;
+            return current == UNKNOWN ? Double.NaN : System.currentTimeMillis() - current;
+        }
+    }
+}
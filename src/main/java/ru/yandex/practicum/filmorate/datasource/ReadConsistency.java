@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+//время последней записи клиента: чтение с реплики допустимо, только если реплика её уже получила.
+//контекст живёт в рамках HTTP-запроса, между запросами время переносится в cookie
+public class ReadConsistency {
+    private static final ThreadLocal<ReadConsistency> CURRENT = new ThreadLocal<>();
+
+    private volatile long lastWrite;
+    private volatile boolean written;
+
+    public ReadConsistency(long lastWrite) {
+        this.lastWrite = lastWrite;
+    }
+
+    public static ReadConsistency current() {
+        return CURRENT.get();
+    }
+
+    public static ReadConsistency bind(ReadConsistency consistency) {
+        ReadConsistency previous = CURRENT.get();
+        CURRENT.set(consistency);
+        return previous;
+    }
+
+    public static void restore(ReadConsistency previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    //время в миллисекундах, когда изменения клиента уже зафиксированы на основной БД
+    void markWrite(long time) {
+        lastWrite = Math.max(lastWrite, time);
+        written = true;
+    }
+
+    public long getLastWrite() {
+        return lastWrite;
+    }
+
+    //была ли запись в рамках текущего запроса
+    public boolean isWritten() {
+        return written;
+    }
+}
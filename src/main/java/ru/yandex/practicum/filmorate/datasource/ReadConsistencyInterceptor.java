@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+//переносит время последней записи клиента между запросами в cookie:
+//пока реплики его не догнали, чтение этого клиента идёт с основной БД
+public class ReadConsistencyInterceptor implements AsyncHandlerInterceptor {
+    public static final String COOKIE = "filmorate-last-write";
+    private static final String CONSISTENCY_ATTRIBUTE = ReadConsistencyInterceptor.class.getName() + ".consistency";
+    private static final String COOKIE_SENT_ATTRIBUTE = ReadConsistencyInterceptor.class.getName() + ".sent";
+
+    private final int cookieMaxAge;
+
+    public ReadConsistencyInterceptor(long maxLagMs) {
+        //после max-lag любая пригодная реплика уже содержит запись, cookie больше не нужна
+        cookieMaxAge = (int) Math.max(1, (maxLagMs + 999) / 1000);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        //при асинхронной обработке метод вызывается повторно, контекст должен остаться тем же
+        ReadConsistency consistency = (ReadConsistency) request.getAttribute(CONSISTENCY_ATTRIBUTE);
+        if (consistency == null) {
+            consistency = new ReadConsistency(readLastWrite(request));
+            request.setAttribute(CONSISTENCY_ATTRIBUTE, consistency);
+        } else {
+            //запись выполнялась в потоке пула, ответ ещё не зафиксирован
+            addCookie(request, response, consistency);
+        }
+        ReadConsistency.bind(consistency);
+        return true;
+    }
+
+    @Override
+    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+                           ModelAndView modelAndView) {
+        ReadConsistency consistency = (ReadConsistency) request.getAttribute(CONSISTENCY_ATTRIBUTE);
+        if (consistency != null) {
+            addCookie(request, response, consistency);
+        }
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        ReadConsistency.restore(null);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        ReadConsistency.restore(null);
+    }
+
+    private void addCookie(HttpServletRequest request, HttpServletResponse response, ReadConsistency consistency) {
+        if (!consistency.isWritten() || request.getAttribute(COOKIE_SENT_ATTRIBUTE) != null) {
+            return;
+        }
+        request.setAttribute(COOKIE_SENT_ATTRIBUTE, Boolean.TRUE);
+        Cookie cookie = new Cookie(COOKIE, Long.toString(consistency.getLastWrite()));
+        cookie.setPath("/");
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge(cookieMaxAge);
+        response.addCookie(cookie);
+    }
+
+    private static long readLastWrite(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return 0;
+        }
+        for (Cookie cookie : cookies) {
+            if (COOKIE.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,79 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+//транзакции только для чтения идут на реплики, остальное — на основную БД.
+//признак readOnly известен лишь после начала транзакции, поэтому источник оборачивается
+//в LazyConnectionDataSourceProxy, который берёт соединение при первом запросе
+public class ReadWriteRoutingDataSource extends AbstractDataSource {
+    private static final Pattern DATA_CHANGE_DELTA_TABLE = Pattern.compile("\\b(OLD|NEW|FINAL)\\s+TABLE\\s*\\(");
+
+    private final DataSourceReplicas replicas;
+
+    public ReadWriteRoutingDataSource(DataSourceReplicas replicas) {
+        this.replicas = replicas;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        ReadConsistency consistency = ReadConsistency.current();
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return replicas.forRead(consistency == null ? 0 : consistency.getLastWrite()).getConnection();
+        }
+        Connection connection = replicas.getPrimary().getConnection();
+        return consistency == null ? connection : markWriteOnClose(connection, consistency);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLException("Маршрутизация не поддерживает явные учётные данные");
+    }
+
+    //соединение закрывается после фиксации транзакции или автокоммита, поэтому с этого момента
+    //изменения клиента точно есть на основной БД. Чтение через основную БД время записи не сдвигает
+    private static Connection markWriteOnClose(Connection connection, ReadConsistency consistency) {
+        AtomicBoolean modifying = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(ReadWriteRoutingDataSource.class.getClassLoader(),
+                new Class[]{Connection.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "prepareStatement":
+                        case "prepareCall":
+                            if (!isQuery((String) args[0])) {
+                                modifying.set(true);
+                            }
+                            break;
+                        case "createStatement":
+                            //текст запроса станет известен позже, считаем его изменением
+                            modifying.set(true);
+                            break;
+                        default:
+                            break;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        if (method.getName().equals("close") && modifying.get()) {
+                            consistency.markWrite(System.currentTimeMillis());
+                        }
+                    }
+                });
+    }
+
+    //SELECT ... FROM FINAL TABLE (UPDATE ...) в H2 тоже изменяет данные
+    private static boolean isQuery(String sql) {
+        String statement = sql.stripLeading().toUpperCase(Locale.ROOT);
+        return (statement.startsWith("SELECT") || statement.startsWith("WITH"))
+                && !DATA_CHANGE_DELTA_TABLE.matcher(statement).find();
+    }
+}
@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+
+//включается, если заданы адреса реплик; иначе используется обычный DataSource Spring Boot
+@Configuration
+@ConditionalOnExpression("!'${filmorate.datasource.replicas.urls:}'.isEmpty()")
+public class ReplicaRoutingConfiguration implements WebMvcConfigurer {
+    private final long maxLagMs;
+
+    public ReplicaRoutingConfiguration(@Value("${filmorate.datasource.replicas.max-lag-ms:1000}") long maxLagMs) {
+        this.maxLagMs = maxLagMs;
+    }
+
+    @Bean(destroyMethod = "close")
+    public DataSourceReplicas dataSourceReplicas(DataSourceProperties properties,
+                                                 @Value("${filmorate.datasource.replicas.urls}") String[] urls,
+                                                 @Value("${filmorate.datasource.replicas.heartbeat-interval-ms:200}")
+                                                 long heartbeatIntervalMs) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("filmorate-primary");
+        List<DataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < urls.length; i++) {
+            HikariDataSource replica = properties.initializeDataSourceBuilder().type(HikariDataSource.class)
+                    .url(urls[i].trim())
+                    .build();
+            replica.setPoolName("filmorate-replica-" + (i + 1));
+            replicas.add(replica);
+        }
+        return new DataSourceReplicas(primary, replicas, maxLagMs, heartbeatIntervalMs);
+    }
+
+    //единственный DataSource приложения: пулы основной БД и реплик бинами не являются,
+    //поэтому запросы не замеряются дважды
+    @Bean
+    public DataSource dataSource(DataSourceReplicas replicas) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy();
+        //иначе прокси возьмёт соединение, чтобы узнать значения по умолчанию
+        dataSource.setDefaultAutoCommit(true);
+        dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        dataSource.setTargetDataSource(new ReadWriteRoutingDataSource(replicas));
+        dataSource.afterPropertiesSet();
+        return dataSource;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ReadConsistencyInterceptor(maxLagMs));
+    }
+}
@@ -0,0 +1,94 @@
+package ru.yandex.practicum.filmorate.executor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.datasource.ReadConsistency;
+import ru.yandex.practicum.filmorate.metrics.StatementStatistics;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+//чтение и запись выполняются в отдельных ограниченных пулах, чтобы поток изменений не занимал потоки,
+//обслуживающие чтение. При переполненной очереди задача сразу отклоняется, а клиент получает 503
+@Component
+public class RequestExecutors {
+    private final boolean enabled;
+    private final ThreadPoolExecutor reads;
+    private final ThreadPoolExecutor writes;
+
+    public RequestExecutors(MeterRegistry registry,
+                            @Value("${filmorate.executors.enabled:true}") boolean enabled,
+                            @Value("${filmorate.executors.read.threads:8}") int readThreads,
+                            @Value("${filmorate.executors.read.queue-capacity:200}") int readQueueCapacity,
+                            @Value("${filmorate.executors.write.threads:2}") int writeThreads,
+                            @Value("${filmorate.executors.write.queue-capacity:100}") int writeQueueCapacity) {
+        this.enabled = enabled;
+        reads = createExecutor(registry, "read", readThreads, readQueueCapacity);
+        writes = createExecutor(registry, "write", writeThreads, writeQueueCapacity);
+    }
+
+    public <T> CompletableFuture<T> read(Supplier<T> action) {
+        return submit(reads, action);
+    }
+
+    public <T> CompletableFuture<T> write(Supplier<T> action) {
+        return submit(writes, action);
+    }
+
+    public CompletableFuture<Void> write(Runnable action) {
+        return submit(writes, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reads.shutdown();
+        writes.shutdown();
+    }
+
+    private <T> CompletableFuture<T> submit(ThreadPoolExecutor executor, Supplier<T> action) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(action.get());
+        }
+        //счётчик SQL-запросов и время записи клиента привязаны к потоку запроса, переносим их в поток пула
+        StatementStatistics statistics = StatementStatistics.current();
+        ReadConsistency consistency = ReadConsistency.current();
+        return CompletableFuture.supplyAsync(() -> {
+            StatementStatistics previous = StatementStatistics.bind(statistics);
+            ReadConsistency previousConsistency = ReadConsistency.bind(consistency);
+            try {
+                return action.get();
+            } finally {
+                ReadConsistency.restore(previousConsistency);
+                StatementStatistics.restore(previous);
+            }
+        }, executor);
+    }
+
+    private static ThreadPoolExecutor createExecutor(MeterRegistry registry, String pool,
+                                                     int threads, int queueCapacity) {
+        AtomicInteger number = new AtomicInteger();
+        Counter rejected = registry.counter("filmorate.executor.rejected", "pool", pool);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "filmorate-" + pool + "-" + number.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, rejectedFrom) -> {
+                    rejected.increment();
+                    throw new RejectedExecutionException("Пул " + pool + " перегружен");
+                });
+        new ExecutorServiceMetrics(executor, "filmorate." + pool, Tags.empty()).bindTo(registry);
+        return executor;
+    }
+}
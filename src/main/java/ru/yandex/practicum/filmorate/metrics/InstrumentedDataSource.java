@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+//оборачивает соединения, чтобы замерить каждый выполненный statement, кто бы его ни создал
+public class InstrumentedDataSource extends DelegatingDataSource {
+    private final ObjectProvider<QueryMetrics> queryMetrics;
+
+    public InstrumentedDataSource(DataSource dataSource, ObjectProvider<QueryMetrics> queryMetrics) {
+        super(dataSource);
+        this.queryMetrics = queryMetrics;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrapConnection(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrapConnection(super.getConnection(username, password));
+    }
+
+    private Connection wrapConnection(Connection connection) {
+        return proxy(Connection.class, (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return wrapStatement(PreparedStatement.class, (Statement) result, (String) args[0]);
+                case "prepareCall":
+                    return wrapStatement(CallableStatement.class, (Statement) result, (String) args[0]);
+                case "createStatement":
+                    return wrapStatement(Statement.class, (Statement) result, null);
+                default:
+                    return result;
+            }
+        });
+    }
+
+    private <T extends Statement> T wrapStatement(Class<T> type, Statement statement, String preparedSql) {
+        return proxy(type, (proxy, method, args) -> {
+            if (!method.getName().startsWith("execute")) {
+                return invoke(statement, method, args);
+            }
+            String sql = preparedSql;
+            if (sql == null && args != null && args.length > 0 && args[0] instanceof String) {
+                sql = (String) args[0];
+            }
+            long start = System.nanoTime();
+            try {
+                return invoke(statement, method, args);
+            } finally {
+                QueryMetrics metrics = queryMetrics.getIfAvailable();
+                if (metrics != null) {
+                    metrics.record(sql, System.nanoTime() - start);
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(), new Class[]{type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class MetricsConfiguration implements WebMvcConfigurer {
+    private final MeterRegistry registry;
+    private final int maxStatements;
+    private final int maxRepeatedStatements;
+
+    public MetricsConfiguration(MeterRegistry registry,
+                                @Value("${filmorate.metrics.max-statements-per-request:50}") int maxStatements,
+                                @Value("${filmorate.metrics.max-repeated-statements:10}") int maxRepeatedStatements) {
+        this.registry = registry;
+        this.maxStatements = maxStatements;
+        this.maxRepeatedStatements = maxRepeatedStatements;
+    }
+
+    @Bean
+    public static BeanPostProcessor instrumentedDataSourcePostProcessor(ObjectProvider<QueryMetrics> queryMetrics) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource && !(bean instanceof InstrumentedDataSource)) {
+                    return new InstrumentedDataSource((DataSource) bean, queryMetrics);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new RequestMetricsInterceptor(this.registry, maxStatements, maxRepeatedStatements));
+    }
+}
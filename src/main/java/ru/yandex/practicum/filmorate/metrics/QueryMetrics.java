@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+@Component
+public class QueryMetrics {
+    private static final int MAX_CACHED_NAMES = 10_000;
+    private static final int MAX_NAME_LENGTH = 200;
+    //без повторения группы: на длинных списках IN (?, ?, ...) оно переполняло стек
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\?\\s*,[\\s,?]*\\?");
+    private static final Pattern NUMBER = Pattern.compile("\\b\\d+\\b");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final MeterRegistry registry;
+    private final Map<String, String> names = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public QueryMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    void record(String sql, long nanos) {
+        String name = name(sql);
+        timers.computeIfAbsent(name, query -> Timer.builder("filmorate.jdbc.query")
+                        .tag("query", query)
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+        StatementStatistics statistics = StatementStatistics.current();
+        if (statistics != null) {
+            statistics.record(name);
+        }
+    }
+
+    //запросы с разным числом параметров в IN (...) считаются одним и тем же запросом
+    public static String normalize(String sql) {
+        String name = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        name = PARAMETER_LIST.matcher(name).replaceAll("?...");
+        name = NUMBER.matcher(name).replaceAll("?");
+        return name.length() > MAX_NAME_LENGTH ? name.substring(0, MAX_NAME_LENGTH) : name;
+    }
+
+    private String name(String sql) {
+        if (sql == null) {
+            return "unknown";
+        }
+        String name = names.get(sql);
+        if (name == null) {
+            name = normalize(sql);
+            if (names.size() < MAX_CACHED_NAMES) {
+                names.put(sql, name);
+            }
+        }
+        return name;
+    }
+}
@@ -0,0 +1,67 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+@Slf4j
+public class RequestMetricsInterceptor implements AsyncHandlerInterceptor {
+    public static final String STATISTICS_ATTRIBUTE = RequestMetricsInterceptor.class.getName() + ".statistics";
+
+    private final MeterRegistry registry;
+    private final int maxStatements;
+    private final int maxRepeatedStatements;
+
+    public RequestMetricsInterceptor(MeterRegistry registry, int maxStatements, int maxRepeatedStatements) {
+        this.registry = registry;
+        this.maxStatements = maxStatements;
+        this.maxRepeatedStatements = maxRepeatedStatements;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        //при асинхронной обработке метод вызывается повторно, статистика должна остаться той же
+        StatementStatistics statistics = (StatementStatistics) request.getAttribute(STATISTICS_ATTRIBUTE);
+        if (statistics == null) {
+            statistics = new StatementStatistics();
+            request.setAttribute(STATISTICS_ATTRIBUTE, statistics);
+        }
+        StatementStatistics.bind(statistics);
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        StatementStatistics.restore(null);
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        StatementStatistics.restore(null);
+        StatementStatistics statistics = (StatementStatistics) request.getAttribute(STATISTICS_ATTRIBUTE);
+        if (statistics == null) {
+            return;
+        }
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        DistributionSummary.builder("filmorate.http.statements")
+                .tag("method", request.getMethod())
+                .tag("uri", uri)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(statistics.getStatements());
+        if (statistics.getStatements() > maxStatements || statistics.getMaxRepeats() > maxRepeatedStatements) {
+            registry.counter("filmorate.http.statements.suspicious",
+                    "method", request.getMethod(), "uri", uri).increment();
+            log.warn("Подозрение на N+1: " + request.getMethod() + " " + uri + " выполнил "
+                    + statistics.getStatements() + " SQL-запросов: " + statistics.getQueries());
+        }
+    }
+}
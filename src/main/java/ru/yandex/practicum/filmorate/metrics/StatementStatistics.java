@@ -0,0 +1,65 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+//количество SQL-запросов, выполненных в рамках одного HTTP-запроса или замера в тесте
+public class StatementStatistics {
+    private static final ThreadLocal<StatementStatistics> CURRENT = new ThreadLocal<>();
+
+    private final AtomicInteger statements = new AtomicInteger();
+    private final Map<String, AtomicInteger> queries = new ConcurrentHashMap<>();
+
+    public static StatementStatistics current() {
+        return CURRENT.get();
+    }
+
+    public static StatementStatistics bind(StatementStatistics statistics) {
+        StatementStatistics previous = CURRENT.get();
+        CURRENT.set(statistics);
+        return previous;
+    }
+
+    public static void restore(StatementStatistics previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    public static StatementStatistics measure(Runnable action) {
+        StatementStatistics statistics = new StatementStatistics();
+        StatementStatistics previous = bind(statistics);
+        try {
+            action.run();
+        } finally {
+            restore(previous);
+        }
+        return statistics;
+    }
+
+    void record(String query) {
+        statements.incrementAndGet();
+        queries.computeIfAbsent(query, q -> new AtomicInteger()).incrementAndGet();
+    }
+
+    public int getStatements() {
+        return statements.get();
+    }
+
+    public Map<String, Integer> getQueries() {
+        return queries.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().get()));
+    }
+
+    //сколько раз выполнился самый частый запрос: рост этого числа вместе с размером ответа — признак N+1
+    public int getMaxRepeats() {
+        return queries.values().stream()
+                .mapToInt(AtomicInteger::get)
+                .max()
+                .orElse(0);
+    }
+}
@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class BatchResult {
+
+    private int total;
+    private int succeeded;
+    private int failed;
+    private final List<BatchItemResult> items = new ArrayList<>();
+
+    public void add(BatchItemResult item) {
+        total++;
+        if (item.getError() == null) {
+            succeeded++;
+        } else {
+            failed++;
+        }
+        items.add(item);
+    }
+}
@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+public class FacetedPage<T> {
+
+    private List<T> items;
+    private String nextCursor;
+    private int total;
+    //название фасета -> значение -> сколько фильмов подошло бы, если выбрать это значение
+    private Map<String, Map<Integer, Integer>> facets;
+}
@@ -11,6 +11,8 @@ import java.util.Set;
 @AllArgsConstructor
 public class Film {
 
+    public static final LocalDate FIRST_FILM_RELEASE_DATE = LocalDate.of(1895, 12, 28);
+
     @NotNull(message = "ID должен быть задан.")
     private int id;
     @NotBlank(message = "Имя фильма не может быть пустым.")
@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Set;
+
+@Data
+@AllArgsConstructor
+public class FilmFilter {
+
+    //пустое множество — без ограничения, иначе подходит фильм с любым из перечисленных
+    private Set<Integer> genres;
+    private Set<Integer> mpa;
+    private Integer yearFrom;
+    private Integer yearTo;
+    private FilmSort sort;
+}
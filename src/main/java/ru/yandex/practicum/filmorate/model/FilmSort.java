@@ -0,0 +1,12 @@
+package ru.yandex.practicum.filmorate.model;
+
+public enum FilmSort {
+    //по возрастанию id
+    ID,
+    //сначала самые популярные
+    LIKES,
+    //сначала самые старые
+    RELEASE_DATE,
+    //сначала самые короткие
+    DURATION
+}
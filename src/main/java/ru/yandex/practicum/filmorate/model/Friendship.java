@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import javax.validation.constraints.Positive;
+
+@Data
+@AllArgsConstructor
+public class Friendship {
+
+    @Positive(message = "ID пользователя должен быть положительным.")
+    private int userId;
+    @Positive(message = "ID друга должен быть положительным.")
+    private int friendId;
+}
@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.model;
+
+public enum TrendingWindow {
+    //последний час
+    HOUR,
+    //последние сутки
+    DAY,
+    //последние семь дней
+    WEEK
+}
@@ -0,0 +1,121 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.ValidationException;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Component
+public class BatchImporter {
+
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    public BatchImporter(ObjectMapper objectMapper, Validator validator, TransactionTemplate transactionTemplate,
+                         @Value("${filmorate.batch.chunk-size:1000}") int chunkSize) {
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+    }
+
+    //читаем JSON-массив поэлементно, не загружая его целиком, и передаём прошедшие валидацию элементы
+    //в writer пачками по chunkSize, каждая пачка пишется в отдельной транзакции
+    <T> BatchResult importItems(InputStream body, Class<T> type, Consumer<List<BatchItem<T>>> writer,
+                                Function<T, Integer> idGetter) {
+        BatchResult result = new BatchResult();
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new ValidationException("Ожидается JSON-массив.");
+            }
+            List<BatchItem<T>> chunk = new ArrayList<>(chunkSize);
+            int index = 0;
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                if (token == null) {
+                    throw new ValidationException("JSON-массив не закрыт.");
+                }
+                chunk.add(readItem(parser, type, index++));
+                if (chunk.size() == chunkSize) {
+                    writeChunk(chunk, writer, idGetter, result);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            writeChunk(chunk, writer, idGetter, result);
+        } catch (IOException e) {
+            throw new ValidationException("Некорректный JSON: " + e.getMessage());
+        }
+        log.debug("Импорт " + type.getSimpleName() + ": всего " + result.getTotal()
+                + ", с ошибками " + result.getFailed());
+        return result;
+    }
+
+    private <T> BatchItem<T> readItem(JsonParser parser, Class<T> type, int index) throws IOException {
+        JsonNode node = parser.readValueAsTree();
+        T value;
+        try {
+            value = objectMapper.treeToValue(node, type);
+        } catch (IOException | IllegalArgumentException e) {
+            return new BatchItem<>(index, null, "Некорректные данные: " + e.getMessage());
+        }
+        Set<ConstraintViolation<T>> violations = validator.validate(value);
+        if (!violations.isEmpty()) {
+            return new BatchItem<>(index, value, violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining(" ")));
+        }
+        return new BatchItem<>(index, value, null);
+    }
+
+    private <T> void writeChunk(List<BatchItem<T>> chunk, Consumer<List<BatchItem<T>>> writer,
+                                Function<T, Integer> idGetter, BatchResult result) {
+        List<BatchItem<T>> valid = chunk.stream()
+                .filter(item -> !item.isFailed())
+                .collect(Collectors.toList());
+        if (!valid.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> writer.accept(valid));
+            } catch (RuntimeException e) {
+                //транзакция пачки откатилась целиком: повторяем элементы по одному, чтобы ошибка
+                //одного из них (например, слишком длинная строка) не отклоняла остальные
+                //элемент с уже назначенным id записан хранилищем, которое не откатывает пачку целиком
+                log.warn("Не удалось записать пачку из " + valid.size() + " элементов, пишем по одному", e);
+                valid.stream()
+                        .filter(item -> !item.isFailed())
+                        .filter(item -> idGetter == null || idGetter.apply(item.getValue()) == 0)
+                        .forEach(item -> writeItem(item, writer));
+            }
+        }
+        chunk.forEach(item -> result.add(item.toResult(
+                item.isFailed() || idGetter == null ? null : idGetter.apply(item.getValue()))));
+    }
+
+    private <T> void writeItem(BatchItem<T> item, Consumer<List<BatchItem<T>>> writer) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> writer.accept(List.of(item)));
+        } catch (RuntimeException e) {
+            log.warn("Не удалось записать элемент " + item.getValue(), e);
+            item.fail("Ошибка записи: " + e.getMessage());
+        }
+    }
+}
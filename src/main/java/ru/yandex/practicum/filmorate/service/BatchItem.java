@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate.service;
+
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
+
+final class BatchItem<T> {
+    private final int index;
+    private final T value;
+    private String error;
+
+    BatchItem(int index, T value, String error) {
+        this.index = index;
+        this.value = value;
+        this.error = error;
+    }
+
+    T getValue() {
+        return value;
+    }
+
+    boolean isFailed() {
+        return error != null;
+    }
+
+    void fail(String error) {
+        if (this.error == null) {
+            this.error = error;
+        }
+    }
+
+    BatchItemResult toResult(Integer id) {
+        return new BatchItemResult(index, isFailed() ? null : id, error);
+    }
+}
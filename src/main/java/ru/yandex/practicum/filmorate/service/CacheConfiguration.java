@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.function.UnaryOperator;
+
+//Caffeine вытесняет записи по W-TinyLFU: редкие id не вытесняют из кэша часто запрашиваемые.
+//Попадания, промахи и вытеснения доступны в /actuator/metrics/cache.gets и cache.evictions
+@Configuration
+public class CacheConfiguration {
+    private final MeterRegistry registry;
+    private final Duration expireAfterWrite;
+
+    public CacheConfiguration(MeterRegistry registry,
+                              @Value("${filmorate.cache.expire-after-write-seconds:300}") long expireAfterWrite) {
+        this.registry = registry;
+        this.expireAfterWrite = Duration.ofSeconds(expireAfterWrite);
+    }
+
+    @Bean
+    public EntityCache<Film> filmCache(@Value("${filmorate.cache.films.maximum-size:10000}") long maximumSize) {
+        return new EntityCache<>(build("films", maximumSize), film -> new Film(film.getId(),
+                film.getName(),
+                film.getDescription(),
+                film.getReleaseDate(),
+                film.getDuration(),
+                film.getLikes(),
+                new LinkedHashSet<>(film.getGenres()),
+                film.getMpa()));
+    }
+
+    @Bean
+    public EntityCache<User> userCache(@Value("${filmorate.cache.users.maximum-size:10000}") long maximumSize) {
+        return new EntityCache<>(build("users", maximumSize), user -> new User(user.getId(),
+                user.getName(),
+                user.getLogin(),
+                user.getEmail(),
+                user.getBirthday(),
+                new HashSet<>(user.getFriends())));
+    }
+
+    //срок жизни записи ограничивает устаревание, если сброс после изменения разминулся с параллельной загрузкой
+    private <T> Cache<Integer, EntityCache.Versioned<T>> build(String name, long maximumSize) {
+        Cache<Integer, EntityCache.Versioned<T>> cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, cache, name);
+        return cache;
+    }
+}
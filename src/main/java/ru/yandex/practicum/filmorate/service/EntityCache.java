@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+
+//кэш сущностей по id. Модели изменяемые, поэтому наружу отдаются копии.
+//Одновременные промахи по одному id ждут одной загрузки, исключение загрузчика не кэшируется
+public class EntityCache<T> {
+    private final Cache<Integer, Versioned<T>> cache;
+    private final UnaryOperator<T> copy;
+
+    public EntityCache(Cache<Integer, Versioned<T>> cache, UnaryOperator<T> copy) {
+        this.cache = cache;
+        this.copy = copy;
+    }
+
+    public T get(int id, IntFunction<T> loader) {
+        return get(id, null, loader);
+    }
+
+    //version — версия сущности, прочитанная до загрузки; запись более старой версии загружается заново.
+    //Так запись, прочитанная параллельно с изменением, не переживёт его
+    public T get(int id, Long version, IntFunction<T> loader) {
+        Versioned<T> entry = cache.get(id, key -> new Versioned<>(version, loader.apply(key)));
+        if (version != null && (entry.version == null || entry.version < version)) {
+            cache.asMap().remove(id, entry);
+            entry = cache.get(id, key -> new Versioned<>(version, loader.apply(key)));
+        }
+        return copy.apply(Objects.requireNonNull(entry).value);
+    }
+
+    public void invalidate(int id) {
+        invalidateAll(List.of(id));
+    }
+
+    //внутри транзакции запись сбрасывается ещё раз после её завершения:
+    //загрузка, начатая до фиксации, могла вернуть в кэш старое состояние
+    public void invalidateAll(Collection<Integer> ids) {
+        cache.invalidateAll(ids);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidateAll(ids);
+                }
+            });
+        }
+    }
+
+    public static final class Versioned<T> {
+        private final Long version;
+        private final T value;
+
+        private Versioned(Long version, T value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+}
@@ -3,15 +3,22 @@ package ru.yandex.practicum.filmorate.service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
-import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.FilmGenre;
-import ru.yandex.practicum.filmorate.model.FilmMpa;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exception.FilmDataException;
+import ru.yandex.practicum.filmorate.exception.FilmInformationNotExistException;
+import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.storage.FilmInformation;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
+import javax.validation.ValidationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class FilmService {
@@ -19,56 +26,255 @@ public class FilmService {
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
     private final FilmInformation filmInformation;
+    private final BatchImporter batchImporter;
+    private final NdjsonExporter ndjsonExporter;
+    private final EntityCache<Film> filmCache;
+    private final EntityCache<User> userCache;
 
     @Autowired
-    public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage,
-                       @Qualifier("userDbStorage") UserStorage userStorage,
-                       FilmInformation filmInformation) {
+    public FilmService(@Qualifier("filmStorage") FilmStorage filmStorage,
+                       @Qualifier("userStorage") UserStorage userStorage,
+                       FilmInformation filmInformation,
+                       BatchImporter batchImporter,
+                       NdjsonExporter ndjsonExporter,
+                       EntityCache<Film> filmCache,
+                       EntityCache<User> userCache) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
         this.filmInformation = filmInformation;
+        this.batchImporter = batchImporter;
+        this.ndjsonExporter = ndjsonExporter;
+        this.filmCache = filmCache;
+        this.userCache = userCache;
     }
 
+    @Transactional(readOnly = true)
     public List<Film> findAll() {
         List<Film> films = filmStorage.findAll();
         filmStorage.loadGenre(films);
         return films;
     }
 
+    @Transactional(readOnly = true)
+    public Page<Film> findAll(Integer limit, String after) {
+        if (limit == null && after == null) {
+            return new Page<>(findAll(), null);
+        }
+        int pageSize = PageCursor.limit(limit);
+        //запрашиваем на один фильм больше, чтобы понять, есть ли следующая страница
+        List<Film> films = filmStorage.findAll(pageSize + 1, PageCursor.decode(after));
+        String nextCursor = null;
+        if (films.size() > pageSize) {
+            films = films.subList(0, pageSize);
+            nextCursor = PageCursor.encode(films.get(pageSize - 1).getId());
+        }
+        filmStorage.loadGenre(films);
+        return new Page<>(films, nextCursor);
+    }
+
+    //не с реплики: id фильмов берутся из индексов этого узла, а на реплике этих фильмов может ещё не быть
+    public FacetedPage<Film> findAll(Integer limit, String after, FilmFilter filter) {
+        if (filter.getGenres() != null) {
+            filter.getGenres().forEach(filmInformation::getGenre);
+        }
+        if (filter.getMpa() != null) {
+            filter.getMpa().forEach(filmInformation::getMpa);
+        }
+        int pageSize = PageCursor.limit(limit);
+        int offset = PageCursor.decodeOffset(after);
+        FacetedPage<Film> page = filmStorage.findAll(filter, offset, pageSize);
+        if (offset + page.getItems().size() < page.getTotal()) {
+            page.setNextCursor(PageCursor.encodeOffset(offset + page.getItems().size()));
+        }
+        filmStorage.loadGenre(page.getItems());
+        return page;
+    }
+
+    public static TrendingWindow parseWindow(String window) {
+        switch (window) {
+            case "1h":
+                return TrendingWindow.HOUR;
+            case "24h":
+                return TrendingWindow.DAY;
+            case "7d":
+                return TrendingWindow.WEEK;
+            default:
+                throw new ValidationException("Неизвестный период: " + window);
+        }
+    }
+
+    public static FilmSort parseSort(String sort) {
+        if (sort == null || sort.equals("id")) {
+            return FilmSort.ID;
+        }
+        switch (sort) {
+            case "likes":
+                return FilmSort.LIKES;
+            case "releaseDate":
+                return FilmSort.RELEASE_DATE;
+            case "duration":
+                return FilmSort.DURATION;
+            default:
+                throw new ValidationException("Неизвестный порядок сортировки: " + sort);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public void exportFilms(OutputStream out) throws IOException {
+        ndjsonExporter.export(out, filmStorage::exportAll);
+    }
+
     public Film create(Film film) {
-        film = filmStorage.create(film);
-        return getFilm(film.getId());
+        return filmStorage.create(film);
+    }
+
+    public BatchResult importFilms(InputStream body) {
+        return batchImporter.importItems(body, Film.class, chunk -> {
+            List<Film> films = new ArrayList<>();
+            chunk.forEach(item -> {
+                String error = checkImportedFilm(item.getValue());
+                if (error != null) {
+                    item.fail(error);
+                } else {
+                    films.add(item.getValue());
+                }
+            });
+            filmStorage.createAll(films);
+        }, Film::getId);
+    }
+
+    private String checkImportedFilm(Film film) {
+        if (film.getId() != 0) {
+            return "При импорте id фильма назначается автоматически.";
+        }
+        if (film.getReleaseDate().isBefore(Film.FIRST_FILM_RELEASE_DATE)) {
+            return "Дата релиза фильма не может быть раньше 28 декабря 1895 года.";
+        }
+        if (film.getMpa() == null) {
+            return "Рейтинг MPA должен быть задан.";
+        }
+        try {
+            filmInformation.getMpa(film.getMpa().getId());
+            if (film.getGenres() != null) {
+                film.getGenres().forEach(genre -> filmInformation.getGenre(genre.getId()));
+            }
+        } catch (FilmInformationNotExistException e) {
+            return e.getMessage();
+        }
+        return null;
     }
 
     public Film put(Film film) {
         film = filmStorage.put(film);
-        return getFilm(film.getId());
+        filmCache.invalidate(film.getId());
+        return film;
     }
 
     public Film getFilm(int id) {
-        Film film = filmStorage.getFilm(id);
-        filmStorage.loadGenre(List.of(film));
-        return film;
+        return filmCache.get(id, filmStorage.getFilmVersion(id), key -> {
+            Film film = filmStorage.getFilm(key);
+            filmStorage.loadGenre(List.of(film));
+            return film;
+        });
     }
 
     public void setLike(int filmId, int userId) {
         getFilm(filmId);
-        userStorage.getUser(userId);
+        userCache.get(userId, userStorage::getUser);
         filmStorage.setLike(filmId, userId);
+        filmCache.invalidate(filmId);
     }
 
     public void deleteLike(int filmId, int userId) {
         getFilm(filmId);
-        userStorage.getUser(userId);
+        userCache.get(userId, userStorage::getUser);
         filmStorage.deleteLike(filmId, userId);
+        filmCache.invalidate(filmId);
     }
 
+    public BatchResult importLikes(InputStream body) {
+        return batchImporter.importItems(body, FilmLike.class, chunk -> {
+            //существование фильмов и пользователей проверяем одним запросом на всю пачку
+            Set<Integer> films = filmStorage.findExistingIds(chunk.stream()
+                    .map(item -> item.getValue().getFilmId())
+                    .collect(Collectors.toSet()));
+            Set<Integer> users = userStorage.findExistingIds(chunk.stream()
+                    .map(item -> item.getValue().getUserId())
+                    .collect(Collectors.toSet()));
+            List<FilmLike> likes = new ArrayList<>();
+            chunk.forEach(item -> {
+                FilmLike like = item.getValue();
+                if (!films.contains(like.getFilmId())) {
+                    item.fail("Фильма с id: " + like.getFilmId() + " не существует");
+                } else if (!users.contains(like.getUserId())) {
+                    item.fail("Пользователя с id: " + like.getUserId() + " не существует");
+                } else {
+                    likes.add(like);
+                }
+            });
+            filmStorage.setLikes(likes);
+            filmCache.invalidateAll(likes.stream().map(FilmLike::getFilmId).collect(Collectors.toSet()));
+        }, null);
+    }
+
+    //не с реплики: ETag считается по версии основной БД, и отставшая реплика отдала бы под ним старый список
     public List<Film> topLikedFilms(int count) {
         List<Film> topFilms = filmStorage.topLikedFilms(count);
         filmStorage.loadGenre(topFilms);
         return topFilms;
     }
 
+    //не с реплики: id фильмов берутся из индексов этого узла, а на реплике этих фильмов может ещё не быть
+    public List<Film> trendingFilms(TrendingWindow window, int count) {
+        if (count <= 0) {
+            throw new FilmDataException("Количество фильмов должно быть положительным");
+        }
+        List<Film> films = filmStorage.trendingFilms(window, count);
+        filmStorage.loadGenre(films);
+        return films;
+    }
+
+    public List<Film> getRecommendations(int userId, int count) {
+        if (count <= 0) {
+            throw new FilmDataException("Количество рекомендаций должно быть положительным");
+        }
+        userCache.get(userId, userStorage::getUser);
+        List<Film> films = filmStorage.getRecommendations(userId, count);
+        filmStorage.loadGenre(films);
+        return films;
+    }
+
+    //не с реплики: id фильмов берутся из индексов этого узла, а на реплике этих фильмов может ещё не быть
+    public List<Film> search(String query, int limit) {
+        if (query == null || query.isBlank()) {
+            throw new FilmDataException("Поисковый запрос не может быть пустым");
+        }
+        if (limit <= 0) {
+            throw new FilmDataException("Количество результатов поиска должно быть положительным");
+        }
+        List<Film> films = filmStorage.search(query, limit);
+        filmStorage.loadGenre(films);
+        return films;
+    }
+
+    //null, если фильма нет: тогда запрос обрабатывается обычным образом и вернёт 404
+    public String getFilmETag(int id) {
+        Long version = filmStorage.getFilmVersion(id);
+        return version == null ? null : eTag("f", version);
+    }
+
+    public String getTopLikedFilmsETag(int count) {
+        return eTag("p", filmStorage.getTopLikedFilmsVersion(count));
+    }
+
+    public String getFilmInformationETag() {
+        return eTag("i", filmInformation.getVersion());
+    }
+
+    private static String eTag(String prefix, long version) {
+        return "\"" + prefix + Long.toHexString(version) + "\"";
+    }
+
     public FilmGenre getGenre(int genreId) {
         return filmInformation.getGenre(genreId);
     }
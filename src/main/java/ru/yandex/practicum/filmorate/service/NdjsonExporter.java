@@ -0,0 +1,40 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+@Component
+public class NdjsonExporter {
+
+    private final ObjectMapper objectMapper;
+
+    public NdjsonExporter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    //каждый объект пишется в поток сразу после чтения строки из БД и отдельной строкой JSON
+    <T> void export(OutputStream out, Consumer<Consumer<T>> source) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            try {
+                source.accept(value -> {
+                    try {
+                        objectMapper.writeValue(generator, value);
+                        generator.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.service;
+
+import javax.validation.ValidationException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+public final class PageCursor {
+
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+    private static final String PREFIX = "id:";
+    //для отфильтрованных и отсортированных выборок курсор хранит позицию, а не id
+    private static final String OFFSET_PREFIX = "at:";
+
+    private PageCursor() {
+    }
+
+    public static String encode(int lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static int decode(String cursor) {
+        return decode(cursor, PREFIX);
+    }
+
+    public static String encodeOffset(int offset) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((OFFSET_PREFIX + offset).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static int decodeOffset(String cursor) {
+        return decode(cursor, OFFSET_PREFIX);
+    }
+
+    private static int decode(String cursor, String prefix) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (value.startsWith(prefix)) {
+                int position = Integer.parseInt(value.substring(prefix.length()));
+                if (position >= 0) {
+                    return position;
+                }
+            }
+        } catch (IllegalArgumentException ignored) {
+            //NumberFormatException тоже IllegalArgumentException
+        }
+        throw new ValidationException("Некорректный курсор: " + cursor);
+    }
+
+    public static int limit(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new ValidationException("Размер страницы должен быть от 1 до " + MAX_LIMIT);
+        }
+        return limit;
+    }
+}
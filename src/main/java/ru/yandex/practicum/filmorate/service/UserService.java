@@ -3,50 +3,153 @@ package ru.yandex.practicum.filmorate.service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exception.UserDataException;
+import ru.yandex.practicum.filmorate.model.BatchResult;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class UserService {
 
     private final UserStorage userStorage;
+    private final BatchImporter batchImporter;
+    private final NdjsonExporter ndjsonExporter;
+    private final EntityCache<User> userCache;
 
     @Autowired
-    public UserService(@Qualifier("userDbStorage") UserStorage userStorage) {
+    public UserService(@Qualifier("userStorage") UserStorage userStorage,
+                       BatchImporter batchImporter,
+                       NdjsonExporter ndjsonExporter,
+                       EntityCache<User> userCache) {
         this.userStorage = userStorage;
+        this.batchImporter = batchImporter;
+        this.ndjsonExporter = ndjsonExporter;
+        this.userCache = userCache;
     }
 
     public User getUser(int id) {
-        return userStorage.getUser(id);
+        return userCache.get(id, userStorage::getUser);
     }
 
+    @Transactional(readOnly = true)
     public List<User> findAll() {
         return userStorage.findAll();
     }
 
+    @Transactional(readOnly = true)
+    public Page<User> findAll(Integer limit, String after) {
+        if (limit == null && after == null) {
+            return new Page<>(findAll(), null);
+        }
+        int pageSize = PageCursor.limit(limit);
+        //запрашиваем на одного пользователя больше, чтобы понять, есть ли следующая страница
+        List<User> users = userStorage.findAll(pageSize + 1, PageCursor.decode(after));
+        String nextCursor = null;
+        if (users.size() > pageSize) {
+            users = users.subList(0, pageSize);
+            nextCursor = PageCursor.encode(users.get(pageSize - 1).getId());
+        }
+        return new Page<>(users, nextCursor);
+    }
+
+    @Transactional(readOnly = true)
+    public void exportUsers(OutputStream out) throws IOException {
+        ndjsonExporter.export(out, userStorage::exportAll);
+    }
+
     public User create(User user) {
         return userStorage.create(user);
     }
 
+    public BatchResult importUsers(InputStream body) {
+        return batchImporter.importItems(body, User.class, chunk -> {
+            List<User> users = new ArrayList<>();
+            chunk.forEach(item -> {
+                if (item.getValue().getId() != 0) {
+                    item.fail("При импорте id пользователя назначается автоматически.");
+                } else {
+                    users.add(item.getValue());
+                }
+            });
+            userStorage.createAll(users);
+        }, User::getId);
+    }
+
     public User update(User user) {
-        return userStorage.update(user);
+        user = userStorage.update(user);
+        userCache.invalidate(user.getId());
+        return user;
     }
 
+    //не с реплики: id берутся из графа друзей этого узла, а на реплике этих пользователей может ещё не быть
     public List<User> getFriends(int id) {
         return userStorage.getFriends(id);
     }
 
     public void addFriend(int id, int friendId) {
         userStorage.addFriend(id, friendId);
+        userCache.invalidateAll(List.of(id, friendId));
+    }
+
+    public List<User> setFriends(int id, List<Integer> friendIds) {
+        userStorage.setFriends(id, friendIds);
+        userCache.invalidate(id);
+        return userStorage.getFriends(id);
+    }
+
+    public BatchResult importFriends(InputStream body) {
+        return batchImporter.importItems(body, Friendship.class, chunk -> {
+            //существование пользователей проверяем одним запросом на всю пачку
+            Set<Integer> users = userStorage.findExistingIds(chunk.stream()
+                    .flatMap(item -> Stream.of(item.getValue().getUserId(), item.getValue().getFriendId()))
+                    .collect(Collectors.toSet()));
+            List<Friendship> friendships = new ArrayList<>();
+            chunk.forEach(item -> {
+                Friendship friendship = item.getValue();
+                if (friendship.getUserId() == friendship.getFriendId()) {
+                    item.fail("Нельзя добавить в друзья самого себя");
+                } else if (!users.contains(friendship.getUserId())) {
+                    item.fail("Пользователя с id: " + friendship.getUserId() + " не существует");
+                } else if (!users.contains(friendship.getFriendId())) {
+                    item.fail("Пользователя с id: " + friendship.getFriendId() + " не существует");
+                } else {
+                    friendships.add(friendship);
+                }
+            });
+            userStorage.addFriends(friendships);
+            userCache.invalidateAll(friendships.stream()
+                    .flatMap(friendship -> Stream.of(friendship.getUserId(), friendship.getFriendId()))
+                    .collect(Collectors.toSet()));
+        }, null);
     }
 
     public void deleteFriend(int id, int friendId) {
         userStorage.deleteFriend(id, friendId);
+        userCache.invalidateAll(List.of(id, friendId));
     }
 
+    //не с реплики, как и список друзей
     public List<User> getMutualFriends(int id, int friendId) {
         return userStorage.getMutualFriends(id, friendId);
     }
+
+    //не с реплики, как и список друзей
+    public List<User> getFriendSuggestions(int id, int limit) {
+        if (limit <= 0) {
+            throw new UserDataException("Количество рекомендаций должно быть положительным");
+        }
+        return userStorage.getFriendSuggestions(id, limit);
+    }
 }
\ No newline at end of file
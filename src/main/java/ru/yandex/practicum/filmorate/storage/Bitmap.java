@@ -0,0 +1,114 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+
+//битовая карта id с доступом к словам: мощность пересечения считается по словам без промежуточных копий,
+//чего не умеет java.util.BitSet
+final class Bitmap {
+    private long[] words;
+    //число слов, в которых может быть хотя бы один бит
+    private int used;
+
+    Bitmap() {
+        words = new long[1];
+    }
+
+    private Bitmap(long[] words, int used) {
+        this.words = words;
+        this.used = used;
+    }
+
+    void set(int id) {
+        int index = id >>> 6;
+        if (index >= words.length) {
+            words = Arrays.copyOf(words, Math.max(words.length * 2, index + 1));
+        }
+        words[index] |= 1L << id;
+        used = Math.max(used, index + 1);
+    }
+
+    void clear(int id) {
+        int index = id >>> 6;
+        if (index < used) {
+            words[index] &= ~(1L << id);
+            while (used > 0 && words[used - 1] == 0) {
+                used--;
+            }
+        }
+    }
+
+    void clear() {
+        words = new long[1];
+        used = 0;
+    }
+
+    boolean get(int id) {
+        int index = id >>> 6;
+        return index < used && (words[index] & (1L << id)) != 0;
+    }
+
+    boolean isEmpty() {
+        return used == 0;
+    }
+
+    int cardinality() {
+        int count = 0;
+        for (int i = 0; i < used; i++) {
+            count += Long.bitCount(words[i]);
+        }
+        return count;
+    }
+
+    Bitmap copy() {
+        return new Bitmap(Arrays.copyOf(words, Math.max(used, 1)), used);
+    }
+
+    void or(Bitmap other) {
+        if (other.used > words.length) {
+            words = Arrays.copyOf(words, other.used);
+        }
+        for (int i = 0; i < other.used; i++) {
+            words[i] |= other.words[i];
+        }
+        used = Math.max(used, other.used);
+    }
+
+    void and(Bitmap other) {
+        int common = Math.min(used, other.used);
+        for (int i = 0; i < common; i++) {
+            words[i] &= other.words[i];
+        }
+        Arrays.fill(words, common, used, 0);
+        used = common;
+        while (used > 0 && words[used - 1] == 0) {
+            used--;
+        }
+    }
+
+    //-1, если установленных битов начиная с from нет
+    int nextSetBit(int from) {
+        int index = from >>> 6;
+        if (index >= used) {
+            return -1;
+        }
+        long word = words[index] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (index << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++index == used) {
+                return -1;
+            }
+            word = words[index];
+        }
+    }
+
+    static int andCardinality(Bitmap first, Bitmap second) {
+        int common = Math.min(first.used, second.used);
+        int count = 0;
+        for (int i = 0; i < common; i++) {
+            count += Long.bitCount(first.words[i] & second.words[i]);
+        }
+        return count;
+    }
+}
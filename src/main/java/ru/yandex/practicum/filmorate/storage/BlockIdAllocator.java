@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+//выдаёт id из диапазона, зарезервированного в последовательности БД: каждый экземпляр приложения
+//получает собственный диапазон размером INCREMENT последовательности и раздаёт его без блокировок.
+//id уникальны, но не идут подряд: недоразданный остаток диапазона теряется при перезапуске, а экземпляры
+//раздают свои диапазоны одновременно, поэтому порядок id не совпадает с порядком создания
+@Slf4j
+public class BlockIdAllocator {
+    private final JdbcTemplate jdbcTemplate;
+    private final String sequence;
+    private final int blockSize;
+    //наибольший id, записанный в таблицу до появления последовательности
+    private final int existingMaxId;
+    private volatile Block block = new Block(0, 0);
+
+    public BlockIdAllocator(JdbcTemplate jdbcTemplate, String sequence, String table, String idColumn) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sequence = sequence;
+        String sql = "SELECT increment FROM INFORMATION_SCHEMA.SEQUENCES WHERE sequence_name = ?";
+        Integer increment = jdbcTemplate.queryForObject(sql, Integer.class, sequence.toUpperCase());
+        if (increment == null || increment <= 0) {
+            throw new IllegalStateException("Некорректный шаг последовательности " + sequence);
+        }
+        blockSize = increment;
+        Integer maxId = jdbcTemplate.queryForObject("SELECT MAX(" + idColumn + ") FROM " + table, Integer.class);
+        existingMaxId = maxId == null ? 0 : maxId;
+    }
+
+    public int next() {
+        while (true) {
+            Block current = block;
+            int id = current.next.getAndIncrement();
+            if (id < current.limit) {
+                return id;
+            }
+            synchronized (this) {
+                if (block == current) {
+                    block = reserve();
+                }
+            }
+        }
+    }
+
+    //БД, заполненная до появления последовательности, уже содержит id, которые нельзя выдавать повторно:
+    //такие диапазоны пропускаем. Последовательность не перезапускается, ALTER SEQUENCE на общей БД
+    //мог бы вернуть её к значениям, которые другой экземпляр уже зарезервировал
+    private Block reserve() {
+        while (true) {
+            Long start = jdbcTemplate.queryForObject("SELECT NEXT VALUE FOR " + sequence, Long.class);
+            if (start == null || start + blockSize > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Последовательность " + sequence + " исчерпана");
+            }
+            long first = Math.max(start, existingMaxId + 1L);
+            if (first < start + blockSize) {
+                log.debug("Зарезервирован диапазон id " + first + ".." + (start + blockSize - 1) + " в " + sequence);
+                return new Block((int) first, start.intValue() + blockSize);
+            }
+        }
+    }
+
+    private static final class Block {
+        private final AtomicInteger next;
+        private final int limit;
+
+        private Block(int start, int limit) {
+            this.next = new AtomicInteger(start);
+            this.limit = limit;
+        }
+    }
+}
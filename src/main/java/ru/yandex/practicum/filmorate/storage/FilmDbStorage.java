@@ -1,45 +1,111 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.exception.FilmAlreadyExistException;
 import ru.yandex.practicum.filmorate.exception.FilmDataException;
 import ru.yandex.practicum.filmorate.exception.FilmNotExistException;
+import ru.yandex.practicum.filmorate.model.FacetedPage;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
 import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.FilmMpa;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Component
+@Qualifier("filmStorage")
+@ConditionalOnProperty(name = "filmorate.storage.engine", havingValue = "db", matchIfMissing = true)
 public class FilmDbStorage implements FilmStorage {
     private final JdbcTemplate jdbcTemplate;
-    private static final LocalDate FIRST_FILM_RELEASE_DATE = LocalDate.of(1895, 12, 28);
-    private int id;
+    private final FilmInformation filmInformation;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmLikeIndex likeIndex;
+    private final FilmVersions filmVersions;
+    private final FilmSearchIndex searchIndex;
+    private final FilmFacetIndex facetIndex;
+    private final FilmTrendingIndex trendingIndex;
+    private final LikeWriteBehind likeWriteBehind;
+    private final TransactionTemplate transactionTemplate;
+    private final int exportFetchSize;
+    private final BlockIdAllocator ids;
+    //пары (film_id, user_id) передаются двумя массивами и разворачиваются в таблицу
+    private static final String LIKE_PAIRS =
+            "UNNEST(CAST(? AS INTEGER ARRAY), CAST(? AS INTEGER ARRAY)) AS p(film_id, user_id)";
 
-    public FilmDbStorage(JdbcTemplate jdbcTemplate) {
+    public FilmDbStorage(JdbcTemplate jdbcTemplate, FilmInformation filmInformation,
+                         FilmPopularityIndex popularityIndex, FilmLikeIndex likeIndex, FilmVersions filmVersions,
+                         FilmSearchIndex searchIndex, FilmFacetIndex facetIndex, FilmTrendingIndex trendingIndex,
+                         LikeWriteBehind likeWriteBehind, PlatformTransactionManager transactionManager,
+                         @Value("${filmorate.likes.reconcile-on-startup:false}") boolean reconcileLikes,
+                         @Value("${filmorate.likes.reconcile-chunk-size:1000}") int reconcileChunkSize,
+                         @Value("${filmorate.export.fetch-size:500}") int exportFetchSize) {
         this.jdbcTemplate = jdbcTemplate;
-        id = getLastAddedFilmId();
+        this.filmInformation = filmInformation;
+        this.popularityIndex = popularityIndex;
+        this.likeIndex = likeIndex;
+        this.filmVersions = filmVersions;
+        this.searchIndex = searchIndex;
+        this.facetIndex = facetIndex;
+        this.trendingIndex = trendingIndex;
+        this.likeWriteBehind = likeWriteBehind;
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        //пачка из журнала фиксируется своей транзакцией: журнал отмечает её применённой сразу после возврата,
+        //а транзакция вызывающего (импорт, setLike при полном журнале) может ещё откатиться
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.exportFetchSize = exportFetchSize;
+        ids = new BlockIdAllocator(jdbcTemplate, "film_seq", "film", "film_id");
+        //лайки, оставшиеся в журнале после сбоя, попадают в БД до построения индексов
+        likeWriteBehind.start(this::applyLikes, this::revertLike);
+        if (reconcileLikes) {
+            reconcileLikes(reconcileChunkSize);
+        } else {
+            rebuildPopularityIndex();
+        }
+        rebuildLikeIndex();
+        rebuildSearchIndex();
+        rebuildFacetIndex();
+        rebuildTrendingIndex();
     }
 
     @Override
     public List<Film> findAll() {
-        String sql = "SELECT f.*, m.mpa_id AS mpa_id, m.name AS mpa_name FROM film f, MPA m " +
-                "WHERE f.mpa_id = m.mpa_id";
+        String sql = "SELECT * FROM film";
         return jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs));
     }
 
+    @Override
+    public List<Film> findAll(int limit, int afterId) {
+        String sql = "SELECT * FROM film WHERE film_id > ? ORDER BY film_id LIMIT ?";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), afterId, limit);
+    }
+
     @Override
     public Film getFilm(int id) {
-        String sql = "SELECT f.*, m.mpa_id AS mpa_id, m.name AS mpa_name FROM film f, MPA m " +
-                "WHERE f.mpa_id = m.mpa_id AND film_id = ?";
+        String sql = "SELECT * FROM film WHERE film_id = ?";
         List<Film> film = jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), id);
         if (!film.isEmpty()) {
             return film.get(0);
@@ -48,127 +114,524 @@ public class FilmDbStorage implements FilmStorage {
         }
     }
 
+    @Override
+    public List<Film> getFilms(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sql = "SELECT * FROM film WHERE film_id IN (" + String.join(",", Collections.nCopies(ids.size(), "?")) + ")";
+        Map<Integer, Film> films = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            Film film = makeFilm(rs);
+            films.put(film.getId(), film);
+        }, ids.toArray());
+        //возвращаем фильмы в порядке переданных id
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void exportAll(Consumer<Film> consumer) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement films = prepareForwardOnly(connection,
+                    "SELECT * FROM film ORDER BY film_id");
+                 PreparedStatement genres = prepareForwardOnly(connection,
+                         "SELECT film_id, genre_id FROM film_genres ORDER BY film_id, genre_id");
+                 ResultSet filmRs = films.executeQuery();
+                 ResultSet genreRs = genres.executeQuery()) {
+                boolean hasGenre = genreRs.next();
+                while (filmRs.next()) {
+                    Film film = makeFilm(filmRs);
+                    //оба курсора упорядочены по film_id, поэтому жанры присоединяем слиянием
+                    while (hasGenre && genreRs.getInt("film_id") <= film.getId()) {
+                        if (genreRs.getInt("film_id") == film.getId()) {
+                            film.getGenres().add(filmInformation.getGenre(genreRs.getInt("genre_id")));
+                        }
+                        hasGenre = genreRs.next();
+                    }
+                    consumer.accept(film);
+                }
+            }
+            return null;
+        });
+    }
+
+    private PreparedStatement prepareForwardOnly(Connection connection, String sql) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(exportFetchSize);
+        return statement;
+    }
+
     private Film makeFilm(ResultSet rs) throws SQLException {
-        return new Film(rs.getInt("film_id"),
+        int mpaId = rs.getInt("mpa_id");
+        FilmMpa mpa = rs.wasNull() ? null : filmInformation.getMpa(mpaId);
+        int filmId = rs.getInt("film_id");
+        return new Film(filmId,
                 rs.getString("name"),
                 rs.getString("description"),
                 rs.getObject("release_date", LocalDate.class),
                 rs.getInt("duration"),
-                rs.getInt("likes"),
+                rs.getInt("likes") + likeWriteBehind.pendingDelta(filmId),
                 new LinkedHashSet<>(),
-                new FilmMpa(rs.getInt("mpa_id"), rs.getString("mpa_name")));
+                mpa);
     }
 
+    //ответ собирается из переданного фильма и справочников в памяти, без повторного чтения из БД
     @Override
+    @Transactional
     public Film create(Film film) {
         if (film.getId() != 0 && getFilm(film.getId()) != null) {
             log.warn("Передан фильм который уже был добавлен " + film);
             throw new FilmAlreadyExistException("Фильм с названием " + film.getName() + " уже есть в списке фильмов.");
         }
-        if (film.getReleaseDate().isBefore(FIRST_FILM_RELEASE_DATE)) {
+        if (film.getReleaseDate().isBefore(Film.FIRST_FILM_RELEASE_DATE)) {
             log.warn("Передан фильм с невозможной датой выхода " + film);
             throw new FilmDataException("Дата релиза фильма не может быть раньше 28 декабря 1895 года.");
         }
-        film.setId(++id);
+        Films.resolveReferences(film, filmInformation);
+        film.setId(ids.next());
+        film.setLikes(0);
         //film table
         String sql = "INSERT INTO film (film_id, name, description, release_date, duration, mpa_id) " +
                 "VALUES (?, ?, ?, ?, ?, ?)";
         jdbcTemplate.update(sql, film.getId(), film.getName(),
                 film.getDescription(), film.getReleaseDate(), film.getDuration(), film.getMpa().getId());
         //Film_genre table
-        updateFilmGenre(film);
+        if (!film.getGenres().isEmpty()) {
+            sql = "INSERT INTO film_genres (film_id, genre_id) " +
+                    "SELECT ?, g.genre_id FROM UNNEST(CAST(? AS INTEGER ARRAY)) AS g(genre_id)";
+            jdbcTemplate.update(sql, film.getId(), genreIds(film));
+        }
+        int filmId = film.getId();
+        Transactions.afterCommit(() -> {
+            popularityIndex.update(filmId, 0);
+            filmVersions.bump(filmId);
+            searchIndex.index(filmId, film.getName(), film.getDescription());
+            facetIndex.index(Films.facetAttributes(film));
+        });
         log.debug("Добавлен фильм: " + film);
         return film;
     }
 
     @Override
+    public void createAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return;
+        }
+        int[] filmIds = new int[films.size()];
+        for (int i = 0; i < filmIds.length; i++) {
+            filmIds[i] = ids.next();
+        }
+        String sql = "INSERT INTO film (film_id, name, description, release_date, duration, mpa_id) " +
+                "VALUES (?, ?, ?, ?, ?, ?)";
+        List<Object[]> rows = new ArrayList<>();
+        List<Object[]> genres = new ArrayList<>();
+        for (int i = 0; i < filmIds.length; i++) {
+            Film film = films.get(i);
+            rows.add(new Object[]{filmIds[i], film.getName(), film.getDescription(),
+                    film.getReleaseDate(), film.getDuration(), film.getMpa().getId()});
+            if (film.getGenres() != null) {
+                int filmId = filmIds[i];
+                film.getGenres().stream()
+                        .map(FilmGenre::getId)
+                        .distinct()
+                        .forEach(genreId -> genres.add(new Object[]{filmId, genreId}));
+            }
+        }
+        jdbcTemplate.batchUpdate(sql, rows);
+        jdbcTemplate.batchUpdate("INSERT INTO film_genres (film_id, genre_id) VALUES (?, ?)", genres);
+        //id назначаем только после вставки: если пачка откатится, импорт повторит фильмы по одному
+        for (int i = 0; i < filmIds.length; i++) {
+            films.get(i).setId(filmIds[i]);
+        }
+        Transactions.afterCommit(() -> films.forEach(film -> {
+            popularityIndex.update(film.getId(), 0);
+            filmVersions.bump(film.getId());
+            searchIndex.index(film.getId(), film.getName(), film.getDescription());
+            facetIndex.index(Films.facetAttributes(film));
+        }));
+        log.debug("Добавлено фильмов: " + films.size());
+    }
+
+    @Override
+    @Transactional
     public Film put(Film film) {
-        if (getFilm(film.getId()) == null) {
+        Films.resolveReferences(film, filmInformation);
+        //film table: отсутствие строки и текущее число лайков узнаём из самого UPDATE
+        String sql = "SELECT likes FROM FINAL TABLE (UPDATE film SET name = ?, description = ?, release_date = ?, " +
+                "duration = ?, mpa_id = ? WHERE film_id = ?)";
+        List<Integer> likes = jdbcTemplate.queryForList(sql, Integer.class, film.getName(), film.getDescription(),
+                film.getReleaseDate(), film.getDuration(), film.getMpa().getId(), film.getId());
+        if (likes.isEmpty()) {
             log.warn("Фильма " + film + " нет в списке.");
             throw new FilmNotExistException("Данного фильма не существует.");
         }
-        //film table
-        String sql = "UPDATE film SET name = ?, description = ?, release_date = ?, duration = ?, " +
-                "mpa_id = ? WHERE film_id = ?";
-        jdbcTemplate.update(sql, film.getName(),
-                film.getDescription(), film.getReleaseDate(), film.getDuration(), film.getMpa().getId(), film.getId());
-        //film_genre table
-        updateFilmGenre(film);
+        film.setLikes(likes.get(0) + likeWriteBehind.pendingDelta(film.getId()));
+        //film_genre table: одним MERGE добавляем недостающие жанры и удаляем лишние
+        sql = "MERGE INTO film_genres fg USING (" +
+                "SELECT CAST(? AS INTEGER) AS film_id, g.genre_id, TRUE AS keep " +
+                "FROM UNNEST(CAST(? AS INTEGER ARRAY)) AS g(genre_id) " +
+                "UNION ALL SELECT film_id, genre_id, FALSE FROM film_genres WHERE film_id = ? " +
+                "AND NOT ARRAY_CONTAINS(CAST(? AS INTEGER ARRAY), genre_id)) s " +
+                "ON fg.film_id = s.film_id AND fg.genre_id = s.genre_id " +
+                "WHEN MATCHED AND s.keep = FALSE THEN DELETE " +
+                "WHEN NOT MATCHED THEN INSERT (film_id, genre_id) VALUES (s.film_id, s.genre_id)";
+        Integer[] genreIds = genreIds(film);
+        jdbcTemplate.update(sql, film.getId(), genreIds, film.getId(), genreIds);
+        Transactions.afterCommit(() -> {
+            filmVersions.bump(film.getId());
+            searchIndex.index(film.getId(), film.getName(), film.getDescription());
+            facetIndex.index(Films.facetAttributes(film));
+        });
         log.debug("Обновлён фильм: " + film);
         return film;
     }
 
-    private void updateFilmGenre(Film film) {
-        String sql = "SELECT genre_id FROM genres WHERE genre_id IN (SELECT genre_id FROM film_genres WHERE film_id = ?)";
-        Set<Integer> sqlTableGenres = new HashSet<>(
-                jdbcTemplate.queryForList(sql, Integer.class, film.getId()));
-        Set<Integer> filmGenres = new HashSet<>();
-        if (film.getGenres() != null) {
-            filmGenres = film.getGenres().stream().map(FilmGenre::getId).collect(Collectors.toSet());
+    private static Integer[] genreIds(Film film) {
+        return film.getGenres().stream().map(FilmGenre::getId).toArray(Integer[]::new);
+    }
+
+    @Override
+    @Transactional
+    public void setLike(int filmId, int userId) {
+        if (likeWriteBehind.isEnabled()) {
+            likeWriteBehind.submit(filmId, userId, true, () -> !likeIndex.contains(userId, filmId), () -> {
+                popularityIndex.change(filmId, 1);
+                likeIndex.add(userId, filmId);
+                trendingIndex.add(filmId, Instant.now());
+                filmVersions.bump(filmId);
+            });
+            return;
         }
-        if (!filmGenres.isEmpty()) { //если жанры объекта film не пустые, добавляем тех, что нет в таблице
-            sql = "INSERT INTO film_genres (film_id,genre_id) VALUES (?,?)";
-            updateGenreTable(sql, filmGenres, sqlTableGenres, film.getId());
+        Instant likedAt = Instant.now();
+        String sql = "INSERT INTO film_likes(film_id, user_id, liked_at) SELECT ?, ?, ? " +
+                "WHERE NOT EXISTS (SELECT 1 FROM film_likes WHERE film_id = ? AND user_id = ?)";
+        int inserted;
+        try {
+            inserted = jdbcTemplate.update(sql, filmId, userId, Timestamp.from(likedAt), filmId, userId);
+        } catch (DuplicateKeyException e) {
+            //параллельный запрос успел поставить этот же лайк
+            inserted = 0;
         }
-        if (!sqlTableGenres.isEmpty()) { //если жанры таблицы фильма не пустые, удаляем те, которых нет в объекте film
-            sql = "DELETE FROM film_genres WHERE film_id = ? AND genre_id = ?";
-            updateGenreTable(sql, sqlTableGenres, filmGenres, film.getId());
+        if (inserted > 0) {
+            changeFilmLikes(filmId, 1);
+            Transactions.afterCommit(() -> {
+                popularityIndex.change(filmId, 1);
+                likeIndex.add(userId, filmId);
+                trendingIndex.add(filmId, likedAt);
+                filmVersions.bump(filmId);
+            });
         }
     }
 
-    private void updateGenreTable(String sql, Set<Integer> removeFrom, Set<Integer> removableElements, int filmId) {
-        Set<Integer> diff = new HashSet<>(removeFrom);
-        diff.removeAll(removableElements);
-        if (diff.isEmpty()) {
+    @Override
+    @Transactional
+    public void deleteLike(int filmId, int userId) {
+        if (likeWriteBehind.isEnabled()) {
+            //лайк, ещё не перенесённый из журнала в БД, поставлен только что
+            List<Timestamp> stored = jdbcTemplate.queryForList(
+                    "SELECT liked_at FROM film_likes WHERE film_id = ? AND user_id = ?", Timestamp.class, filmId, userId);
+            Instant likedAt = stored.isEmpty() ? Instant.now() : toInstant(stored.get(0));
+            likeWriteBehind.submit(filmId, userId, false, () -> likeIndex.contains(userId, filmId), () -> {
+                popularityIndex.change(filmId, -1);
+                likeIndex.remove(userId, filmId);
+                if (likedAt != null) {
+                    trendingIndex.remove(filmId, likedAt);
+                }
+                filmVersions.bump(filmId);
+            });
             return;
         }
-        List<Object[]> args = diff.stream()
-                .map(genreId -> new Object[]{filmId, genreId})
-                .collect(Collectors.toList());
-        jdbcTemplate.batchUpdate(sql, args);
+        //время удалённого лайка нужно, чтобы вычесть его из своего интервала
+        String sql = "SELECT liked_at FROM OLD TABLE (DELETE FROM film_likes WHERE film_id = ? AND user_id = ?)";
+        List<Timestamp> deleted = jdbcTemplate.queryForList(sql, Timestamp.class, filmId, userId);
+        if (!deleted.isEmpty()) {
+            Instant likedAt = toInstant(deleted.get(0));
+            changeFilmLikes(filmId, -1);
+            Transactions.afterCommit(() -> {
+                popularityIndex.change(filmId, -1);
+                likeIndex.remove(userId, filmId);
+                if (likedAt != null) {
+                    trendingIndex.remove(filmId, likedAt);
+                }
+                filmVersions.bump(filmId);
+            });
+        }
     }
 
     @Override
-    public void setLike(int filmId, int userId) {
-        String sql = "INSERT INTO film_likes(film_id, user_id) VALUES(?,?)";
-        jdbcTemplate.update(sql, filmId, userId);
-        updateFilmLikes(filmId);
+    public void setLikes(List<FilmLike> likes) {
+        if (likes.isEmpty()) {
+            return;
+        }
+        //импорт пишет в БД напрямую, поэтому сначала применяем отложенные лайки, чтобы не нарушить порядок
+        likeWriteBehind.drain();
+        //время импортированных лайков неизвестно, в популярное за период они не попадают
+        String sql = "INSERT INTO film_likes(film_id, user_id, liked_at) SELECT ?, ?, NULL " +
+                "WHERE NOT EXISTS (SELECT 1 FROM film_likes WHERE film_id = ? AND user_id = ?)";
+        int[] inserted = jdbcTemplate.batchUpdate(sql, likes.stream()
+                .map(like -> new Object[]{like.getFilmId(), like.getUserId(), like.getFilmId(), like.getUserId()})
+                .collect(Collectors.toList()));
+        Map<Integer, Integer> deltas = new HashMap<>();
+        List<FilmLike> insertedLikes = new ArrayList<>();
+        for (int i = 0; i < inserted.length; i++) {
+            if (inserted[i] > 0) {
+                deltas.merge(likes.get(i).getFilmId(), 1, Integer::sum);
+                insertedLikes.add(likes.get(i));
+            }
+        }
+        sql = "UPDATE film SET likes = likes + ? WHERE film_id = ?";
+        jdbcTemplate.batchUpdate(sql, deltas.entrySet().stream()
+                .map(delta -> new Object[]{delta.getValue(), delta.getKey()})
+                .collect(Collectors.toList()));
+        Transactions.afterCommit(() -> {
+            deltas.forEach(popularityIndex::change);
+            insertedLikes.forEach(like -> likeIndex.add(like.getUserId(), like.getFilmId()));
+            deltas.keySet().forEach(filmVersions::bump);
+        });
     }
 
     @Override
-    public void deleteLike(int filmId, int userId) {
-        String sql = "DELETE FROM film_likes WHERE film_id = ? AND user_id = ?";
-        jdbcTemplate.update(sql, filmId, userId);
-        updateFilmLikes(filmId);
+    public Set<Integer> findExistingIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new HashSet<>();
+        }
+        String sql = "SELECT film_id FROM film WHERE film_id IN (" +
+                String.join(",", Collections.nCopies(ids.size(), "?")) + ")";
+        return new HashSet<>(jdbcTemplate.queryForList(sql, Integer.class, ids.toArray()));
+    }
+
+    //итоговое состояние пар из журнала отложенной записи: постоянное число запросов на любую пачку
+    private void applyLikes(int[] filmIds, int[] userIds, boolean[] liked, int size) {
+        Integer[] films = new Integer[size];
+        Integer[] users = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            films[i] = filmIds[i];
+            users[i] = userIds[i];
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            Set<Long> existing = new HashSet<>();
+            jdbcTemplate.query("SELECT fl.film_id, fl.user_id FROM " + LIKE_PAIRS +
+                    " JOIN film_likes fl ON fl.film_id = p.film_id AND fl.user_id = p.user_id", rs -> {
+                existing.add(pair(rs.getInt("film_id"), rs.getInt("user_id")));
+            }, films, users);
+            List<Integer> insertFilms = new ArrayList<>();
+            List<Integer> insertUsers = new ArrayList<>();
+            List<Integer> deleteFilms = new ArrayList<>();
+            List<Integer> deleteUsers = new ArrayList<>();
+            Map<Integer, Integer> deltas = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                boolean exists = existing.contains(pair(filmIds[i], userIds[i]));
+                if (liked[i] && !exists) {
+                    insertFilms.add(filmIds[i]);
+                    insertUsers.add(userIds[i]);
+                    deltas.merge(filmIds[i], 1, Integer::sum);
+                } else if (!liked[i] && exists) {
+                    deleteFilms.add(filmIds[i]);
+                    deleteUsers.add(userIds[i]);
+                    deltas.merge(filmIds[i], -1, Integer::sum);
+                }
+            }
+            if (!insertFilms.isEmpty()) {
+                jdbcTemplate.update("INSERT INTO film_likes (film_id, user_id) " +
+                                "SELECT p.film_id, p.user_id FROM " + LIKE_PAIRS,
+                        insertFilms.toArray(new Integer[0]), insertUsers.toArray(new Integer[0]));
+            }
+            if (!deleteFilms.isEmpty()) {
+                jdbcTemplate.update("MERGE INTO film_likes fl USING (SELECT p.film_id, p.user_id FROM " +
+                                LIKE_PAIRS + ") p ON fl.film_id = p.film_id AND fl.user_id = p.user_id " +
+                                "WHEN MATCHED THEN DELETE",
+                        deleteFilms.toArray(new Integer[0]), deleteUsers.toArray(new Integer[0]));
+            }
+            deltas.values().removeIf(delta -> delta == 0);
+            if (!deltas.isEmpty()) {
+                jdbcTemplate.update("MERGE INTO film f USING (SELECT d.film_id, d.delta FROM " +
+                                "UNNEST(CAST(? AS INTEGER ARRAY), CAST(? AS INTEGER ARRAY)) AS d(film_id, delta)) d " +
+                                "ON f.film_id = d.film_id WHEN MATCHED THEN UPDATE SET likes = f.likes + d.delta",
+                        deltas.keySet().toArray(new Integer[0]), deltas.values().toArray(new Integer[0]));
+            }
+        });
     }
 
-    private void updateFilmLikes(int filmId) {
+    //отклонённое БД событие журнала: индексы возвращаются к состоянию пары в БД. Время лайка в журнале
+    //не хранится, а переносится он почти сразу, поэтому из трендов лайк вычитается по текущему времени
+    private void revertLike(int filmId, int userId, boolean liked) {
+        if (likeIndex.contains(userId, filmId) != liked) {
+            //пару уже изменило более позднее событие, оно и определит её состояние
+            return;
+        }
+        if (liked) {
+            popularityIndex.change(filmId, -1);
+            likeIndex.remove(userId, filmId);
+            trendingIndex.remove(filmId, Instant.now());
+        } else {
+            popularityIndex.change(filmId, 1);
+            likeIndex.add(userId, filmId);
+        }
+        filmVersions.bump(filmId);
+    }
+
+    private static long pair(int filmId, int userId) {
+        return (long) filmId << 32 | userId;
+    }
+
+    private void changeFilmLikes(int filmId, int delta) {
+        String sql = "UPDATE film SET likes = likes + ? WHERE film_id = ?";
+        jdbcTemplate.update(sql, delta, filmId);
+    }
+
+    public void reconcileLikes(int chunkSize) {
+        likeWriteBehind.drain();
+        //пересчитываем счётчики диапазонами film_id, чтобы не держать блокировку на всей таблице
         String sql = "UPDATE film f SET likes = " +
-                "(SELECT COUNT(fl.user_id) FROM film_likes fl WHERE fl.film_id = f.film_id) WHERE film_id = ?";
-        jdbcTemplate.update(sql, filmId);
+                "(SELECT COUNT(fl.user_id) FROM film_likes fl WHERE fl.film_id = f.film_id) " +
+                "WHERE f.film_id > ? AND f.film_id <= ?";
+        int lastId = getLastAddedFilmId();
+        int updated = 0;
+        for (int from = 0; from < lastId; from += chunkSize) {
+            updated += jdbcTemplate.update(sql, from, from + chunkSize);
+        }
+        log.info("Пересчитаны лайки фильмов: " + updated);
+        Transactions.afterCommit(this::rebuildPopularityIndex);
+    }
+
+    private void rebuildPopularityIndex() {
+        String sql = "SELECT film_id, likes FROM film";
+        Map<Integer, Integer> likes = new HashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            likes.put(rs.getInt("film_id"), rs.getInt("likes"));
+        });
+        popularityIndex.rebuild(likes);
+        filmVersions.reset(likes.keySet());
+    }
+
+    private void rebuildTrendingIndex() {
+        String sql = "SELECT film_id, liked_at FROM film_likes WHERE liked_at >= ?";
+        trendingIndex.clear();
+        jdbcTemplate.query(sql, rs -> {
+            trendingIndex.add(rs.getInt("film_id"), rs.getTimestamp("liked_at").toInstant());
+        }, Timestamp.from(Instant.now().minus(FilmTrendingIndex.MAX_WINDOW)));
+    }
+
+    //null — лайк поставлен до появления времени лайков или импортирован
+    private static Instant toInstant(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toInstant();
+    }
+
+    private void rebuildLikeIndex() {
+        int[][] likes = {new int[1024], new int[1024]};
+        int[] size = new int[1];
+        jdbcTemplate.query("SELECT user_id, film_id FROM film_likes", rs -> {
+            if (size[0] == likes[0].length) {
+                likes[0] = Arrays.copyOf(likes[0], size[0] * 2);
+                likes[1] = Arrays.copyOf(likes[1], size[0] * 2);
+            }
+            likes[0][size[0]] = rs.getInt("user_id");
+            likes[1][size[0]++] = rs.getInt("film_id");
+        });
+        likeIndex.rebuild(likes[0], likes[1], size[0]);
+        log.info("Загружен индекс лайков: лайков " + size[0]);
+    }
+
+    private void rebuildSearchIndex() {
+        int[][] ids = {new int[1024]};
+        String[][] texts = {new String[1024], new String[1024]};
+        int[] size = new int[1];
+        jdbcTemplate.query("SELECT film_id, name, description FROM film ORDER BY film_id", rs -> {
+            if (size[0] == ids[0].length) {
+                ids[0] = Arrays.copyOf(ids[0], size[0] * 2);
+                texts[0] = Arrays.copyOf(texts[0], size[0] * 2);
+                texts[1] = Arrays.copyOf(texts[1], size[0] * 2);
+            }
+            ids[0][size[0]] = rs.getInt("film_id");
+            texts[0][size[0]] = rs.getString("name");
+            texts[1][size[0]++] = rs.getString("description");
+        });
+        searchIndex.rebuild(ids[0], texts[0], texts[1], size[0]);
+        log.info("Построен поисковый индекс: фильмов " + size[0]);
+    }
+
+    private void rebuildFacetIndex() {
+        Map<Integer, List<Integer>> genres = new HashMap<>();
+        jdbcTemplate.query("SELECT film_id, genre_id FROM film_genres", rs -> {
+            genres.computeIfAbsent(rs.getInt("film_id"), key -> new ArrayList<>()).add(rs.getInt("genre_id"));
+        });
+        List<FilmFacetIndex.Attributes> films = new ArrayList<>();
+        jdbcTemplate.query("SELECT film_id, release_date, duration, mpa_id FROM film", rs -> {
+            int filmId = rs.getInt("film_id");
+            int mpaId = rs.getInt("mpa_id");
+            films.add(new FilmFacetIndex.Attributes(filmId,
+                    genres.getOrDefault(filmId, List.of()).stream().mapToInt(Integer::intValue).toArray(),
+                    rs.wasNull() ? null : mpaId,
+                    rs.getObject("release_date", LocalDate.class),
+                    rs.getInt("duration")));
+        });
+        facetIndex.rebuild(films);
+        log.info("Построены индексы фильтров: фильмов " + films.size());
+    }
+
+    @Override
+    public FacetedPage<Film> findAll(FilmFilter filter, int offset, int limit) {
+        FacetedPage<Integer> page = facetIndex.filter(filter, offset, limit,
+                popularityIndex::getLikes, popularityIndex::forEachRanked);
+        return new FacetedPage<>(getFilms(page.getItems()), null, page.getTotal(), page.getFacets());
+    }
+
+    @Override
+    public List<Film> search(String query, int limit) {
+        int[] found = searchIndex.search(query, limit, popularityIndex::getLikes);
+        return getFilms(Arrays.stream(found).boxed().collect(Collectors.toList()));
+    }
+
+    @Override
+    public List<Film> getRecommendations(int userId, int count) {
+        return getFilms(Arrays.stream(likeIndex.recommend(userId, count)).boxed().collect(Collectors.toList()));
+    }
+
+    @Override
+    public Long getFilmVersion(int id) {
+        return filmVersions.getVersion(id);
+    }
+
+    @Override
+    public long getTopLikedFilmsVersion(int count) {
+        //версия меняется, только если изменился состав или порядок рейтинга либо один из фильмов в нём
+        long version = count;
+        for (int filmId : popularityIndex.top(count)) {
+            Long filmVersion = filmVersions.getVersion(filmId);
+            version = 31 * (31 * version + filmId) + (filmVersion == null ? 0 : filmVersion);
+        }
+        return version;
     }
 
     @Override
     public List<Film> topLikedFilms(int count) {
-        String sql = "SELECT f.*, m.mpa_id AS mpa_id, m.name AS mpa_name FROM film f, MPA m " +
-                "WHERE f.mpa_id = m.mpa_id ORDER BY f.likes DESC LIMIT ?";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeFilm(rs), count);
+        //рейтинг берём из индекса в памяти, из БД читаем только сами фильмы по первичному ключу
+        return getFilms(popularityIndex.top(count));
+    }
+
+    @Override
+    public List<Film> trendingFilms(TrendingWindow window, int count) {
+        return getFilms(trendingIndex.top(window, count, Instant.now()));
     }
 
     @Override
     public void loadGenre(List<Film> films) {
+        if (films.isEmpty()) {
+            return;
+        }
         Map<Integer, Film> filmsMap = films.stream().collect(
                 Collectors.toMap(Film::getId, Function.identity()));
-        String sql = "SELECT fg.genre_id AS genre_id, g.name AS name, fg.film_id as film_id FROM film_genres AS fg " +
-                "LEFT JOIN genres AS g ON fg.genre_id = g.genre_id " +
-                "WHERE fg.film_id IN (" + String.join(",", Collections.nCopies(films.size(), "?")) + ")";
-        List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql, filmsMap.keySet().toArray());
-        rows.forEach(filmMap -> {
-            int filmId = Integer.parseInt(String.valueOf(filmMap.get("film_id")));
-            filmsMap.get(filmId).getGenres().add(
-                    new FilmGenre(Integer.parseInt(String.valueOf(filmMap.get("genre_id"))),
-                            String.valueOf(filmMap.get("name"))));
-        });
+        String sql = "SELECT film_id, genre_id FROM film_genres " +
+                "WHERE film_id IN (" + String.join(",", Collections.nCopies(filmsMap.size(), "?")) + ") " +
+                "ORDER BY film_id, genre_id";
+        //названия жанров берём из справочника, а не из JOIN с таблицей genres
+        jdbcTemplate.query(sql, rs -> {
+            filmsMap.get(rs.getInt("film_id")).getGenres().add(filmInformation.getGenre(rs.getInt("genre_id")));
+        }, filmsMap.keySet().toArray());
     }
 
     private int getLastAddedFilmId() {
@@ -0,0 +1,260 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FacetedPage;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.FilmSort;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+//битовые карты id фильмов по жанру, рейтингу MPA и году выхода.
+//id выдаются диапазонами последовательности, пропуски остаются лишь от недоразданных диапазонов,
+//поэтому карты почти плотные и несжатые слова занимают немного памяти
+@Component
+public class FilmFacetIndex {
+    public static final String GENRE_FACET = "genre";
+    public static final String MPA_FACET = "mpa";
+    public static final String YEAR_FACET = "year";
+    //если фильтр оставил меньше этой доли фильмов, сортируем найденные, а не обходим весь порядок
+    private static final int SELECTIVE_RATIO = 8;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Bitmap all = new Bitmap();
+    private final Map<Integer, Bitmap> byGenre = new HashMap<>();
+    private final Map<Integer, Bitmap> byMpa = new HashMap<>();
+    private final NavigableMap<Integer, Bitmap> byYear = new TreeMap<>();
+    //ключ: значение атрибута в старших 32 битах, id фильма в младших
+    private final NavigableSet<Long> byReleaseDate = new TreeSet<>();
+    private final NavigableSet<Long> byDuration = new TreeSet<>();
+    private final Map<Integer, Attributes> attributes = new HashMap<>();
+
+    public void rebuild(Collection<Attributes> films) {
+        lock.writeLock().lock();
+        try {
+            all.clear();
+            byGenre.clear();
+            byMpa.clear();
+            byYear.clear();
+            byReleaseDate.clear();
+            byDuration.clear();
+            attributes.clear();
+            films.forEach(this::add);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void index(Attributes film) {
+        lock.writeLock().lock();
+        try {
+            Attributes old = attributes.get(film.filmId);
+            if (old != null) {
+                remove(old);
+            }
+            add(film);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //likes нужен для сортировки по популярности; ranked обходит фильмы в порядке убывания лайков
+    public FacetedPage<Integer> filter(FilmFilter filter, int offset, int limit,
+                                       IntUnaryOperator likes, RankedFilms ranked) {
+        lock.readLock().lock();
+        try {
+            Bitmap genres = union(byGenre, filter.getGenres());
+            Bitmap mpa = union(byMpa, filter.getMpa());
+            Bitmap years = null;
+            if (filter.getYearFrom() != null || filter.getYearTo() != null) {
+                int from = filter.getYearFrom() == null ? Integer.MIN_VALUE : filter.getYearFrom();
+                int to = filter.getYearTo() == null ? Integer.MAX_VALUE : filter.getYearTo();
+                years = from > to ? new Bitmap() : union(byYear.subMap(from, true, to, true).values());
+            }
+            //у каждого фасета своя база: все фильтры, кроме фильтра по самому фасету,
+            //чтобы клиент видел, сколько фильмов получит, выбрав другое значение
+            Map<String, Map<Integer, Integer>> facets = new LinkedHashMap<>();
+            facets.put(GENRE_FACET, counts(byGenre, intersect(mpa, years)));
+            facets.put(MPA_FACET, counts(byMpa, intersect(genres, years)));
+            facets.put(YEAR_FACET, counts(byYear, intersect(genres, mpa)));
+            Bitmap matched = intersect(intersect(genres, mpa), years);
+            int total = matched.cardinality();
+            List<Integer> ids = page(matched, total, filter.getSort(), offset, limit, likes, ranked);
+            return new FacetedPage<>(ids, null, total, facets);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Integer> page(Bitmap matched, int total, FilmSort sort, int offset, int limit,
+                               IntUnaryOperator likes, RankedFilms ranked) {
+        List<Integer> ids = new ArrayList<>(Math.max(Math.min(limit, total - offset), 0));
+        if (offset >= total) {
+            return ids;
+        }
+        int[] skipped = {0};
+        IntPredicate collect = filmId -> {
+            if (matched.get(filmId) && skipped[0]++ >= offset) {
+                ids.add(filmId);
+            }
+            return ids.size() < limit;
+        };
+        if (sort == FilmSort.ID) {
+            int id = matched.nextSetBit(0);
+            while (id >= 0 && collect.test(id)) {
+                id = matched.nextSetBit(id + 1);
+            }
+        } else if ((long) total * SELECTIVE_RATIO < attributes.size()) {
+            long[] keys = new long[total];
+            int n = 0;
+            for (int id = matched.nextSetBit(0); id >= 0; id = matched.nextSetBit(id + 1)) {
+                keys[n++] = key(sort, attributes.get(id), likes);
+            }
+            Arrays.sort(keys);
+            for (int i = offset; i < keys.length && ids.size() < limit; i++) {
+                ids.add(filmId(keys[i]));
+            }
+        } else if (sort == FilmSort.LIKES) {
+            ranked.forEachRanked(collect);
+        } else {
+            for (long key : sort == FilmSort.RELEASE_DATE ? byReleaseDate : byDuration) {
+                if (!collect.test(filmId(key))) {
+                    break;
+                }
+            }
+        }
+        return ids;
+    }
+
+    private void add(Attributes film) {
+        int id = film.filmId;
+        all.set(id);
+        for (int genreId : film.genreIds) {
+            byGenre.computeIfAbsent(genreId, key -> new Bitmap()).set(id);
+        }
+        if (film.mpaId != null) {
+            byMpa.computeIfAbsent(film.mpaId, key -> new Bitmap()).set(id);
+        }
+        byYear.computeIfAbsent(film.releaseDate.getYear(), key -> new Bitmap()).set(id);
+        byReleaseDate.add(key(FilmSort.RELEASE_DATE, film, null));
+        byDuration.add(key(FilmSort.DURATION, film, null));
+        attributes.put(id, film);
+    }
+
+    private void remove(Attributes film) {
+        int id = film.filmId;
+        all.clear(id);
+        for (int genreId : film.genreIds) {
+            clear(byGenre, genreId, id);
+        }
+        if (film.mpaId != null) {
+            clear(byMpa, film.mpaId, id);
+        }
+        clear(byYear, film.releaseDate.getYear(), id);
+        byReleaseDate.remove(key(FilmSort.RELEASE_DATE, film, null));
+        byDuration.remove(key(FilmSort.DURATION, film, null));
+        attributes.remove(id);
+    }
+
+    private static void clear(Map<Integer, Bitmap> index, int value, int filmId) {
+        Bitmap films = index.get(value);
+        if (films != null) {
+            films.clear(filmId);
+            if (films.isEmpty()) {
+                index.remove(value);
+            }
+        }
+    }
+
+    //null — фильтр не задан
+    private static Bitmap union(Map<Integer, Bitmap> index, Set<Integer> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        List<Bitmap> selected = new ArrayList<>();
+        for (int value : values) {
+            Bitmap films = index.get(value);
+            if (films != null) {
+                selected.add(films);
+            }
+        }
+        return union(selected);
+    }
+
+    private static Bitmap union(Collection<Bitmap> sets) {
+        Bitmap result = new Bitmap();
+        sets.forEach(result::or);
+        return result;
+    }
+
+    //аргументы не изменяются; null означает «без ограничения»
+    private Bitmap intersect(Bitmap first, Bitmap second) {
+        if (first == null && second == null) {
+            return all;
+        }
+        if (first == null || second == null) {
+            return first == null ? second : first;
+        }
+        Bitmap result = first.copy();
+        result.and(second);
+        return result;
+    }
+
+    private static Map<Integer, Integer> counts(Map<Integer, Bitmap> index, Bitmap base) {
+        Map<Integer, Integer> counts = new TreeMap<>();
+        index.forEach((value, films) -> {
+            int count = Bitmap.andCardinality(films, base);
+            if (count > 0) {
+                counts.put(value, count);
+            }
+        });
+        return counts;
+    }
+
+    private static long key(FilmSort sort, Attributes film, IntUnaryOperator likes) {
+        long value;
+        switch (sort) {
+            case LIKES:
+                value = Integer.MAX_VALUE - Math.max(likes.applyAsInt(film.filmId), 0);
+                break;
+            case RELEASE_DATE:
+                value = film.releaseDate.toEpochDay();
+                break;
+            case DURATION:
+                value = film.duration;
+                break;
+            default:
+                value = 0;
+        }
+        return value << 32 | film.filmId;
+    }
+
+    private static int filmId(long key) {
+        return (int) key;
+    }
+
+    public static final class Attributes {
+        private final int filmId;
+        private final int[] genreIds;
+        private final Integer mpaId;
+        private final LocalDate releaseDate;
+        private final int duration;
+
+        public Attributes(int filmId, int[] genreIds, Integer mpaId, LocalDate releaseDate, int duration) {
+            this.filmId = filmId;
+            this.genreIds = genreIds;
+            this.mpaId = mpaId;
+            this.releaseDate = releaseDate;
+            this.duration = duration;
+        }
+    }
+
+    public interface RankedFilms {
+        //обход прекращается, когда consumer вернёт false
+        void forEachRanked(IntPredicate consumer);
+    }
+}
@@ -13,4 +13,8 @@ public interface FilmInformation {
     FilmMpa getMpa(int mpaId);
 
     Set<FilmMpa> getAllMpa();
+
+    void refresh();
+
+    long getVersion();
 }
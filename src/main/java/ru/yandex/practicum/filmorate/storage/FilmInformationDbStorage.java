@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.FilmInformationNotExistException;
@@ -8,25 +9,26 @@ import ru.yandex.practicum.filmorate.model.FilmMpa;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.LinkedHashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.function.Function;
 
+@Slf4j
 @Component
 public class FilmInformationDbStorage implements FilmInformation {
     private final JdbcTemplate jdbcTemplate;
+    //жанры и рейтинги меняются только через schema.sql, поэтому держим их в памяти
+    private volatile Dictionary dictionary;
 
     public FilmInformationDbStorage(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
+        refresh();
     }
 
     @Override
     public FilmGenre getGenre(int genreId) {
-        String sql = "SELECT * FROM GENRES where genre_id = ?";
-        List<FilmGenre> filmGenre =
-                jdbcTemplate.query(sql, (rs, rowNum) -> makeFilmGenre(rs), genreId);
-        if (!filmGenre.isEmpty()) {
-            return filmGenre.get(0);
+        FilmGenre filmGenre = dictionary.genres.get(genreId);
+        if (filmGenre != null) {
+            return filmGenre;
         } else {
             throw new FilmInformationNotExistException("Жанра с id: " + genreId + " не существует");
         }
@@ -34,16 +36,14 @@ public class FilmInformationDbStorage implements FilmInformation {
 
     @Override
     public Set<FilmGenre> getAllGenres() {
-        String sql = "SELECT * FROM GENRES ORDER BY genre_id";
-        return new LinkedHashSet<>(jdbcTemplate.query(sql, (rs, rowNum) -> makeFilmGenre(rs)));
+        return dictionary.allGenres;
     }
 
     @Override
     public FilmMpa getMpa(int mpaId) {
-        String sql = "SELECT * FROM mpa WHERE mpa_id = ?";
-        List<FilmMpa> filmMpa = jdbcTemplate.query(sql, (rs, rowNum) -> makeFilmMpa(rs), mpaId);
-        if (!filmMpa.isEmpty()) {
-            return filmMpa.get(0);
+        FilmMpa filmMpa = dictionary.mpa.get(mpaId);
+        if (filmMpa != null) {
+            return filmMpa;
         } else {
             throw new FilmInformationNotExistException("MPA с id: " + mpaId + " не существует");
         }
@@ -51,8 +51,22 @@ public class FilmInformationDbStorage implements FilmInformation {
 
     @Override
     public Set<FilmMpa> getAllMpa() {
-        String sql = "SELECT * FROM MPA ORDER BY mpa_id";
-        return new LinkedHashSet<>(jdbcTemplate.query(sql, (rs, rowNum) -> makeFilmMpa(rs)));
+        return dictionary.allMpa;
+    }
+
+    @Override
+    public long getVersion() {
+        return dictionary.version;
+    }
+
+    @Override
+    public void refresh() {
+        String sql = "SELECT * FROM GENRES ORDER BY genre_id";
+        List<FilmGenre> genres = jdbcTemplate.query(sql, (rs, rowNum) -> makeFilmGenre(rs));
+        sql = "SELECT * FROM MPA ORDER BY mpa_id";
+        List<FilmMpa> mpa = jdbcTemplate.query(sql, (rs, rowNum) -> makeFilmMpa(rs));
+        dictionary = new Dictionary(genres, mpa);
+        log.debug("Загружено жанров: " + genres.size() + ", рейтингов MPA: " + mpa.size());
     }
 
     private FilmMpa makeFilmMpa(ResultSet rs) throws SQLException {
@@ -62,4 +76,27 @@ public class FilmInformationDbStorage implements FilmInformation {
     private FilmGenre makeFilmGenre(ResultSet rs) throws SQLException {
         return new FilmGenre(rs.getInt("genre_id"), rs.getString("name"));
     }
+
+    private static final class Dictionary {
+        private final Map<Integer, FilmGenre> genres;
+        private final Set<FilmGenre> allGenres;
+        private final Map<Integer, FilmMpa> mpa;
+        private final Set<FilmMpa> allMpa;
+        //зависит только от содержимого справочников, поэтому совпадает на всех экземплярах и после перезапуска
+        private final long version;
+
+        private Dictionary(List<FilmGenre> genres, List<FilmMpa> mpa) {
+            this.genres = index(genres, FilmGenre::getId);
+            this.allGenres = Collections.unmodifiableSet(new LinkedHashSet<>(genres));
+            this.mpa = index(mpa, FilmMpa::getId);
+            this.allMpa = Collections.unmodifiableSet(new LinkedHashSet<>(mpa));
+            this.version = Objects.hash(genres, mpa);
+        }
+
+        private static <T> Map<Integer, T> index(List<T> values, Function<T, Integer> idGetter) {
+            Map<Integer, T> map = new HashMap<>();
+            values.forEach(value -> map.put(idGetter.apply(value), value));
+            return Collections.unmodifiableMap(map);
+        }
+    }
 }
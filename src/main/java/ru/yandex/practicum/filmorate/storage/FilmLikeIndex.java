@@ -0,0 +1,96 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ObjIntConsumer;
+
+//лайки в памяти в обе стороны: пользователь -> отсортированные id фильмов и фильм -> отсортированные id пользователей
+@Component
+public class FilmLikeIndex {
+    //сходство пользователей переводим в целые веса, чтобы считать очки в IntCountMap
+    private static final int WEIGHT_SCALE = 1_000_000;
+
+    private final Map<Integer, int[]> userFilms = new ConcurrentHashMap<>();
+    private final Map<Integer, int[]> filmUsers = new ConcurrentHashMap<>();
+    private final int maxNeighbours;
+    private final int maxFanout;
+
+    public FilmLikeIndex(@Value("${filmorate.recommendations.max-neighbours:50}") int maxNeighbours,
+                         @Value("${filmorate.recommendations.max-fanout:1000}") int maxFanout) {
+        this.maxNeighbours = maxNeighbours;
+        this.maxFanout = maxFanout;
+    }
+
+    //пары передаются массивами: userIds[i] поставил лайк filmIds[i]
+    public void rebuild(int[] userIds, int[] filmIds, int size) {
+        Map<Integer, int[]> films = SortedIntArrays.group(userIds, filmIds, size);
+        Map<Integer, int[]> users = SortedIntArrays.group(filmIds, userIds, size);
+        userFilms.clear();
+        filmUsers.clear();
+        userFilms.putAll(films);
+        filmUsers.putAll(users);
+    }
+
+    public void add(int userId, int filmId) {
+        userFilms.compute(userId, (key, ids) -> SortedIntArrays.insert(ids, filmId));
+        filmUsers.compute(filmId, (key, ids) -> SortedIntArrays.insert(ids, userId));
+    }
+
+    public void remove(int userId, int filmId) {
+        userFilms.computeIfPresent(userId, (key, ids) -> SortedIntArrays.delete(ids, filmId));
+        filmUsers.computeIfPresent(filmId, (key, ids) -> SortedIntArrays.delete(ids, userId));
+    }
+
+    public boolean contains(int userId, int filmId) {
+        return SortedIntArrays.contains(getLikedFilms(userId), filmId);
+    }
+
+    //обход отсортированных массивов лайкнутых фильмов по пользователям; массивы нельзя изменять
+    public void forEachUser(ObjIntConsumer<int[]> consumer) {
+        userFilms.forEach((userId, filmIds) -> consumer.accept(filmIds, userId));
+    }
+
+    //возвращаемый массив нельзя изменять
+    public int[] getLikedFilms(int userId) {
+        return userFilms.getOrDefault(userId, SortedIntArrays.EMPTY);
+    }
+
+    //фильмы, которые нравятся похожим пользователям, упорядоченные по сумме их сходства с userId
+    public int[] recommend(int userId, int count) {
+        int[] liked = getLikedFilms(userId);
+        if (liked.length == 0) {
+            return SortedIntArrays.EMPTY;
+        }
+        //пересечение множеств лайков со всеми, кто лайкал те же фильмы, за один проход по спискам фильмов
+        IntCountMap overlaps = new IntCountMap(liked.length * 16);
+        for (int filmId : liked) {
+            int[] users = filmUsers.getOrDefault(filmId, SortedIntArrays.EMPTY);
+            //у очень популярных фильмов берём равномерную выборку пользователей, чтобы ограничить обход
+            int step = users.length > maxFanout ? (users.length + maxFanout - 1) / maxFanout : 1;
+            for (int i = 0; i < users.length; i += step) {
+                if (users[i] != userId) {
+                    overlaps.increment(users[i], 1);
+                }
+            }
+        }
+        //сходство Жаккара: |A ∩ B| / |A ∪ B|
+        IntCountMap similarity = new IntCountMap(overlaps.size());
+        overlaps.forEach((otherId, overlap) -> {
+            int union = liked.length + getLikedFilms(otherId).length - overlap;
+            similarity.increment(otherId, (int) ((long) overlap * WEIGHT_SCALE / Math.max(union, 1)));
+        });
+        IntCountMap scores = new IntCountMap(maxNeighbours * 16);
+        for (int otherId : similarity.top(maxNeighbours, SortedIntArrays.EMPTY)) {
+            int weight = similarity.get(otherId);
+            for (int filmId : getLikedFilms(otherId)) {
+                if (!SortedIntArrays.contains(liked, filmId)) {
+                    scores.increment(filmId, weight);
+                }
+            }
+        }
+        return scores.top(count, SortedIntArrays.EMPTY);
+    }
+}
@@ -0,0 +1,515 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.FilmAlreadyExistException;
+import ru.yandex.practicum.filmorate.exception.FilmDataException;
+import ru.yandex.practicum.filmorate.exception.FilmNotExistException;
+import ru.yandex.practicum.filmorate.model.FacetedPage;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+//фильмы и лайки целиком в памяти, долговечность — через журнал и снимки MemoryJournal.
+//справочники жанров и рейтингов по-прежнему читаются из БД
+@Slf4j
+@Component
+@Qualifier("filmStorage")
+@ConditionalOnProperty(name = "filmorate.storage.engine", havingValue = "memory")
+public class FilmMemoryStorage implements FilmStorage, MemoryJournal.Participant {
+    private static final String JOURNAL_NAME = "films";
+    private static final byte PUT = 'P';
+    private static final byte LIKE = 'L';
+    private static final byte UNLIKE = 'D';
+
+    private final MemoryJournal journal;
+    private final FilmInformation filmInformation;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmLikeIndex likeIndex;
+    private final FilmVersions filmVersions;
+    private final FilmSearchIndex searchIndex;
+    private final FilmFacetIndex facetIndex;
+    private final FilmTrendingIndex trendingIndex;
+    private final MemoryTable<StoredFilm> films = new MemoryTable<>();
+    //время лайков, которые ещё попадают в популярное за период; ключ — пара (film_id, user_id)
+    private final Map<Long, Long> recentLikes = new ConcurrentHashMap<>();
+
+    public FilmMemoryStorage(MemoryJournal journal, FilmInformation filmInformation,
+                             FilmPopularityIndex popularityIndex, FilmLikeIndex likeIndex, FilmVersions filmVersions,
+                             FilmSearchIndex searchIndex, FilmFacetIndex facetIndex, FilmTrendingIndex trendingIndex) {
+        this.journal = journal;
+        this.filmInformation = filmInformation;
+        this.popularityIndex = popularityIndex;
+        this.likeIndex = likeIndex;
+        this.filmVersions = filmVersions;
+        this.searchIndex = searchIndex;
+        this.facetIndex = facetIndex;
+        this.trendingIndex = trendingIndex;
+        likeIndex.rebuild(new int[0], new int[0], 0);
+        journal.recover(JOURNAL_NAME, this);
+        rebuildIndexes();
+    }
+
+    @Override
+    public List<Film> findAll() {
+        List<Film> result = new ArrayList<>(films.size());
+        films.forEach(0, film -> result.add(makeFilm(film)));
+        return result;
+    }
+
+    @Override
+    public List<Film> findAll(int limit, int afterId) {
+        List<Film> result = new ArrayList<>();
+        if (limit > 0) {
+            films.forEach(afterId, film -> result.add(makeFilm(film)) && result.size() < limit);
+        }
+        return result;
+    }
+
+    @Override
+    public Film getFilm(int id) {
+        StoredFilm film = films.get(id);
+        if (film == null) {
+            throw new FilmNotExistException("Фильма с id: " + id + " не существует");
+        }
+        return makeFilm(film);
+    }
+
+    @Override
+    public List<Film> getFilms(List<Integer> ids) {
+        List<Film> result = new ArrayList<>(ids.size());
+        for (int id : ids) {
+            StoredFilm film = films.get(id);
+            if (film != null) {
+                result.add(makeFilm(film));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void exportAll(Consumer<Film> consumer) {
+        films.forEach(0, stored -> {
+            Film film = makeFilm(stored);
+            addGenres(film, stored);
+            consumer.accept(film);
+            return true;
+        });
+    }
+
+    private Film makeFilm(StoredFilm film) {
+        return new Film(film.id,
+                film.name,
+                film.description,
+                film.releaseDate,
+                film.duration,
+                popularityIndex.getLikes(film.id),
+                new LinkedHashSet<>(),
+                film.mpaId == 0 ? null : filmInformation.getMpa(film.mpaId));
+    }
+
+    private void addGenres(Film film, StoredFilm stored) {
+        for (int genreId : stored.genreIds) {
+            film.getGenres().add(filmInformation.getGenre(genreId));
+        }
+    }
+
+    @Override
+    public Film create(Film film) {
+        if (film.getId() != 0 && getFilm(film.getId()) != null) {
+            log.warn("Передан фильм который уже был добавлен " + film);
+            throw new FilmAlreadyExistException("Фильм с названием " + film.getName() + " уже есть в списке фильмов.");
+        }
+        if (film.getReleaseDate().isBefore(Film.FIRST_FILM_RELEASE_DATE)) {
+            log.warn("Передан фильм с невозможной датой выхода " + film);
+            throw new FilmDataException("Дата релиза фильма не может быть раньше 28 декабря 1895 года.");
+        }
+        Films.resolveReferences(film, filmInformation);
+        Films.checkColumns(film);
+        film.setId(films.nextId());
+        film.setLikes(0);
+        store(film);
+        popularityIndex.update(film.getId(), 0);
+        log.debug("Добавлен фильм: " + film);
+        return film;
+    }
+
+    //в отличие от БД пачка не атомарна: пачка проверяется целиком до записи, но если запись в журнал
+    //всё же упадёт, фильмы до ошибки остаются с id, а у остальных id сбрасывается, и импорт повторит только их
+    @Override
+    public void createAll(List<Film> films) {
+        films.forEach(Films::checkColumns);
+        for (Film film : films) {
+            film.setId(this.films.nextId());
+            try {
+                store(film);
+            } catch (RuntimeException e) {
+                film.setId(0);
+                throw e;
+            }
+            popularityIndex.update(film.getId(), 0);
+        }
+        log.debug("Добавлено фильмов: " + films.size());
+    }
+
+    @Override
+    public Film put(Film film) {
+        Films.resolveReferences(film, filmInformation);
+        Films.checkColumns(film);
+        synchronized (films.lock(film.getId())) {
+            if (films.get(film.getId()) == null) {
+                log.warn("Фильма " + film + " нет в списке.");
+                throw new FilmNotExistException("Данного фильма не существует.");
+            }
+            store(film);
+        }
+        film.setLikes(popularityIndex.getLikes(film.getId()));
+        log.debug("Обновлён фильм: " + film);
+        return film;
+    }
+
+    private void store(Film film) {
+        StoredFilm stored = new StoredFilm(film);
+        synchronized (films.lock(stored.id)) {
+            journal.append(JOURNAL_NAME, out -> {
+                out.writeByte(PUT);
+                stored.write(out);
+            }, () -> films.put(stored.id, stored));
+        }
+        filmVersions.bump(stored.id);
+        searchIndex.index(stored.id, stored.name, stored.description);
+        facetIndex.index(Films.facetAttributes(film));
+    }
+
+    @Override
+    public void setLike(int filmId, int userId) {
+        Instant likedAt = Instant.now();
+        synchronized (films.lock(filmId)) {
+            if (likeIndex.contains(userId, filmId)) {
+                return;
+            }
+            journal.append(JOURNAL_NAME, out -> writeLike(out, LIKE, filmId, userId, likedAt.toEpochMilli()), () -> {
+                likeIndex.add(userId, filmId);
+                recentLikes.put(pair(filmId, userId), likedAt.toEpochMilli());
+            });
+        }
+        popularityIndex.change(filmId, 1);
+        trendingIndex.add(filmId, likedAt);
+        filmVersions.bump(filmId);
+    }
+
+    @Override
+    public void deleteLike(int filmId, int userId) {
+        Long likedAt;
+        synchronized (films.lock(filmId)) {
+            if (!likeIndex.contains(userId, filmId)) {
+                return;
+            }
+            likedAt = recentLikes.get(pair(filmId, userId));
+            journal.append(JOURNAL_NAME, out -> writeLike(out, UNLIKE, filmId, userId, 0), () -> {
+                likeIndex.remove(userId, filmId);
+                recentLikes.remove(pair(filmId, userId));
+            });
+        }
+        popularityIndex.change(filmId, -1);
+        if (likedAt != null) {
+            trendingIndex.remove(filmId, Instant.ofEpochMilli(likedAt));
+        }
+        filmVersions.bump(filmId);
+    }
+
+    //время импортированных лайков неизвестно, в популярное за период они не попадают
+    @Override
+    public void setLikes(List<FilmLike> likes) {
+        for (FilmLike like : likes) {
+            int filmId = like.getFilmId();
+            int userId = like.getUserId();
+            synchronized (films.lock(filmId)) {
+                if (likeIndex.contains(userId, filmId)) {
+                    continue;
+                }
+                journal.append(JOURNAL_NAME, out -> writeLike(out, LIKE, filmId, userId, 0),
+                        () -> likeIndex.add(userId, filmId));
+            }
+            popularityIndex.change(filmId, 1);
+            filmVersions.bump(filmId);
+        }
+    }
+
+    private static void writeLike(DataOutput out, byte type, int filmId, int userId, long likedAt) throws IOException {
+        out.writeByte(type);
+        out.writeInt(filmId);
+        out.writeInt(userId);
+        out.writeLong(likedAt);
+    }
+
+    @Override
+    public Set<Integer> findExistingIds(Collection<Integer> ids) {
+        return ids.stream()
+                .filter(id -> films.get(id) != null)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public FacetedPage<Film> findAll(FilmFilter filter, int offset, int limit) {
+        FacetedPage<Integer> page = facetIndex.filter(filter, offset, limit,
+                popularityIndex::getLikes, popularityIndex::forEachRanked);
+        return new FacetedPage<>(getFilms(page.getItems()), null, page.getTotal(), page.getFacets());
+    }
+
+    @Override
+    public List<Film> search(String query, int limit) {
+        int[] found = searchIndex.search(query, limit, popularityIndex::getLikes);
+        return getFilms(Arrays.stream(found).boxed().collect(Collectors.toList()));
+    }
+
+    @Override
+    public List<Film> getRecommendations(int userId, int count) {
+        return getFilms(Arrays.stream(likeIndex.recommend(userId, count)).boxed().collect(Collectors.toList()));
+    }
+
+    @Override
+    public Long getFilmVersion(int id) {
+        return filmVersions.getVersion(id);
+    }
+
+    @Override
+    public long getTopLikedFilmsVersion(int count) {
+        long version = count;
+        for (int filmId : popularityIndex.top(count)) {
+            Long filmVersion = filmVersions.getVersion(filmId);
+            version = 31 * (31 * version + filmId) + (filmVersion == null ? 0 : filmVersion);
+        }
+        return version;
+    }
+
+    @Override
+    public List<Film> topLikedFilms(int count) {
+        return getFilms(popularityIndex.top(count));
+    }
+
+    @Override
+    public List<Film> trendingFilms(TrendingWindow window, int count) {
+        return getFilms(trendingIndex.top(window, count, Instant.now()));
+    }
+
+    @Override
+    public void loadGenre(List<Film> films) {
+        for (Film film : films) {
+            StoredFilm stored = this.films.get(film.getId());
+            if (stored != null) {
+                addGenres(film, stored);
+            }
+        }
+    }
+
+    //снимок: фильмы, затем лайки по пользователям, затем время недавних лайков
+    @Override
+    public void writeSnapshot(DataOutput out) throws IOException {
+        //снимок снимается без остановки записи и число записей заранее неизвестно,
+        //поэтому конец каждого списка отмечается нулевым id
+        List<IOException> failures = new ArrayList<>();
+        films.forEach(0, film -> write(failures, () -> film.write(out)));
+        out.writeInt(0);
+        likeIndex.forEachUser((filmIds, userId) -> write(failures, () -> {
+            out.writeInt(userId);
+            out.writeInt(filmIds.length);
+            for (int filmId : filmIds) {
+                out.writeInt(filmId);
+            }
+        }));
+        out.writeInt(0);
+        long since = Instant.now().minus(FilmTrendingIndex.MAX_WINDOW).toEpochMilli();
+        recentLikes.values().removeIf(likedAt -> likedAt < since);
+        Map<Long, Long> recent = new HashMap<>(recentLikes);
+        out.writeInt(recent.size());
+        for (Map.Entry<Long, Long> like : recent.entrySet()) {
+            out.writeLong(like.getKey());
+            out.writeLong(like.getValue());
+        }
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+    }
+
+    private static boolean write(List<IOException> failures, IoAction action) {
+        if (!failures.isEmpty()) {
+            return false;
+        }
+        try {
+            action.run();
+            return true;
+        } catch (IOException e) {
+            failures.add(e);
+            return false;
+        }
+    }
+
+    @Override
+    public void readSnapshot(DataInput in) throws IOException {
+        for (int id = in.readInt(); id != 0; id = in.readInt()) {
+            films.put(id, StoredFilm.read(id, in));
+        }
+        int[] userIds = new int[1024];
+        int[] filmIds = new int[1024];
+        int size = 0;
+        for (int userId = in.readInt(); userId != 0; userId = in.readInt()) {
+            int liked = in.readInt();
+            if (size + liked > userIds.length) {
+                userIds = Arrays.copyOf(userIds, Math.max(userIds.length * 2, size + liked));
+                filmIds = Arrays.copyOf(filmIds, userIds.length);
+            }
+            for (int i = 0; i < liked; i++) {
+                userIds[size] = userId;
+                filmIds[size++] = in.readInt();
+            }
+        }
+        likeIndex.rebuild(userIds, filmIds, size);
+        int recent = in.readInt();
+        for (int i = 0; i < recent; i++) {
+            recentLikes.put(in.readLong(), in.readLong());
+        }
+    }
+
+    @Override
+    public void replay(DataInput in) throws IOException {
+        byte type = in.readByte();
+        if (type == PUT) {
+            int id = in.readInt();
+            films.put(id, StoredFilm.read(id, in));
+            return;
+        }
+        int filmId = in.readInt();
+        int userId = in.readInt();
+        long likedAt = in.readLong();
+        if (type == LIKE) {
+            likeIndex.add(userId, filmId);
+            if (likedAt != 0) {
+                recentLikes.put(pair(filmId, userId), likedAt);
+            }
+        } else {
+            likeIndex.remove(userId, filmId);
+            recentLikes.remove(pair(filmId, userId));
+        }
+    }
+
+    //индексы, которые хранилище на БД строит запросами, здесь строятся из восстановленного состояния
+    private void rebuildIndexes() {
+        Map<Integer, Integer> likes = new HashMap<>();
+        List<FilmFacetIndex.Attributes> attributes = new ArrayList<>(films.size());
+        int[] ids = new int[films.size()];
+        String[] names = new String[films.size()];
+        String[] descriptions = new String[films.size()];
+        int[] size = new int[1];
+        films.forEach(0, film -> {
+            likes.put(film.id, 0);
+            attributes.add(new FilmFacetIndex.Attributes(film.id, film.genreIds,
+                    film.mpaId == 0 ? null : film.mpaId, film.releaseDate, film.duration));
+            ids[size[0]] = film.id;
+            names[size[0]] = film.name;
+            descriptions[size[0]++] = film.description;
+            return true;
+        });
+        int[] total = new int[1];
+        likeIndex.forEachUser((filmIds, userId) -> {
+            for (int filmId : filmIds) {
+                likes.merge(filmId, 1, Integer::sum);
+            }
+            total[0] += filmIds.length;
+        });
+        popularityIndex.rebuild(likes);
+        filmVersions.reset(likes.keySet());
+        searchIndex.rebuild(ids, names, descriptions, size[0]);
+        facetIndex.rebuild(attributes);
+        trendingIndex.clear();
+        long since = Instant.now().minus(FilmTrendingIndex.MAX_WINDOW).toEpochMilli();
+        recentLikes.values().removeIf(likedAt -> likedAt < since);
+        recentLikes.forEach((pair, likedAt) -> trendingIndex.add((int) (pair >>> 32), Instant.ofEpochMilli(likedAt)));
+        log.info("Загружены фильмы из памяти: фильмов " + size[0] + ", лайков " + total[0]);
+    }
+
+    private static long pair(int filmId, int userId) {
+        return (long) filmId << 32 | userId;
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    //неизменяемая запись фильма; рейтинг и жанры хранятся id, названия берутся из справочника
+    private static final class StoredFilm {
+        private final int id;
+        private final String name;
+        private final String description;
+        private final LocalDate releaseDate;
+        private final int duration;
+        //0 — рейтинг не задан
+        private final int mpaId;
+        private final int[] genreIds;
+
+        private StoredFilm(int id, String name, String description, LocalDate releaseDate, int duration,
+                           int mpaId, int[] genreIds) {
+            this.id = id;
+            this.name = name;
+            this.description = description;
+            this.releaseDate = releaseDate;
+            this.duration = duration;
+            this.mpaId = mpaId;
+            this.genreIds = genreIds;
+        }
+
+        private StoredFilm(Film film) {
+            this(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(), film.getDuration(),
+                    film.getMpa() == null ? 0 : film.getMpa().getId(),
+                    film.getGenres() == null ? new int[0] : film.getGenres().stream()
+                            .mapToInt(FilmGenre::getId)
+                            .distinct()
+                            .sorted()
+                            .toArray());
+        }
+
+        private void write(DataOutput out) throws IOException {
+            out.writeInt(id);
+            out.writeUTF(name);
+            out.writeBoolean(description != null);
+            if (description != null) {
+                out.writeUTF(description);
+            }
+            out.writeLong(releaseDate.toEpochDay());
+            out.writeInt(duration);
+            out.writeInt(mpaId);
+            out.writeInt(genreIds.length);
+            for (int genreId : genreIds) {
+                out.writeInt(genreId);
+            }
+        }
+
+        //id записан первым и уже прочитан
+        private static StoredFilm read(int id, DataInput in) throws IOException {
+            String name = in.readUTF();
+            String description = in.readBoolean() ? in.readUTF() : null;
+            LocalDate releaseDate = LocalDate.ofEpochDay(in.readLong());
+            int duration = in.readInt();
+            int mpaId = in.readInt();
+            int[] genreIds = new int[in.readInt()];
+            for (int i = 0; i < genreIds.length; i++) {
+                genreIds[i] = in.readInt();
+            }
+            return new StoredFilm(id, name, description, releaseDate, duration, mpaId, genreIds);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.IntPredicate;
+
+@Component
+public class FilmPopularityIndex {
+    //перестроение собирает новый индекс целиком и подменяет его одной записью ссылки,
+    //поэтому чтение не видит наполовину очищенный индекс
+    private volatile Ranking current = new Ranking();
+
+    public void rebuild(Map<Integer, Integer> likes) {
+        Ranking rebuilt = new Ranking();
+        likes.forEach(rebuilt::update);
+        current = rebuilt;
+    }
+
+    public void update(int filmId, int likes) {
+        current.update(filmId, likes);
+    }
+
+    public void change(int filmId, int delta) {
+        current.change(filmId, delta);
+    }
+
+    public void remove(int filmId) {
+        current.remove(filmId);
+    }
+
+    public int getLikes(int filmId) {
+        return current.filmLikes.getOrDefault(filmId, 0);
+    }
+
+    public List<Integer> top(int count) {
+        //во время обновления фильм может ненадолго встретиться дважды, поэтому собираем в Set
+        Set<Integer> top = new LinkedHashSet<>();
+        Iterator<Long> iterator = current.ranked.iterator();
+        while (top.size() < count && iterator.hasNext()) {
+            top.add(filmId(iterator.next()));
+        }
+        return new ArrayList<>(top);
+    }
+
+    //обход всех фильмов по убыванию лайков, пока consumer возвращает true
+    public void forEachRanked(IntPredicate consumer) {
+        BitSet seen = new BitSet();
+        for (long key : current.ranked) {
+            int filmId = filmId(key);
+            if (!seen.get(filmId)) {
+                seen.set(filmId);
+                if (!consumer.test(filmId)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static long key(int filmId, int likes) {
+        return ((long) (Integer.MAX_VALUE - Math.max(likes, 0)) << 32) | filmId;
+    }
+
+    private static int filmId(long key) {
+        return (int) key;
+    }
+
+    private static final class Ranking {
+        private final Map<Integer, Integer> filmLikes = new ConcurrentHashMap<>();
+        //ключ упорядочен по убыванию лайков, при равенстве — по возрастанию id фильма
+        private final NavigableSet<Long> ranked = new ConcurrentSkipListSet<>();
+
+        private void update(int filmId, int likes) {
+            filmLikes.compute(filmId, (id, oldLikes) -> {
+                move(id, oldLikes, likes);
+                return likes;
+            });
+        }
+
+        private void change(int filmId, int delta) {
+            filmLikes.compute(filmId, (id, oldLikes) -> {
+                int likes = oldLikes == null ? delta : oldLikes + delta;
+                move(id, oldLikes, likes);
+                return likes;
+            });
+        }
+
+        //сначала новый ключ, потом удаление старого: обход top() может на миг встретить фильм дважды,
+        //но не пропустит его, если уже прошёл новую позицию и ещё не дошёл до старой
+        private void move(int filmId, Integer oldLikes, int likes) {
+            long key = key(filmId, likes);
+            ranked.add(key);
+            if (oldLikes != null) {
+                long oldKey = key(filmId, oldLikes);
+                if (oldKey != key) {
+                    ranked.remove(oldKey);
+                }
+            }
+        }
+
+        private void remove(int filmId) {
+            filmLikes.computeIfPresent(filmId, (id, oldLikes) -> {
+                ranked.remove(key(id, oldLikes));
+                return null;
+            });
+        }
+    }
+}
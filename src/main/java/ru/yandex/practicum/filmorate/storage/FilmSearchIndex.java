@@ -0,0 +1,462 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+//инвертированный индекс по названию и описанию фильмов.
+//словарь терминов упорядочен, поэтому префиксный поиск — это обход диапазона ключей.
+//списки фильмов у термина не изменяются после публикации, изменение подменяет их копией
+@Component
+public class FilmSearchIndex {
+    //совпадение в названии весит больше, чем в описании
+    private static final int NAME_WEIGHT = 3;
+    private static final int DESCRIPTION_WEIGHT = 1;
+    //насыщение веса термина: десятое повторение слова почти ничего не добавляет
+    private static final float SATURATION = 1.2f;
+    //термин, который только начинается с введённого префикса, ценится ниже точного совпадения
+    private static final float PREFIX_MATCH = 0.5f;
+    private static final int MAX_TOKEN_LENGTH = 32;
+    //совпадения по словам запроса отмечаются битами маски
+    private static final int MAX_QUERY_TOKENS = 16;
+
+    private final ConcurrentSkipListMap<String, Postings> terms = new ConcurrentSkipListMap<>();
+    private final Map<Integer, String[]> filmTerms = new ConcurrentHashMap<>();
+    //промежуточные очки переиспользуются между запросами одного потока
+    private final ThreadLocal<Scores> scratch = ThreadLocal.withInitial(() -> new Scores(256));
+    private final int maxLimit;
+    private final int maxExpansions;
+    private final float likesWeight;
+    private final int buildChunkSize;
+
+    public FilmSearchIndex(@Value("${filmorate.search.max-limit:100}") int maxLimit,
+                           @Value("${filmorate.search.max-prefix-expansions:64}") int maxExpansions,
+                           @Value("${filmorate.search.likes-weight:0.5}") float likesWeight,
+                           @Value("${filmorate.search.build-chunk-size:10000}") int buildChunkSize) {
+        this.maxLimit = maxLimit;
+        this.maxExpansions = maxExpansions;
+        this.likesWeight = likesWeight;
+        this.buildChunkSize = buildChunkSize;
+    }
+
+    //фильмы передаются массивами, отсортированными по возрастанию id
+    public synchronized void rebuild(int[] filmIds, String[] names, String[] descriptions, int size) {
+        Map<Integer, String[]> forward = new ConcurrentHashMap<>();
+        int chunks = (size + buildChunkSize - 1) / buildChunkSize;
+        //каждый кусок индексируется отдельно, куски идут по возрастанию id,
+        //поэтому при слиянии списки фильмов остаются отсортированными простым дописыванием
+        List<Map<String, IntPairs>> parts = IntStream.range(0, chunks)
+                .parallel()
+                .mapToObj(chunk -> {
+                    Map<String, IntPairs> part = new HashMap<>();
+                    int to = Math.min(size, (chunk + 1) * buildChunkSize);
+                    for (int i = chunk * buildChunkSize; i < to; i++) {
+                        Map<String, Integer> weights = weights(names[i], descriptions[i]);
+                        int filmId = filmIds[i];
+                        if (!weights.isEmpty()) {
+                            forward.put(filmId, weights.keySet().toArray(new String[0]));
+                        }
+                        weights.forEach((term, weight) ->
+                                part.computeIfAbsent(term, key -> new IntPairs()).add(filmId, weight));
+                    }
+                    return part;
+                })
+                .collect(Collectors.toList());
+        Map<String, IntPairs> merged = new HashMap<>();
+        for (Map<String, IntPairs> part : parts) {
+            part.forEach((term, pairs) -> merged.merge(term, pairs, IntPairs::addAll));
+        }
+        terms.clear();
+        filmTerms.clear();
+        merged.forEach((term, pairs) -> terms.put(term, pairs.toPostings()));
+        filmTerms.putAll(forward);
+    }
+
+    //индексы пишутся редко, а изменение фильма затрагивает несколько терминов — сериализуем его целиком
+    public synchronized void index(int filmId, String name, String description) {
+        Map<String, Integer> weights = weights(name, description);
+        for (String term : filmTerms.getOrDefault(filmId, new String[0])) {
+            if (!weights.containsKey(term)) {
+                terms.computeIfPresent(term, (key, postings) -> postings.delete(filmId));
+            }
+        }
+        weights.forEach((term, weight) ->
+                terms.compute(term, (key, postings) -> Postings.upsert(postings, filmId, weight)));
+        if (weights.isEmpty()) {
+            filmTerms.remove(filmId);
+        } else {
+            filmTerms.put(filmId, weights.keySet().toArray(new String[0]));
+        }
+    }
+
+    //id фильмов по убыванию релевантности; фильм должен подходить под каждое слово запроса
+    public int[] search(String query, int limit, IntUnaryOperator likes) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            return SortedIntArrays.EMPTY;
+        }
+        if (tokens.size() > MAX_QUERY_TOKENS) {
+            tokens = tokens.subList(0, MAX_QUERY_TOKENS);
+        }
+        List<Collection<Map.Entry<String, Postings>>> expansions = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            Collection<Map.Entry<String, Postings>> matched = expand(token);
+            if (matched.isEmpty()) {
+                return SortedIntArrays.EMPTY;
+            }
+            expansions.add(matched);
+        }
+        //начинаем с самого редкого слова: остальные только уточняют уже найденных кандидатов
+        int seed = 0;
+        long seedSize = Long.MAX_VALUE;
+        for (int i = 0; i < expansions.size(); i++) {
+            long matchedSize = 0;
+            for (Map.Entry<String, Postings> entry : expansions.get(i)) {
+                matchedSize += entry.getValue().films.length;
+            }
+            if (matchedSize < seedSize) {
+                seed = i;
+                seedSize = matchedSize;
+            }
+        }
+        int documents = Math.max(filmTerms.size(), 1);
+        Scores scores = scratch.get();
+        scores.clear();
+        accumulate(scores, tokens.get(seed), expansions.get(seed), seed, true, documents);
+        for (int i = 0; i < expansions.size(); i++) {
+            if (i != seed) {
+                accumulate(scores, tokens.get(i), expansions.get(i), i, false, documents);
+            }
+        }
+        return scores.top(Math.min(limit, maxLimit), (1 << tokens.size()) - 1, likes, likesWeight);
+    }
+
+    private Collection<Map.Entry<String, Postings>> expand(String token) {
+        ConcurrentNavigableMap<String, Postings> range = terms.subMap(token, true, token + Character.MAX_VALUE, false);
+        if (range.isEmpty()) {
+            return Collections.emptyList();
+        }
+        //точное совпадение всегда первое в диапазоне, дальше — не больше maxExpansions продолжений
+        List<Map.Entry<String, Postings>> matched = new ArrayList<>();
+        for (Map.Entry<String, Postings> entry : range.entrySet()) {
+            if (matched.size() == maxExpansions) {
+                break;
+            }
+            matched.add(entry);
+        }
+        return matched;
+    }
+
+    private static void accumulate(Scores scores, String token, Collection<Map.Entry<String, Postings>> matched,
+                                   int tokenIndex, boolean seed, int documents) {
+        for (Map.Entry<String, Postings> entry : matched) {
+            Postings postings = entry.getValue();
+            int[] films = postings.films;
+            int[] weights = postings.weights;
+            float df = films.length;
+            float idf = (float) Math.log(1 + (documents - df + 0.5f) / (df + 0.5f));
+            if (!entry.getKey().equals(token)) {
+                idf *= PREFIX_MATCH;
+            }
+            for (int i = 0; i < films.length; i++) {
+                float weight = weights[i];
+                scores.add(films[i], tokenIndex, idf * weight * (SATURATION + 1) / (weight + SATURATION), seed);
+            }
+        }
+    }
+
+    private static Map<String, Integer> weights(String name, String description) {
+        Map<String, Integer> weights = new HashMap<>();
+        for (String term : tokenize(name)) {
+            weights.merge(term, NAME_WEIGHT, Integer::sum);
+        }
+        for (String term : tokenize(description)) {
+            weights.merge(term, DESCRIPTION_WEIGHT, Integer::sum);
+        }
+        return weights;
+    }
+
+    //слова — непрерывные последовательности букв и цифр любого алфавита; регистр и «ё» не различаются
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                c = Character.toLowerCase(c);
+                if (token.length() < MAX_TOKEN_LENGTH) {
+                    token.append(c == 'ё' ? 'е' : c);
+                }
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    private static final class Postings {
+        private final int[] films;
+        private final int[] weights;
+
+        private Postings(int[] films, int[] weights) {
+            this.films = films;
+            this.weights = weights;
+        }
+
+        private static Postings upsert(Postings postings, int filmId, int weight) {
+            if (postings == null) {
+                return new Postings(new int[]{filmId}, new int[]{weight});
+            }
+            int index = Arrays.binarySearch(postings.films, filmId);
+            if (index >= 0) {
+                if (postings.weights[index] == weight) {
+                    return postings;
+                }
+                int[] weights = postings.weights.clone();
+                weights[index] = weight;
+                return new Postings(postings.films, weights);
+            }
+            index = -index - 1;
+            int length = postings.films.length;
+            int[] films = new int[length + 1];
+            int[] weights = new int[length + 1];
+            System.arraycopy(postings.films, 0, films, 0, index);
+            System.arraycopy(postings.weights, 0, weights, 0, index);
+            films[index] = filmId;
+            weights[index] = weight;
+            System.arraycopy(postings.films, index, films, index + 1, length - index);
+            System.arraycopy(postings.weights, index, weights, index + 1, length - index);
+            return new Postings(films, weights);
+        }
+
+        //null означает, что у термина не осталось фильмов и его можно удалить из словаря
+        private Postings delete(int filmId) {
+            int index = Arrays.binarySearch(films, filmId);
+            if (index < 0) {
+                return this;
+            }
+            if (films.length == 1) {
+                return null;
+            }
+            int[] newFilms = new int[films.length - 1];
+            int[] newWeights = new int[films.length - 1];
+            System.arraycopy(films, 0, newFilms, 0, index);
+            System.arraycopy(weights, 0, newWeights, 0, index);
+            System.arraycopy(films, index + 1, newFilms, index, films.length - index - 1);
+            System.arraycopy(weights, index + 1, newWeights, index, weights.length - index - 1);
+            return new Postings(newFilms, newWeights);
+        }
+    }
+
+    //растущие массивы пар (фильм, вес) для сборки индекса
+    private static final class IntPairs {
+        private int[] films = new int[4];
+        private int[] weights = new int[4];
+        private int size;
+
+        private void add(int filmId, int weight) {
+            if (size == films.length) {
+                films = Arrays.copyOf(films, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            films[size] = filmId;
+            weights[size++] = weight;
+        }
+
+        private IntPairs addAll(IntPairs other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.films[i], other.weights[i]);
+            }
+            return this;
+        }
+
+        private Postings toPostings() {
+            return new Postings(Arrays.copyOf(films, size), Arrays.copyOf(weights, size));
+        }
+    }
+
+    //очки кандидатов с открытой адресацией. Для каждого слова запроса берётся лучший из подошедших
+    //терминов, чтобы «фильм» и «фильмы» по префиксу «фильм» не считались дважды
+    private static final class Scores {
+        private static final int FREE = Integer.MIN_VALUE;
+
+        private int[] keys;
+        private float[] totals;
+        private float[] best;
+        private int[] lastToken;
+        private int[] masks;
+        private int[] used;
+        private int size;
+
+        private Scores(int capacity) {
+            allocate(capacity);
+        }
+
+        private void allocate(int capacity) {
+            keys = new int[capacity];
+            totals = new float[capacity];
+            best = new float[capacity];
+            lastToken = new int[capacity];
+            masks = new int[capacity];
+            used = new int[capacity / 2];
+            Arrays.fill(keys, FREE);
+        }
+
+        //очищаем только занятые ячейки, а не весь массив
+        private void clear() {
+            for (int i = 0; i < size; i++) {
+                keys[used[i]] = FREE;
+            }
+            size = 0;
+        }
+
+        private void add(int filmId, int token, float score, boolean insert) {
+            int mask = keys.length - 1;
+            int index = mix(filmId) & mask;
+            while (keys[index] != FREE && keys[index] != filmId) {
+                index = (index + 1) & mask;
+            }
+            if (keys[index] == FREE) {
+                //кандидатов даёт только первое слово, остальные их лишь отсеивают
+                if (!insert) {
+                    return;
+                }
+                keys[index] = filmId;
+                totals[index] = 0;
+                best[index] = score;
+                lastToken[index] = token;
+                masks[index] = 1 << token;
+                used[size++] = index;
+                if (size == used.length) {
+                    grow();
+                }
+                return;
+            }
+            if (lastToken[index] == token) {
+                best[index] = Math.max(best[index], score);
+            } else {
+                totals[index] += best[index];
+                best[index] = score;
+                lastToken[index] = token;
+                masks[index] |= 1 << token;
+            }
+        }
+
+        private int[] top(int limit, int fullMask, IntUnaryOperator likes, float likesWeight) {
+            //минимальная куча на limit элементов: в корне худший из лучших
+            int[] heapIds = new int[Math.max(limit, 0)];
+            float[] heapScores = new float[heapIds.length];
+            int heapSize = 0;
+            for (int i = 0; i < size && heapIds.length > 0; i++) {
+                int index = used[i];
+                if (masks[index] != fullMask) {
+                    continue;
+                }
+                int filmId = keys[index];
+                float score = totals[index] + best[index]
+                        + likesWeight * (float) Math.log1p(Math.max(likes.applyAsInt(filmId), 0));
+                if (heapSize < heapIds.length) {
+                    heapIds[heapSize] = filmId;
+                    heapScores[heapSize] = score;
+                    siftUp(heapIds, heapScores, heapSize++);
+                } else if (better(score, filmId, heapScores[0], heapIds[0])) {
+                    heapIds[0] = filmId;
+                    heapScores[0] = score;
+                    siftDown(heapIds, heapScores, heapSize);
+                }
+            }
+            int[] top = new int[heapSize];
+            for (int i = heapSize - 1; i >= 0; i--) {
+                top[i] = heapIds[0];
+                heapIds[0] = heapIds[i];
+                heapScores[0] = heapScores[i];
+                siftDown(heapIds, heapScores, i);
+            }
+            return top;
+        }
+
+        //при равных очках выше фильм с меньшим id
+        private static boolean better(float score, int filmId, float otherScore, int otherId) {
+            return score > otherScore || score == otherScore && filmId < otherId;
+        }
+
+        private static void siftUp(int[] ids, float[] scores, int index) {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (!better(scores[parent], ids[parent], scores[index], ids[index])) {
+                    return;
+                }
+                swap(ids, scores, index, parent);
+                index = parent;
+            }
+        }
+
+        private static void siftDown(int[] ids, float[] scores, int size) {
+            int index = 0;
+            while (true) {
+                int worst = index;
+                for (int child = 2 * index + 1; child <= 2 * index + 2 && child < size; child++) {
+                    if (better(scores[worst], ids[worst], scores[child], ids[child])) {
+                        worst = child;
+                    }
+                }
+                if (worst == index) {
+                    return;
+                }
+                swap(ids, scores, index, worst);
+                index = worst;
+            }
+        }
+
+        private static void swap(int[] ids, float[] scores, int i, int j) {
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            float score = scores[i];
+            scores[i] = scores[j];
+            scores[j] = score;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            float[] oldTotals = totals;
+            float[] oldBest = best;
+            int[] oldLastToken = lastToken;
+            int[] oldMasks = masks;
+            int[] oldUsed = used;
+            int oldSize = size;
+            allocate(oldKeys.length * 2);
+            size = 0;
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldSize; i++) {
+                int old = oldUsed[i];
+                int index = mix(oldKeys[old]) & mask;
+                while (keys[index] != FREE) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[old];
+                totals[index] = oldTotals[old];
+                best[index] = oldBest[old];
+                lastToken[index] = oldLastToken[old];
+                masks[index] = oldMasks[old];
+                used[size++] = index;
+            }
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
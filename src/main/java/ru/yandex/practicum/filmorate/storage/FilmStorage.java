@@ -1,24 +1,55 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import ru.yandex.practicum.filmorate.model.FacetedPage;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     List<Film> findAll();
 
+    List<Film> findAll(int limit, int afterId);
+
+    FacetedPage<Film> findAll(FilmFilter filter, int offset, int limit);
+
     Film create(Film film);
 
+    void createAll(List<Film> films);
+
     Film put(Film film);
 
     Film getFilm(int id);
 
+    List<Film> getFilms(List<Integer> ids);
+
     void setLike(int filmId, int userId);
 
     void deleteLike(int filmId, int userId);
 
+    void setLikes(List<FilmLike> likes);
+
+    Set<Integer> findExistingIds(Collection<Integer> ids);
+
     List<Film> topLikedFilms(int count);
 
+    List<Film> trendingFilms(TrendingWindow window, int count);
+
+    Long getFilmVersion(int id);
+
+    long getTopLikedFilmsVersion(int count);
+
+    List<Film> getRecommendations(int userId, int count);
+
+    List<Film> search(String query, int limit);
+
     void loadGenre(List<Film> films);
+
+    void exportAll(Consumer<Film> consumer);
 }
\ No newline at end of file
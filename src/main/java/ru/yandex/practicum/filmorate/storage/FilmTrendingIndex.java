@@ -0,0 +1,165 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+//лайки за последние час, сутки и неделю в кольцевых буферах интервалов по каждому фильму.
+//В памяти только фильмы, получавшие лайки за последнюю неделю; устаревшие интервалы
+//обнуляются при следующей записи, а фильмы без свежих лайков удаляются при обходе
+@Component
+public class FilmTrendingIndex {
+    //час: 12 интервалов по 5 минут
+    private static final long FINE_BUCKET_MILLIS = Duration.ofMinutes(5).toMillis();
+    private static final int FINE_BUCKETS = 12;
+    //сутки и неделя: 168 интервалов по часу
+    private static final long COARSE_BUCKET_MILLIS = Duration.ofHours(1).toMillis();
+    private static final int COARSE_BUCKETS = 168;
+    public static final Duration MAX_WINDOW = Duration.ofMillis(COARSE_BUCKET_MILLIS * COARSE_BUCKETS);
+
+    private final Map<Integer, Trend> trends = new ConcurrentHashMap<>();
+    private final int maxLimit;
+
+    public FilmTrendingIndex(@Value("${filmorate.trending.max-limit:100}") int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    public void clear() {
+        trends.clear();
+    }
+
+    public void add(int filmId, Instant likedAt) {
+        change(filmId, likedAt, 1);
+    }
+
+    //лайк, поставленный раньше начала недели, в буферах уже не учитывается
+    public void remove(int filmId, Instant likedAt) {
+        change(filmId, likedAt, -1);
+    }
+
+    //не больше maxLimit фильмов с наибольшим числом лайков за окно, при равенстве — с меньшим id
+    public List<Integer> top(TrendingWindow window, int count, Instant now) {
+        long fine = now.toEpochMilli() / FINE_BUCKET_MILLIS;
+        long coarse = now.toEpochMilli() / COARSE_BUCKET_MILLIS;
+        count = Math.min(count, maxLimit);
+        //ключ: число лайков в старших 32 битах, инвертированный id в младших; в куче — худший из лучших
+        PriorityQueue<Long> best = new PriorityQueue<>(Math.min(count, trends.size()) + 1);
+        for (Map.Entry<Integer, Trend> entry : trends.entrySet()) {
+            Trend trend = entry.getValue();
+            int likes;
+            boolean stale;
+            synchronized (trend) {
+                stale = trend.coarse.isStale(coarse);
+            }
+            if (stale) {
+                //за неделю лайков не было; блокировки берутся в том же порядке, что и в change
+                trends.computeIfPresent(entry.getKey(), (id, current) -> {
+                    synchronized (current) {
+                        return current.coarse.isStale(coarse) ? null : current;
+                    }
+                });
+                continue;
+            }
+            synchronized (trend) {
+                switch (window) {
+                    case HOUR:
+                        likes = trend.fine.sum(fine, FINE_BUCKETS);
+                        break;
+                    case DAY:
+                        likes = trend.coarse.sum(coarse, 24);
+                        break;
+                    default:
+                        likes = trend.coarse.sum(coarse, COARSE_BUCKETS);
+                }
+            }
+            if (likes <= 0) {
+                continue;
+            }
+            best.add((long) likes << 32 | (Integer.MAX_VALUE - entry.getKey()));
+            if (best.size() > count) {
+                best.poll();
+            }
+        }
+        List<Integer> top = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            top.add(Integer.MAX_VALUE - (int) (long) best.poll());
+        }
+        Collections.reverse(top);
+        return top;
+    }
+
+    private void change(int filmId, Instant likedAt, int delta) {
+        long fine = likedAt.toEpochMilli() / FINE_BUCKET_MILLIS;
+        long coarse = likedAt.toEpochMilli() / COARSE_BUCKET_MILLIS;
+        trends.compute(filmId, (id, trend) -> {
+            if (trend == null) {
+                if (delta < 0) {
+                    return null;
+                }
+                trend = new Trend();
+            }
+            synchronized (trend) {
+                trend.fine.add(fine, delta);
+                trend.coarse.add(coarse, delta);
+            }
+            return trend;
+        });
+    }
+
+    private static final class Trend {
+        private final Ring fine = new Ring(FINE_BUCKETS);
+        private final Ring coarse = new Ring(COARSE_BUCKETS);
+    }
+
+    //счётчики последних counts.length интервалов; last — номер самого нового интервала с начала эпохи
+    private static final class Ring {
+        private final int[] counts;
+        private long last = Long.MIN_VALUE;
+
+        private Ring(int size) {
+            counts = new int[size];
+        }
+
+        private void add(long bucket, int delta) {
+            if (bucket > last) {
+                //интервалы, через которые перешагнули, освобождаются под новые
+                if (last == Long.MIN_VALUE || bucket - last >= counts.length) {
+                    Arrays.fill(counts, 0);
+                } else {
+                    for (long skipped = last + 1; skipped <= bucket; skipped++) {
+                        counts[slot(skipped)] = 0;
+                    }
+                }
+                last = bucket;
+            } else if (bucket <= last - counts.length) {
+                return;
+            }
+            int slot = slot(bucket);
+            counts[slot] = Math.max(counts[slot] + delta, 0);
+        }
+
+        //сумма интервалов (current - window, current], которые ещё хранятся в буфере
+        private int sum(long current, int window) {
+            long from = Math.max(current - window + 1, last - counts.length + 1);
+            long to = Math.min(current, last);
+            int sum = 0;
+            for (long bucket = from; bucket <= to; bucket++) {
+                sum += counts[slot(bucket)];
+            }
+            return sum;
+        }
+
+        private boolean isStale(long current) {
+            return last <= current - counts.length;
+        }
+
+        private int slot(long bucket) {
+            return (int) Math.floorMod(bucket, (long) counts.length);
+        }
+    }
+}
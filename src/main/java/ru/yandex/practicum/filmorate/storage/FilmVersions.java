@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//версии фильмов для ETag: меняются при каждом изменении фильма или его лайков.
+//версии живут в памяти экземпляра и знают только об изменениях, прошедших через него: другой экземпляр
+//с той же БД, как и узел, читающий с реплики, может ответить 304 на фильм, изменённый в обход него
+@Component
+public class FilmVersions {
+    private final Map<Integer, Long> versions = new ConcurrentHashMap<>();
+    //отсчёт начинается со времени запуска, чтобы после перезапуска не повторить версию, сохранённую клиентом
+    private final AtomicLong clock = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    public void reset(Collection<Integer> filmIds) {
+        versions.clear();
+        filmIds.forEach(this::bump);
+    }
+
+    public void bump(int filmId) {
+        versions.put(filmId, clock.incrementAndGet());
+    }
+
+    public void remove(int filmId) {
+        versions.remove(filmId);
+    }
+
+    //null, если фильм неизвестен
+    public Long getVersion(int filmId) {
+        return versions.get(filmId);
+    }
+}
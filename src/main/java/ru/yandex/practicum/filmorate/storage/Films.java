@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+//общие для хранилищ фильмов проверки и преобразования
+final class Films {
+    //длины столбцов film из schema.sql: хранилище в памяти отклоняет то же, что и БД
+    private static final int NAME_LENGTH = 64;
+    private static final int DESCRIPTION_LENGTH = 200;
+
+    private Films() {
+    }
+
+    //рейтинг и жанры с названиями из справочника; неизвестный id — ошибка до записи фильма
+    static void resolveReferences(Film film, FilmInformation filmInformation) {
+        film.setMpa(filmInformation.getMpa(film.getMpa().getId()));
+        Set<FilmGenre> genres = new TreeSet<>(Comparator.comparingInt(FilmGenre::getId));
+        if (film.getGenres() != null) {
+            film.getGenres().forEach(genre -> genres.add(filmInformation.getGenre(genre.getId())));
+        }
+        film.setGenres(new LinkedHashSet<>(genres));
+    }
+
+    static void checkColumns(Film film) {
+        checkLength("film.name", film.getName(), NAME_LENGTH);
+        checkLength("film.description", film.getDescription(), DESCRIPTION_LENGTH);
+    }
+
+    private static void checkLength(String column, String value, int length) {
+        if (value != null && value.length() > length) {
+            throw new DataIntegrityViolationException("Значение длиннее столбца " + column + " (" + length + ")");
+        }
+    }
+
+    static FilmFacetIndex.Attributes facetAttributes(Film film) {
+        int[] genreIds = film.getGenres() == null ? new int[0] : film.getGenres().stream()
+                .mapToInt(FilmGenre::getId)
+                .distinct()
+                .toArray();
+        return new FilmFacetIndex.Attributes(film.getId(), genreIds,
+                film.getMpa() == null ? null : film.getMpa().getId(), film.getReleaseDate(), film.getDuration());
+    }
+}
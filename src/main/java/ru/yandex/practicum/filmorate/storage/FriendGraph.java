@@ -0,0 +1,160 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ObjIntConsumer;
+
+//списки друзей в памяти: у каждого пользователя отсортированный массив id друзей.
+//массивы не изменяются после публикации, любое изменение подменяет массив копией,
+//поэтому чтение идёт без блокировок
+@Component
+public class FriendGraph {
+    private final Map<Integer, int[]> friends = new ConcurrentHashMap<>();
+    //обратные связи: кто добавил пользователя в друзья
+    private final Map<Integer, int[]> followers = new ConcurrentHashMap<>();
+    private final Map<Integer, int[]> suggestions = new ConcurrentHashMap<>();
+    private final AtomicLong modifications = new AtomicLong();
+    private final int maxSuggestions;
+    private final int maxFanout;
+    private final int parallelThreshold;
+
+    public FriendGraph(@Value("${filmorate.friends.suggestions.max-limit:100}") int maxSuggestions,
+                       @Value("${filmorate.friends.suggestions.max-fanout:1000}") int maxFanout,
+                       @Value("${filmorate.friends.suggestions.parallel-threshold:20000}") int parallelThreshold) {
+        this.maxSuggestions = maxSuggestions;
+        this.maxFanout = maxFanout;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    //рёбра передаются парами: userIds[i] добавил в друзья friendIds[i]
+    public void rebuild(int[] userIds, int[] friendIds, int size) {
+        Map<Integer, int[]> adjacency = SortedIntArrays.group(userIds, friendIds, size);
+        Map<Integer, int[]> reverse = SortedIntArrays.group(friendIds, userIds, size);
+        modifications.incrementAndGet();
+        friends.clear();
+        followers.clear();
+        suggestions.clear();
+        friends.putAll(adjacency);
+        followers.putAll(reverse);
+    }
+
+    //возвращаемый массив нельзя изменять
+    public int[] getFriends(int id) {
+        return friends.getOrDefault(id, SortedIntArrays.EMPTY);
+    }
+
+    //обход отсортированных массивов друзей по пользователям; массивы нельзя изменять
+    public void forEachUser(ObjIntConsumer<int[]> consumer) {
+        friends.forEach((id, ids) -> consumer.accept(ids, id));
+    }
+
+    public boolean contains(int id, int friendId) {
+        return SortedIntArrays.contains(getFriends(id), friendId);
+    }
+
+    public void add(int id, int friendId) {
+        friends.compute(id, (key, ids) -> SortedIntArrays.insert(ids, friendId));
+        followers.compute(friendId, (key, ids) -> SortedIntArrays.insert(ids, id));
+        invalidateSuggestions(id);
+    }
+
+    public void remove(int id, int friendId) {
+        friends.computeIfPresent(id, (key, ids) -> SortedIntArrays.delete(ids, friendId));
+        followers.computeIfPresent(friendId, (key, ids) -> SortedIntArrays.delete(ids, id));
+        invalidateSuggestions(id);
+    }
+
+    public int[] getMutualFriends(int id, int otherId) {
+        return SortedIntArrays.intersect(getFriends(id), getFriends(otherId));
+    }
+
+    //друзья друзей, упорядоченные по числу общих друзей
+    public int[] getSuggestions(int id, int limit) {
+        int[] cached = suggestions.get(id);
+        if (cached == null) {
+            long version = modifications.get();
+            cached = computeSuggestions(id);
+            //если граф успел измениться во время расчёта, результат мог устареть — не кэшируем
+            if (version == modifications.get()) {
+                suggestions.put(id, cached);
+                if (version != modifications.get()) {
+                    suggestions.remove(id);
+                }
+            }
+        }
+        return cached.length <= limit ? cached : Arrays.copyOf(cached, limit);
+    }
+
+    private int[] computeSuggestions(int id) {
+        int[] direct = getFriends(id);
+        long work = 0;
+        for (int friendId : direct) {
+            work += Math.min(getFriends(friendId).length, maxFanout);
+        }
+        IntCountMap counts;
+        if (work > parallelThreshold) {
+            counts = new CountTask(direct, 0, direct.length, (int) (work / parallelThreshold) + 1).invoke();
+        } else {
+            counts = count(direct, 0, direct.length);
+        }
+        int[] excluded = Arrays.copyOf(direct, direct.length + 1);
+        excluded[direct.length] = id;
+        Arrays.sort(excluded);
+        return counts.top(maxSuggestions, excluded);
+    }
+
+    private IntCountMap count(int[] direct, int from, int to) {
+        IntCountMap counts = new IntCountMap(Math.max(to - from, 1) * 16);
+        for (int i = from; i < to; i++) {
+            int[] ids = getFriends(direct[i]);
+            //у очень популярных пользователей берём равномерную выборку друзей, чтобы ограничить обход
+            int step = ids.length > maxFanout ? (ids.length + maxFanout - 1) / maxFanout : 1;
+            for (int j = 0; j < ids.length; j += step) {
+                counts.increment(ids[j], 1);
+            }
+        }
+        return counts;
+    }
+
+    private void invalidateSuggestions(int id) {
+        modifications.incrementAndGet();
+        //изменение друзей пользователя затрагивает его рекомендации и рекомендации тех, у кого он в друзьях
+        suggestions.remove(id);
+        for (int followerId : followers.getOrDefault(id, SortedIntArrays.EMPTY)) {
+            suggestions.remove(followerId);
+        }
+    }
+
+    private class CountTask extends RecursiveTask<IntCountMap> {
+        private final int[] direct;
+        private final int from;
+        private final int to;
+        private final int parts;
+
+        private CountTask(int[] direct, int from, int to, int parts) {
+            this.direct = direct;
+            this.from = from;
+            this.to = to;
+            this.parts = parts;
+        }
+
+        @Override
+        protected IntCountMap compute() {
+            if (parts <= 1 || to - from < 2) {
+                return count(direct, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            CountTask left = new CountTask(direct, from, middle, parts / 2);
+            left.fork();
+            IntCountMap counts = new CountTask(direct, middle, to, parts - parts / 2).compute();
+            counts.addAll(left.join());
+            return counts;
+        }
+    }
+}
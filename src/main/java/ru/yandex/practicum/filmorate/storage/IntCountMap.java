@@ -0,0 +1,108 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+
+//счётчики по int-ключам с открытой адресацией: без упаковки ключей и значений в объекты
+final class IntCountMap {
+    private static final int FREE = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private int[] counts;
+    private int size;
+
+    IntCountMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        keys = new int[capacity];
+        counts = new int[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    void increment(int key, int delta) {
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (keys[index] != FREE && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        if (keys[index] == FREE) {
+            keys[index] = key;
+            if (++size * 2 > keys.length) {
+                counts[index] = delta;
+                grow();
+                return;
+            }
+        }
+        counts[index] += delta;
+    }
+
+    int get(int key) {
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (keys[index] != FREE) {
+            if (keys[index] == key) {
+                return counts[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return 0;
+    }
+
+    void addAll(IntCountMap other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != FREE) {
+                increment(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                consumer.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    //ключи, упорядоченные по убыванию счётчика, при равенстве — по возрастанию ключа
+    int[] top(int limit, int[] excluded) {
+        long[] ranking = new long[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE && Arrays.binarySearch(excluded, keys[i]) < 0) {
+                ranking[n++] = ((long) (Integer.MAX_VALUE - counts[i]) << 32) | (keys[i] & 0xFFFFFFFFL);
+            }
+        }
+        Arrays.sort(ranking, 0, n);
+        int[] top = new int[Math.min(limit, n)];
+        for (int i = 0; i < top.length; i++) {
+            top[i] = (int) ranking[i];
+        }
+        return top;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new int[oldKeys.length * 2];
+        counts = new int[oldCounts.length * 2];
+        Arrays.fill(keys, FREE);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                increment(oldKeys[i], oldCounts[i]);
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    interface EntryConsumer {
+        void accept(int key, int count);
+    }
+}
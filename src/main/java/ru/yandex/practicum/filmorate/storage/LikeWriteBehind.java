@@ -0,0 +1,336 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+//режим отложенной записи лайков: событие дописывается в журнал, отображённый в память,
+//и подтверждается после сброса журнала на диск. Фоновый поток пачками переносит события в БД,
+//после сбоя неприменённый хвост журнала применяется при старте
+@Slf4j
+@Component
+public class LikeWriteBehind {
+    //заголовок: позиция первого неприменённого события, поколение журнала и метка формата
+    private static final int HEADER_SIZE = 16;
+    private static final int APPLIED_OFFSET = 0;
+    private static final int GENERATION_OFFSET = 8;
+    private static final int MAGIC_OFFSET = 12;
+    private static final int MAGIC = 0x4C494B45;
+    //событие: film_id, user_id, поколение со знаком операции в младшем бите, контрольная сумма
+    private static final int RECORD_SIZE = 16;
+    private static final int GENERATION_MASK = 0x3FFFFFFF;
+
+    private final boolean enabled;
+    private final Path path;
+    private final int capacity;
+    private final long flushIntervalMs;
+    private final int batchSize;
+    private final Counter quarantined;
+    //не применённое в БД изменение счётчика лайков по фильмам
+    private final Map<Integer, Integer> pendingDeltas = new ConcurrentHashMap<>();
+    private final Object appendLock = new Object();
+    private final Object forceLock = new Object();
+    private final Object applyLock = new Object();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int generation;
+    private volatile int writePosition;
+    private volatile int forcedPosition;
+    private int appliedPosition;
+    private BatchApplier applier;
+    private Compensator compensator;
+    private ScheduledExecutorService writer;
+
+    public LikeWriteBehind(MeterRegistry registry,
+                           @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                           @Value("${filmorate.likes.write-behind.path:db/likes.log}") String path,
+                           @Value("${filmorate.likes.write-behind.capacity:16777216}") int capacity,
+                           @Value("${filmorate.likes.write-behind.flush-interval-ms:50}") long flushIntervalMs,
+                           @Value("${filmorate.likes.write-behind.batch-size:5000}") int batchSize) {
+        this.enabled = enabled;
+        this.path = Paths.get(path);
+        this.capacity = HEADER_SIZE + (capacity - HEADER_SIZE) / RECORD_SIZE * RECORD_SIZE;
+        this.flushIntervalMs = flushIntervalMs;
+        this.batchSize = batchSize;
+        quarantined = registry.counter("filmorate.likes.write-behind.quarantined");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //применяет хвост журнала, оставшийся после сбоя, и запускает фоновую запись.
+    //compensator откатывает в памяти то, что onAppend сделал для события, отклонённого БД
+    public void start(BatchApplier applier, Compensator compensator) {
+        if (!enabled) {
+            return;
+        }
+        this.applier = applier;
+        this.compensator = compensator;
+        open();
+        int pending = (writePosition - appliedPosition) / RECORD_SIZE;
+        if (pending > 0) {
+            log.info("Применяются лайки из журнала после перезапуска: " + pending);
+            drain();
+        }
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "filmorate-likes-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::applySafely, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    //changesState проверяется под блокировкой журнала вместе с записью события,
+    //onAppend обновляет индексы в памяти, пока параллельный запрос не может изменить ту же пару
+    public void submit(int filmId, int userId, boolean like, BooleanSupplier changesState, Runnable onAppend) {
+        int position;
+        while (true) {
+            synchronized (appendLock) {
+                if (!changesState.getAsBoolean()) {
+                    return;
+                }
+                if (writePosition + RECORD_SIZE <= capacity) {
+                    position = append(filmId, userId, like);
+                    pendingDeltas.merge(filmId, like ? 1 : -1, Integer::sum);
+                    onAppend.run();
+                    break;
+                }
+            }
+            //журнал заполнен: переносим его в БД в потоке запроса и освобождаем место
+            drain();
+        }
+        force(position);
+    }
+
+    //добавка к счётчику likes из БД, чтобы чтение видело ещё не применённые лайки
+    public int pendingDelta(int filmId) {
+        return pendingDeltas.isEmpty() ? 0 : pendingDeltas.getOrDefault(filmId, 0);
+    }
+
+    //переносит в БД все события, записанные к моменту вызова
+    public void drain() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (applyLock) {
+            while (applyBatch() > 0) {
+                //пачки по batchSize, пока журнал не опустеет
+            }
+            tryReset();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writer == null) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Не удалось закрыть журнал лайков", e);
+        }
+    }
+
+    private void applySafely() {
+        try {
+            synchronized (applyLock) {
+                applyBatch();
+                tryReset();
+            }
+        } catch (RuntimeException e) {
+            //события остаются в журнале, следующая попытка применит их снова
+            log.error("Не удалось перенести лайки из журнала в БД", e);
+        }
+    }
+
+    //одна пачка событий одной транзакцией; возвращает число применённых событий.
+    //applier фиксирует пачку до возврата, только после этого она отмечается в журнале применённой
+    private int applyBatch() {
+        int from = appliedPosition;
+        int to = Math.min(writePosition, from + batchSize * RECORD_SIZE);
+        if (from == to) {
+            return 0;
+        }
+        //для каждой пары важно только последнее событие: лайк, снятый и поставленный снова, — это лайк
+        Map<Long, Boolean> latest = new LinkedHashMap<>();
+        Map<Integer, Integer> deltas = new LinkedHashMap<>();
+        for (int position = from; position < to; position += RECORD_SIZE) {
+            int filmId = buffer.getInt(position);
+            int userId = buffer.getInt(position + 4);
+            boolean like = (buffer.getInt(position + 8) & 1) == 1;
+            latest.put((long) filmId << 32 | userId, like);
+            deltas.merge(filmId, like ? 1 : -1, Integer::sum);
+        }
+        int[] filmIds = new int[latest.size()];
+        int[] userIds = new int[latest.size()];
+        boolean[] liked = new boolean[latest.size()];
+        int n = 0;
+        for (Map.Entry<Long, Boolean> event : latest.entrySet()) {
+            filmIds[n] = (int) (event.getKey() >>> 32);
+            userIds[n] = (int) (long) event.getKey();
+            liked[n++] = event.getValue();
+        }
+        try {
+            applier.apply(filmIds, userIds, liked, n);
+        } catch (DataIntegrityViolationException e) {
+            //пачку не пускают отдельные события (например, фильм или пользователь удалён):
+            //применяем по одному и пропускаем отклонённые, иначе журнал застрянет на этой пачке
+            applyOneByOne(filmIds, userIds, liked, n);
+        }
+        markApplied(to);
+        //после фиксации в БД счётчик фильма уже включает эти лайки
+        deltas.forEach((filmId, delta) ->
+                pendingDeltas.computeIfPresent(filmId, (key, pending) -> pending.equals(delta) ? null : pending - delta));
+        return (to - from) / RECORD_SIZE;
+    }
+
+    //сбои другого рода (БД недоступна) пробрасываются: пачка останется в журнале и будет применена снова,
+    //уже применённые события при этом применятся повторно без изменений
+    private void applyOneByOne(int[] filmIds, int[] userIds, boolean[] liked, int size) {
+        for (int i = 0; i < size; i++) {
+            try {
+                applier.apply(new int[]{filmIds[i]}, new int[]{userIds[i]}, new boolean[]{liked[i]}, 1);
+            } catch (DataIntegrityViolationException e) {
+                quarantined.increment();
+                log.error("Событие журнала лайков пропущено: фильм " + filmIds[i] + ", пользователь " + userIds[i]
+                        + (liked[i] ? ", лайк" : ", снятие лайка"), e);
+                //под блокировкой журнала, как и onAppend: параллельный запрос не изменит ту же пару
+                synchronized (appendLock) {
+                    compensator.revert(filmIds[i], userIds[i], liked[i]);
+                }
+            }
+        }
+    }
+
+    private int append(int filmId, int userId, boolean like) {
+        int position = writePosition;
+        int flags = generation << 1 | (like ? 1 : 0);
+        buffer.putInt(position, filmId);
+        buffer.putInt(position + 4, userId);
+        buffer.putInt(position + 8, flags);
+        buffer.putInt(position + 12, checksum(filmId, userId, flags));
+        writePosition = position + RECORD_SIZE;
+        return position;
+    }
+
+    //групповой сброс: один поток сбрасывает журнал на диск за всех, кто успел дописать события до него
+    private void force(int position) {
+        if (forcedPosition > position) {
+            return;
+        }
+        synchronized (forceLock) {
+            if (forcedPosition > position) {
+                return;
+            }
+            int written = writePosition;
+            buffer.force();
+            forcedPosition = written;
+        }
+    }
+
+    private void markApplied(int position) {
+        appliedPosition = position;
+        buffer.putLong(APPLIED_OFFSET, position);
+        buffer.force();
+    }
+
+    //когда всё применено, журнал начинается заново со следующим поколением,
+    //чтобы старые события за новой позицией записи не приняли за неприменённые
+    private void tryReset() {
+        synchronized (appendLock) {
+            if (appliedPosition != writePosition || writePosition == HEADER_SIZE) {
+                return;
+            }
+            generation = (generation + 1) & GENERATION_MASK;
+            buffer.putInt(GENERATION_OFFSET, generation);
+            buffer.putLong(APPLIED_OFFSET, HEADER_SIZE);
+            buffer.force();
+            appliedPosition = HEADER_SIZE;
+            writePosition = HEADER_SIZE;
+            forcedPosition = HEADER_SIZE;
+        }
+    }
+
+    private void open() {
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть журнал лайков " + path, e);
+        }
+        if (buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+            buffer.putLong(APPLIED_OFFSET, HEADER_SIZE);
+            buffer.putInt(GENERATION_OFFSET, 0);
+            buffer.putInt(MAGIC_OFFSET, MAGIC);
+            buffer.force();
+        }
+        generation = buffer.getInt(GENERATION_OFFSET);
+        appliedPosition = (int) buffer.getLong(APPLIED_OFFSET);
+        //хвост журнала — события текущего поколения с верной контрольной суммой
+        int position = appliedPosition;
+        while (position + RECORD_SIZE <= capacity) {
+            int filmId = buffer.getInt(position);
+            int userId = buffer.getInt(position + 4);
+            int flags = buffer.getInt(position + 8);
+            if (flags >>> 1 != generation || buffer.getInt(position + 12) != checksum(filmId, userId, flags)) {
+                break;
+            }
+            int delta = (flags & 1) == 1 ? 1 : -1;
+            pendingDeltas.merge(filmId, delta, Integer::sum);
+            position += RECORD_SIZE;
+        }
+        writePosition = position;
+        forcedPosition = position;
+    }
+
+    private static int checksum(int filmId, int userId, int flags) {
+        int h = MAGIC;
+        h = 31 * h + filmId;
+        h = 31 * h + userId;
+        h = 31 * h + flags;
+        return h ^ (h >>> 16);
+    }
+
+    public interface BatchApplier {
+        //итоговое состояние пар после пачки: liked[i] — стоит ли лайк userIds[i] фильму filmIds[i]
+        void apply(int[] filmIds, int[] userIds, boolean[] liked, int size);
+    }
+
+    public interface Compensator {
+        //событие пары не применилось в БД: liked — отклонённое итоговое состояние пары
+        void revert(int filmId, int userId, boolean liked);
+    }
+}
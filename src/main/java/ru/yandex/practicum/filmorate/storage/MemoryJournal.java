@@ -0,0 +1,329 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+//долговечность хранилищ в памяти: изменения дописываются в журнал сегментами wal-<номер>.log,
+//периодически состояние сохраняется снимком, после чего сегменты до снимка удаляются.
+//при старте каждое хранилище читает свою часть снимка и повторяет записи журнала после него
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.storage.engine", havingValue = "memory")
+public class MemoryJournal implements SmartInitializingSingleton {
+    private static final int SNAPSHOT_MAGIC = 0x464D534E;
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final long snapshotIntervalSeconds;
+    private final boolean syncWrites;
+    private final Map<String, Participant> participants = new LinkedHashMap<>();
+    //части последнего снимка по именам хранилищ, пока они не восстановлены
+    private final Map<String, byte[]> snapshotSections = new HashMap<>();
+    //первый сегмент, не вошедший в снимок
+    private long snapshotSegment;
+    private final List<Long> recoveredSegments;
+    private final Object walLock = new Object();
+    private final Object snapshotLock = new Object();
+    //изменения держат её на чтение от записи в журнал до применения в памяти, снимок — на запись при смене сегмента
+    private final ReadWriteLock segmentSwitch = new ReentrantReadWriteLock();
+    private long segment;
+    private FileOutputStream segmentFile;
+    private DataOutputStream wal;
+    private ScheduledExecutorService snapshotter;
+
+    public MemoryJournal(@Value("${filmorate.storage.memory.path:db/memory}") String path,
+                         @Value("${filmorate.storage.memory.snapshot-interval-seconds:300}") long snapshotIntervalSeconds,
+                         @Value("${filmorate.storage.memory.sync-writes:false}") boolean syncWrites) {
+        this.directory = Paths.get(path);
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+        this.syncWrites = syncWrites;
+        try {
+            Files.createDirectories(directory);
+            readSnapshot();
+            recoveredSegments = segments().stream()
+                    .filter(seq -> seq >= snapshotSegment)
+                    .collect(Collectors.toList());
+            long last = recoveredSegments.isEmpty() ? snapshotSegment : recoveredSegments.get(recoveredSegments.size() - 1);
+            //запись всегда идёт в новый сегмент: хвост старого мог оборваться при сбое
+            openSegment(Math.max(last + 1, snapshotSegment));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть журнал хранилища " + directory, e);
+        }
+    }
+
+    //загружает часть снимка хранилища и повторяет его записи из журнала; после этого хранилище входит в снимки
+    public void recover(String name, Participant participant) {
+        try {
+            byte[] section = snapshotSections.remove(name);
+            if (section != null) {
+                participant.readSnapshot(new DataInputStream(new ByteArrayInputStream(section)));
+            }
+            int replayed = 0;
+            for (long seq : recoveredSegments) {
+                replayed += replay(seq, name, participant);
+            }
+            log.info("Восстановлено хранилище " + name + ": записей журнала " + replayed);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось восстановить хранилище " + name, e);
+        }
+        synchronized (snapshotLock) {
+            participants.put(name, participant);
+        }
+    }
+
+    //записывает изменение в журнал и только после успешной записи применяет его в памяти (apply).
+    //вызывается под блокировкой изменяемой записи, поэтому записи одного ключа попадают в журнал в порядке изменений
+    public void append(String name, RecordWriter writer, Runnable apply) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(name);
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] record = bytes.toByteArray();
+        //снимок не переключит сегмент между записью и применением: иначе запись осталась бы в старом сегменте,
+        //а обход состояния для снимка её ещё не увидел
+        segmentSwitch.readLock().lock();
+        try {
+            synchronized (walLock) {
+                try {
+                    if (wal == null) {
+                        throw new IOException("Журнал закрыт");
+                    }
+                    wal.writeInt(record.length);
+                    wal.writeInt(checksum(record));
+                    wal.write(record);
+                    wal.flush();
+                    if (syncWrites) {
+                        segmentFile.getFD().sync();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Не удалось записать в журнал хранилища", e);
+                }
+            }
+            apply.run();
+        } finally {
+            segmentSwitch.readLock().unlock();
+        }
+    }
+
+    //снимок не останавливает запись: сегмент переключается до обхода состояния, поэтому всё,
+    //что не попало в снимок, есть в новых сегментах, а повтор записи по ключу не меняет результат
+    public void snapshot() {
+        synchronized (snapshotLock) {
+            long start;
+            segmentSwitch.writeLock().lock();
+            try {
+                synchronized (walLock) {
+                    closeSegment();
+                    openSegment(segment + 1);
+                    start = segment;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось начать новый сегмент журнала", e);
+            } finally {
+                segmentSwitch.writeLock().unlock();
+            }
+            Path tmp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+            try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeLong(start);
+                out.writeInt(participants.size());
+                for (Map.Entry<String, Participant> participant : participants.entrySet()) {
+                    ByteArrayOutputStream section = new ByteArrayOutputStream();
+                    try (DataOutputStream sectionOut = new DataOutputStream(new BufferedOutputStream(section))) {
+                        participant.getValue().writeSnapshot(sectionOut);
+                    }
+                    out.writeUTF(participant.getKey());
+                    out.writeInt(section.size());
+                    section.writeTo(out);
+                }
+                out.flush();
+                file.getFD().sync();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось сохранить снимок хранилища", e);
+            }
+            try {
+                Files.move(tmp, directory.resolve(SNAPSHOT_FILE),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                for (long seq : segments()) {
+                    if (seq < start) {
+                        Files.deleteIfExists(segmentPath(seq));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось заменить снимок хранилища", e);
+            }
+            log.info("Сохранён снимок хранилища, журнал начинается с сегмента " + start);
+        }
+    }
+
+    //к этому моменту все хранилища созданы и восстановлены, снимок включит каждое из них
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (snapshotIntervalSeconds <= 0) {
+            return;
+        }
+        snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "filmorate-memory-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(this::snapshotSafely,
+                snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (snapshotter != null) {
+            snapshotter.shutdown();
+            try {
+                snapshotter.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!participants.isEmpty()) {
+            snapshotSafely();
+        }
+        synchronized (walLock) {
+            try {
+                closeSegment();
+            } catch (IOException e) {
+                log.warn("Не удалось закрыть журнал хранилища", e);
+            }
+        }
+    }
+
+    private void snapshotSafely() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            //журнал не удалён, следующий снимок повторит попытку
+            log.error("Не удалось сохранить снимок хранилища", e);
+        }
+    }
+
+    private void readSnapshot() throws IOException {
+        Path path = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Файл " + path + " не является снимком хранилища");
+            }
+            snapshotSegment = in.readLong();
+            int sections = in.readInt();
+            for (int i = 0; i < sections; i++) {
+                String name = in.readUTF();
+                byte[] section = new byte[in.readInt()];
+                in.readFully(section);
+                snapshotSections.put(name, section);
+            }
+        }
+    }
+
+    //повторяет записи хранилища из сегмента; оборванная при сбое запись и всё после неё пропускаются
+    private int replay(long seq, String name, Participant participant) throws IOException {
+        int replayed = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segmentPath(seq))))) {
+            while (true) {
+                byte[] record;
+                try {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (length <= 0) {
+                        break;
+                    }
+                    record = new byte[length];
+                    in.readFully(record);
+                    if (checksum(record) != checksum) {
+                        log.warn("Повреждённая запись в сегменте журнала " + seq + ", остаток сегмента пропущен");
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+                if (recordIn.readUTF().equals(name)) {
+                    participant.replay(recordIn);
+                    replayed++;
+                }
+            }
+        }
+        return replayed;
+    }
+
+    private List<Long> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(file -> file.startsWith(SEGMENT_PREFIX) && file.endsWith(SEGMENT_SUFFIX))
+                    .map(file -> Long.parseLong(file.substring(SEGMENT_PREFIX.length(),
+                            file.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path segmentPath(long seq) {
+        return directory.resolve(SEGMENT_PREFIX + seq + SEGMENT_SUFFIX);
+    }
+
+    private void openSegment(long seq) throws IOException {
+        segment = seq;
+        segmentFile = new FileOutputStream(segmentPath(seq).toFile(), true);
+        wal = new DataOutputStream(new BufferedOutputStream(segmentFile));
+    }
+
+    private void closeSegment() throws IOException {
+        if (wal != null) {
+            wal.flush();
+            segmentFile.getFD().sync();
+            wal.close();
+            wal = null;
+        }
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    public interface Participant {
+        void writeSnapshot(DataOutput out) throws IOException;
+
+        void readSnapshot(DataInput in) throws IOException;
+
+        //одна запись журнала, имя хранилища уже прочитано
+        void replay(DataInput in) throws IOException;
+    }
+
+    public interface RecordWriter {
+        void write(DataOutput out) throws IOException;
+    }
+}
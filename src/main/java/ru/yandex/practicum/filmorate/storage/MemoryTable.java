@@ -0,0 +1,99 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+
+//записи по id в страницах фиксированного размера: id выдаются последовательностью,
+//поэтому индекс в странице вычисляется из id без хэширования и упаковки ключа в Integer.
+//чтение идёт без блокировок, запись одного id сериализуется блокировкой его полосы
+final class MemoryTable<T> {
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int STRIPES = 64;
+
+    //каталог страниц подменяется копией при росте, поэтому публикуется через volatile
+    @SuppressWarnings("unchecked")
+    private volatile AtomicReferenceArray<T>[] pages = new AtomicReferenceArray[1];
+    private final Object[] locks = new Object[STRIPES];
+    private final AtomicInteger lastId = new AtomicInteger();
+    private final AtomicInteger maxId = new AtomicInteger();
+    private final AtomicInteger size = new AtomicInteger();
+
+    MemoryTable() {
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    //блокировка полосы, к которой относится id
+    Object lock(int id) {
+        return locks[id & (STRIPES - 1)];
+    }
+
+    int nextId() {
+        return lastId.incrementAndGet();
+    }
+
+    //null, если записи нет
+    T get(int id) {
+        if (id <= 0) {
+            return null;
+        }
+        AtomicReferenceArray<T>[] directory = pages;
+        int page = id >>> PAGE_BITS;
+        if (page >= directory.length || directory[page] == null) {
+            return null;
+        }
+        return directory[page].get(id & PAGE_MASK);
+    }
+
+    void put(int id, T value) {
+        if (page(id).getAndSet(id & PAGE_MASK, value) == null) {
+            size.incrementAndGet();
+        }
+        maxId.accumulateAndGet(id, Math::max);
+        //id из журнала при восстановлении не должны выдаваться повторно
+        lastId.accumulateAndGet(id, Math::max);
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    //обход записей с id больше afterId по возрастанию id, пока consumer возвращает true
+    void forEach(int afterId, Predicate<T> consumer) {
+        int last = maxId.get();
+        for (int id = Math.max(afterId + 1, 1); id <= last; id++) {
+            T value = get(id);
+            if (value != null && !consumer.test(value)) {
+                return;
+            }
+        }
+    }
+
+    private AtomicReferenceArray<T> page(int id) {
+        int page = id >>> PAGE_BITS;
+        AtomicReferenceArray<T>[] directory = pages;
+        if (page < directory.length && directory[page] != null) {
+            return directory[page];
+        }
+        synchronized (this) {
+            directory = pages;
+            if (page >= directory.length) {
+                @SuppressWarnings("unchecked")
+                AtomicReferenceArray<T>[] grown = new AtomicReferenceArray[Math.max(directory.length * 2, page + 1)];
+                System.arraycopy(directory, 0, grown, 0, directory.length);
+                directory = grown;
+            } else if (directory[page] != null) {
+                return directory[page];
+            } else {
+                directory = directory.clone();
+            }
+            directory[page] = new AtomicReferenceArray<>(PAGE_SIZE);
+            pages = directory;
+            return directory[page];
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+//операции над отсортированными массивами id, которые индексы в памяти подменяют копиями
+final class SortedIntArrays {
+    static final int[] EMPTY = new int[0];
+
+    private SortedIntArrays() {
+    }
+
+    static boolean contains(int[] ids, int id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    static int[] insert(int[] ids, int id) {
+        if (ids == null) {
+            return new int[]{id};
+        }
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0) {
+            return ids;
+        }
+        index = -index - 1;
+        int[] copy = new int[ids.length + 1];
+        System.arraycopy(ids, 0, copy, 0, index);
+        copy[index] = id;
+        System.arraycopy(ids, index, copy, index + 1, ids.length - index);
+        return copy;
+    }
+
+    //null означает, что массив опустел и запись можно удалить из Map
+    static int[] delete(int[] ids, int id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0) {
+            return ids;
+        }
+        if (ids.length == 1) {
+            return null;
+        }
+        int[] copy = new int[ids.length - 1];
+        System.arraycopy(ids, 0, copy, 0, index);
+        System.arraycopy(ids, index + 1, copy, index, ids.length - index - 1);
+        return copy;
+    }
+
+    static int[] intersect(int[] first, int[] second) {
+        int[] result = new int[Math.min(first.length, second.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[size++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    //группирует пары (from[i], to[i]) в отсортированные массивы to по ключу from
+    static Map<Integer, int[]> group(int[] from, int[] to, int size) {
+        //пара упаковывается в long, после сортировки связи одного ключа идут подряд и уже упорядочены
+        long[] pairs = new long[size];
+        for (int i = 0; i < size; i++) {
+            pairs[i] = ((long) from[i] << 32) | (to[i] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(pairs);
+        Map<Integer, int[]> adjacency = new HashMap<>();
+        int start = 0;
+        while (start < size) {
+            int key = (int) (pairs[start] >> 32);
+            int end = start;
+            while (end < size && (int) (pairs[end] >> 32) == key) {
+                end++;
+            }
+            int[] ids = new int[end - start];
+            for (int i = start; i < end; i++) {
+                ids[i - start] = (int) pairs[i];
+            }
+            adjacency.put(key, ids);
+            start = end;
+        }
+        return adjacency;
+    }
+}
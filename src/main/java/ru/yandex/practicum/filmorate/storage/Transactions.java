@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+final class Transactions {
+
+    private Transactions() {
+    }
+
+    //индексы в памяти обновляем только после фиксации транзакции, иначе откат оставит их рассогласованными с БД
+    static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
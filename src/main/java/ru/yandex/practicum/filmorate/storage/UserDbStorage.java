@@ -1,31 +1,48 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.UserAlreadyExistException;
 import ru.yandex.practicum.filmorate.exception.UserDataException;
 import ru.yandex.practicum.filmorate.exception.UserNotExistException;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Component
+@Qualifier("userStorage")
+@ConditionalOnProperty(name = "filmorate.storage.engine", havingValue = "db", matchIfMissing = true)
 public class UserDbStorage implements UserStorage {
 
     private final JdbcTemplate jdbcTemplate;
-    private int id;
+    private final FriendGraph friendGraph;
+    private final int exportFetchSize;
+    private final BlockIdAllocator ids;
+    //пары (user_id, friend_id) передаются двумя массивами и разворачиваются в таблицу
+    private static final String FRIENDSHIP_PAIRS =
+            "UNNEST(CAST(? AS INTEGER ARRAY), CAST(? AS INTEGER ARRAY)) AS p(user_id, friend_id)";
 
-    public UserDbStorage(JdbcTemplate jdbcTemplate) {
+    public UserDbStorage(JdbcTemplate jdbcTemplate, FriendGraph friendGraph,
+                         @Value("${filmorate.export.fetch-size:500}") int exportFetchSize) {
         this.jdbcTemplate = jdbcTemplate;
-        id = getLastAddedUserId();
+        this.friendGraph = friendGraph;
+        this.exportFetchSize = exportFetchSize;
+        ids = new BlockIdAllocator(jdbcTemplate, "user_seq", "users", "user_id");
+        rebuildFriendGraph();
     }
 
     @Override
@@ -35,6 +52,13 @@ public class UserDbStorage implements UserStorage {
     }
 
     @Override
+    public List<User> findAll(int limit, int afterId) {
+        String sql = "SELECT * FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs), afterId, limit);
+    }
+
+    @Override
+    @Transactional
     public User create(User user) {
         if (user.getId() != 0 && getUser(user.getId()) != null) {
             log.warn("Пользователь " + user + " уже существует");
@@ -45,7 +69,7 @@ public class UserDbStorage implements UserStorage {
             user.setName(user.getLogin());
         }
         //users table
-        user.setId(++id);
+        user.setId(ids.next());
         String sql = "INSERT INTO users (user_id, name, login, email, birthday) VALUES (?, ?, ?, ?, ?)";
         jdbcTemplate.update(sql, user.getId(), user.getName(), user.getLogin(), user.getEmail(), user.getBirthday());
         //friends table
@@ -54,6 +78,31 @@ public class UserDbStorage implements UserStorage {
     }
 
     @Override
+    public void createAll(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        int[] userIds = new int[users.size()];
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < userIds.length; i++) {
+            User user = users.get(i);
+            if (user.getName() == null || user.getName().isBlank()) {
+                user.setName(user.getLogin());
+            }
+            userIds[i] = ids.next();
+            rows.add(new Object[]{userIds[i], user.getName(), user.getLogin(), user.getEmail(), user.getBirthday()});
+        }
+        String sql = "INSERT INTO users (user_id, name, login, email, birthday) VALUES (?, ?, ?, ?, ?)";
+        jdbcTemplate.batchUpdate(sql, rows);
+        //id назначаем только после вставки: если пачка откатится, импорт повторит пользователей по одному
+        for (int i = 0; i < userIds.length; i++) {
+            users.get(i).setId(userIds[i]);
+        }
+        log.debug("Добавлено пользователей: " + users.size());
+    }
+
+    @Override
+    @Transactional
     public User update(User user) {
         if (getUser(user.getId()) == null) {
             log.warn("Пользователя " + user + " не существует.");
@@ -68,48 +117,60 @@ public class UserDbStorage implements UserStorage {
     }
 
     private void updateFriends(User user) {
-        Set<Integer> diffFriends;
-        String action;
-        String sql = "SELECT friend_id FROM friends WHERE user_id = ?";
-        Set<Integer> sqlTableFriends = new HashSet<>(
-                jdbcTemplate.queryForList(sql, Integer.class, user.getId()));
-        Set<Integer> userFriends = new HashSet<>();
-        if (user.getFriends() != null) {
-            userFriends.addAll(user.getFriends());
-        }
-        if (sqlTableFriends.size() < userFriends.size()) {
-            sql = "INSERT INTO friends (user_id,friend_id) VALUES (?,?)";
-            diffFriends = new HashSet<>(userFriends);
-            diffFriends.removeAll(sqlTableFriends);
-            action = "INSERT";
-        } else if (sqlTableFriends.size() > userFriends.size()) {
-            sql = "DELETE FROM friends WHERE user_id = ? AND friend_id = ?";
-            diffFriends = new HashSet<>(sqlTableFriends);
-            diffFriends.removeAll(userFriends);
-            action = "DELETE";
-        } else {
-            return;
-        }
-        String finalSql = sql;
-        diffFriends.forEach(friendId -> jdbcTemplate.update(finalSql, user.getId(), friendId));
-        diffFriends.forEach(friendId -> changeFriendshipStatus(user.getId(), friendId, action));
+        replaceFriends(user.getId(), user.getFriends() == null ? Set.of() : user.getFriends());
     }
 
-    private void changeFriendshipStatus(int userId, int friendId, String action) {
-        //проверяем, что user_id уже является другом friend_id, поэтому в jdbc обратный порядок
-        String sql = "SELECT COUNT(*) > 0 FROM friends WHERE user_id = ? AND friend_id = ?";
-        boolean isFriend = Boolean.TRUE.equals(
-                jdbcTemplate.queryForObject(sql, Boolean.class, friendId, userId));
-        if (isFriend && action.equals("INSERT")) {
-            sql = "UPDATE friends SET confirmed_status = true WHERE user_id = ? AND friend_id = ?";
-            //обновляем статусы дружбы обоих пользователей
-            jdbcTemplate.update(sql, friendId, userId);
-            jdbcTemplate.update(sql, userId, friendId);
+    //приводит список друзей к заданному не более чем тремя запросами, независимо от числа друзей
+    private void replaceFriends(int id, Collection<Integer> friendIds) {
+        Set<Integer> current = new HashSet<>();
+        for (int friendId : friendGraph.getFriends(id)) {
+            current.add(friendId);
+        }
+        Set<Integer> added = new HashSet<>(friendIds);
+        added.removeAll(current);
+        Set<Integer> removed = new HashSet<>(current);
+        removed.removeAll(friendIds);
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
         }
-        if (isFriend && action.equals("DELETE")) {
-            sql = "UPDATE friends SET confirmed_status = false WHERE user_id = ? AND friend_id = ?";
-            jdbcTemplate.update(sql, friendId, userId);
+        if (!removed.isEmpty()) {
+            String sql = "DELETE FROM friends WHERE user_id = ? AND friend_id = ANY(?)";
+            jdbcTemplate.update(sql, id, removed.toArray(new Integer[0]));
         }
+        List<Friendship> changed = new ArrayList<>();
+        added.forEach(friendId -> changed.add(new Friendship(id, friendId)));
+        if (!added.isEmpty()) {
+            insertFriendships(changed);
+        }
+        removed.forEach(friendId -> changed.add(new Friendship(id, friendId)));
+        updateConfirmedStatus(changed);
+        added.forEach(friendId -> linkFriend(id, friendId));
+        removed.forEach(friendId -> unlinkFriend(id, friendId));
+    }
+
+    private void insertFriendships(List<Friendship> friendships) {
+        String sql = "INSERT INTO friends (user_id, friend_id) SELECT p.user_id, p.friend_id FROM " + FRIENDSHIP_PAIRS +
+                " WHERE NOT EXISTS (SELECT 1 FROM friends f WHERE f.user_id = p.user_id AND f.friend_id = p.friend_id)";
+        jdbcTemplate.update(sql, userIds(friendships, false), userIds(friendships, true));
+    }
+
+    //одним запросом пересчитывает статус дружбы для заданных пар в обе стороны
+    private void updateConfirmedStatus(List<Friendship> friendships) {
+        //встречная заявка из той же пачки даёт ту же пару: MERGE не допускает повторов строки
+        Set<Friendship> unique = new LinkedHashSet<>(friendships);
+        friendships.forEach(f -> unique.add(new Friendship(f.getFriendId(), f.getUserId())));
+        List<Friendship> pairs = new ArrayList<>(unique);
+        String sql = "MERGE INTO friends f USING (SELECT p.user_id, p.friend_id FROM " + FRIENDSHIP_PAIRS + ") p " +
+                "ON f.user_id = p.user_id AND f.friend_id = p.friend_id " +
+                "WHEN MATCHED THEN UPDATE SET confirmed_status = " +
+                "EXISTS (SELECT 1 FROM friends r WHERE r.user_id = f.friend_id AND r.friend_id = f.user_id)";
+        jdbcTemplate.update(sql, userIds(pairs, false), userIds(pairs, true));
+    }
+
+    private static Integer[] userIds(List<Friendship> friendships, boolean friends) {
+        return friendships.stream()
+                .map(f -> friends ? f.getFriendId() : f.getUserId())
+                .toArray(Integer[]::new);
     }
 
     @Override
@@ -117,42 +178,92 @@ public class UserDbStorage implements UserStorage {
         String sql = "SELECT * FROM users WHERE user_id = ?";
         List<User> user = jdbcTemplate.query(sql, (rs, rowNum) -> (makeUser(rs)), id);
         if (!user.isEmpty()) {
+            loadFriends(user);
             return user.get(0);
         } else {
             throw new UserNotExistException("Пользователя с id: " + id + " не существует");
         }
     }
 
+    @Override
+    public void exportAll(Consumer<User> consumer) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement("SELECT * FROM users ORDER BY user_id",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(exportFetchSize);
+            return statement;
+        }, rs -> {
+            consumer.accept(makeUser(rs));
+        });
+    }
+
     private User makeUser(ResultSet rs) throws SQLException {
         return new User(rs.getInt("user_id"),
                 rs.getString("name"),
                 rs.getString("login"),
                 rs.getString("email"),
                 rs.getObject("birthday", LocalDate.class),
-                getUserFriends(rs.getInt("user_id")));
+                new HashSet<>());
     }
 
-    private Set<Integer> getUserFriends(int userId) {
-        String sql = "SELECT friend_id FROM friends WHERE user_id = ?";
-        return new HashSet<>(jdbcTemplate.queryForList(sql, Integer.class, userId));
+    @Override
+    public void loadFriends(List<User> users) {
+        users.forEach(user -> {
+            for (int friendId : friendGraph.getFriends(user.getId())) {
+                user.getFriends().add(friendId);
+            }
+        });
+    }
+
+    @Override
+    public List<User> getFriends(int id) {
+        return getUsers(friendGraph.getFriends(id));
     }
 
-    private int getLastAddedUserId() {
-        String sql = "SELECT MAX(user_id) FROM users";
-        Integer userId = jdbcTemplate.queryForObject(sql, Integer.class);
-        if (userId != null) {
-            return userId;
+    private List<User> getUsers(int[] userIds) {
+        if (userIds.length == 0) {
+            return new ArrayList<>();
         }
-        return 0;
+        String sql = "SELECT * FROM users WHERE user_id IN (" +
+                String.join(",", Collections.nCopies(userIds.length, "?")) + ") ORDER BY user_id";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs), Arrays.stream(userIds).boxed().toArray());
     }
 
-    @Override
-    public List<User> getFriends(int id) {
-        String sql = "SELECT * FROM users WHERE user_id IN (SELECT friend_id FROM friends WHERE user_id = " + id + ")";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeUser(rs));
+    private void rebuildFriendGraph() {
+        int[][] edges = {new int[1024], new int[1024]};
+        int[] size = new int[1];
+        jdbcTemplate.query("SELECT user_id, friend_id FROM friends", rs -> {
+            if (size[0] == edges[0].length) {
+                edges[0] = Arrays.copyOf(edges[0], size[0] * 2);
+                edges[1] = Arrays.copyOf(edges[1], size[0] * 2);
+            }
+            edges[0][size[0]] = rs.getInt("user_id");
+            edges[1][size[0]++] = rs.getInt("friend_id");
+        });
+        friendGraph.rebuild(edges[0], edges[1], size[0]);
+        log.info("Загружен граф дружбы: связей " + size[0]);
+    }
+
+    //другие потоки не должны видеть в графе незафиксированную дружбу
+    private void linkFriend(int id, int friendId) {
+        Transactions.afterCommit(() -> friendGraph.add(id, friendId));
+    }
+
+    private void unlinkFriend(int id, int friendId) {
+        Transactions.afterCommit(() -> friendGraph.remove(id, friendId));
+    }
+
+    private void checkUsersExist(int id, int friendId) {
+        Set<Integer> existing = findExistingIds(List.of(id, friendId));
+        for (int userId : new int[]{friendId, id}) {
+            if (!existing.contains(userId)) {
+                throw new UserNotExistException("Пользователя с id: " + userId + " не существует");
+            }
+        }
     }
 
     @Override
+    @Transactional
     public void addFriend(int id, int friendId) {
         if (id <= 0) {
             throw new UserDataException("Передан отрицательный id " + id);
@@ -160,19 +271,64 @@ public class UserDbStorage implements UserStorage {
         if (friendId <= 0) {
             throw new UserDataException("Передан отрицательный id " + friendId);
         }
-        if (getFriends(id).contains(getUser(friendId))) {
+        checkUsersExist(id, friendId);
+        if (friendGraph.contains(id, friendId)) {
             throw new UserDataException("Этот пользователь уже ваш друг");
         }
         String sql = "INSERT INTO friends (user_id, friend_id) VALUES (?,?)";
         jdbcTemplate.update(sql, id, friendId);
-        if (getFriends(friendId).contains(getUser(id))) {
-            sql = "UPDATE friends SET CONFIRMED_STATUS = true WHERE user_id = ? AND friend_id = ?";
-            jdbcTemplate.update(sql, id, friendId);
-            jdbcTemplate.update(sql, friendId, id);
+        linkFriend(id, friendId);
+        if (friendGraph.contains(friendId, id)) {
+            updateConfirmedStatus(List.of(new Friendship(id, friendId)));
+        }
+    }
+
+    @Override
+    @Transactional
+    public void addFriends(List<Friendship> friendships) {
+        if (friendships.isEmpty()) {
+            return;
         }
+        //повторы внутри пачки дали бы нарушение первичного ключа в одном INSERT ... SELECT
+        List<Friendship> unique = new ArrayList<>(new LinkedHashSet<>(friendships));
+        insertFriendships(unique);
+        updateConfirmedStatus(unique);
+        unique.stream()
+                .filter(f -> !friendGraph.contains(f.getUserId(), f.getFriendId()))
+                .forEach(f -> linkFriend(f.getUserId(), f.getFriendId()));
     }
 
     @Override
+    @Transactional
+    public void setFriends(int id, Collection<Integer> friendIds) {
+        if (friendIds.contains(id)) {
+            throw new UserDataException("Нельзя добавить в друзья самого себя");
+        }
+        Set<Integer> requested = new HashSet<>(friendIds);
+        requested.add(id);
+        Set<Integer> existing = findExistingIds(requested);
+        if (!existing.contains(id)) {
+            throw new UserNotExistException("Пользователя с id: " + id + " не существует");
+        }
+        requested.removeAll(existing);
+        if (!requested.isEmpty()) {
+            throw new UserNotExistException("Пользователей с id: " + requested + " не существует");
+        }
+        replaceFriends(id, new HashSet<>(friendIds));
+    }
+
+    @Override
+    public Set<Integer> findExistingIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new HashSet<>();
+        }
+        String sql = "SELECT user_id FROM users WHERE user_id IN (" +
+                String.join(",", Collections.nCopies(ids.size(), "?")) + ")";
+        return new HashSet<>(jdbcTemplate.queryForList(sql, Integer.class, ids.toArray()));
+    }
+
+    @Override
+    @Transactional
     public void deleteFriend(int id, int friendId) {
         if (id <= 0) {
             throw new UserDataException("Передан отрицательный id " + id);
@@ -180,21 +336,37 @@ public class UserDbStorage implements UserStorage {
         if (friendId <= 0) {
             throw new UserDataException("Передан отрицательный id " + friendId);
         }
-        if (!getFriends(id).contains(getUser(friendId))) {
+        checkUsersExist(id, friendId);
+        if (!friendGraph.contains(id, friendId)) {
             throw new UserDataException("Этот пользователь не является вашим другом");
         }
         String sql = "DELETE FROM friends WHERE user_id = ? AND friend_id = ?";
         jdbcTemplate.update(sql, id, friendId);
+        unlinkFriend(id, friendId);
         sql = "UPDATE friends SET CONFIRMED_STATUS = false WHERE user_id = ? AND friend_id = ?";
         jdbcTemplate.update(sql, friendId, id);
     }
 
     @Override
     public List<User> getMutualFriends(int id, int friendId) {
-        String sql = "SELECT f1.friend_id FROM friends f1 " +
-                "INNER JOIN friends f2 ON f1.friend_id = f2.friend_id " +
-                "WHERE f1.user_id = ? AND f2.user_id = ?";
-        List<Integer> mutualFriendsId = jdbcTemplate.queryForList(sql, Integer.class, id, friendId);
-        return mutualFriendsId.stream().map(this::getUser).collect(Collectors.toList());
+        return getUsers(friendGraph.getMutualFriends(id, friendId));
+    }
+
+    @Override
+    public List<User> getFriendSuggestions(int id, int limit) {
+        getUser(id);
+        int[] suggestions = friendGraph.getSuggestions(id, limit);
+        //пользователи из базы приходят по возрастанию id, возвращаем их в порядке рейтинга
+        Map<Integer, User> users = getUsers(suggestions).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        List<User> result = new ArrayList<>();
+        for (int userId : suggestions) {
+            //граф мог опередить прочитанные данные
+            User user = users.get(userId);
+            if (user != null) {
+                result.add(user);
+            }
+        }
+        return result;
     }
 }
\ No newline at end of file
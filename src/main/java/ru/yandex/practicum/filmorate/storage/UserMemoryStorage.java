@@ -0,0 +1,436 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.UserAlreadyExistException;
+import ru.yandex.practicum.filmorate.exception.UserDataException;
+import ru.yandex.practicum.filmorate.exception.UserNotExistException;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+//пользователи и граф дружбы целиком в памяти, долговечность — через журнал и снимки MemoryJournal
+@Slf4j
+@Component
+@Qualifier("userStorage")
+@ConditionalOnProperty(name = "filmorate.storage.engine", havingValue = "memory")
+public class UserMemoryStorage implements UserStorage, MemoryJournal.Participant {
+    private static final String JOURNAL_NAME = "users";
+    private static final byte PUT = 'U';
+    private static final byte ADD_FRIEND = 'A';
+    private static final byte REMOVE_FRIEND = 'R';
+    //длины столбцов users из schema.sql: хранилище в памяти отклоняет то же, что и БД
+    private static final int NAME_LENGTH = 64;
+    private static final int LOGIN_LENGTH = 20;
+    private static final int EMAIL_LENGTH = 20;
+
+    private final MemoryJournal journal;
+    private final FriendGraph friendGraph;
+    private final MemoryTable<StoredUser> users = new MemoryTable<>();
+
+    public UserMemoryStorage(MemoryJournal journal, FriendGraph friendGraph) {
+        this.journal = journal;
+        this.friendGraph = friendGraph;
+        friendGraph.rebuild(new int[0], new int[0], 0);
+        journal.recover(JOURNAL_NAME, this);
+        log.info("Загружены пользователи из памяти: пользователей " + users.size());
+    }
+
+    @Override
+    public List<User> findAll() {
+        List<User> result = new ArrayList<>(users.size());
+        users.forEach(0, user -> result.add(user.toUser()));
+        return result;
+    }
+
+    @Override
+    public List<User> findAll(int limit, int afterId) {
+        List<User> result = new ArrayList<>();
+        if (limit > 0) {
+            users.forEach(afterId, user -> result.add(user.toUser()) && result.size() < limit);
+        }
+        return result;
+    }
+
+    @Override
+    public User create(User user) {
+        if (user.getId() != 0 && getUser(user.getId()) != null) {
+            log.warn("Пользователь " + user + " уже существует");
+            throw new UserAlreadyExistException("Пользователь с id: "
+                    + user.getId() + " уже зарегистрирован.");
+        }
+        if (user.getName() == null || user.getName().isBlank()) {
+            user.setName(user.getLogin());
+        }
+        checkColumns(user);
+        user.setId(users.nextId());
+        store(user);
+        updateFriends(user);
+        return user;
+    }
+
+    //в отличие от БД пачка не атомарна: пачка проверяется целиком до записи, но если запись в журнал всё же
+    //упадёт, пользователи до ошибки остаются с id, а у остальных id сбрасывается, и импорт повторит только их
+    @Override
+    public void createAll(List<User> users) {
+        for (User user : users) {
+            if (user.getName() == null || user.getName().isBlank()) {
+                user.setName(user.getLogin());
+            }
+            checkColumns(user);
+        }
+        for (User user : users) {
+            user.setId(this.users.nextId());
+            try {
+                store(user);
+            } catch (RuntimeException e) {
+                user.setId(0);
+                throw e;
+            }
+        }
+        log.debug("Добавлено пользователей: " + users.size());
+    }
+
+    @Override
+    public User update(User user) {
+        checkColumns(user);
+        synchronized (users.lock(user.getId())) {
+            if (getUser(user.getId()) == null) {
+                log.warn("Пользователя " + user + " не существует.");
+                throw new UserNotExistException("Данного пользователя не существует.");
+            }
+            store(user);
+        }
+        updateFriends(user);
+        return user;
+    }
+
+    private static void checkColumns(User user) {
+        checkLength("users.name", user.getName(), NAME_LENGTH);
+        checkLength("users.login", user.getLogin(), LOGIN_LENGTH);
+        checkLength("users.email", user.getEmail(), EMAIL_LENGTH);
+    }
+
+    private static void checkLength(String column, String value, int length) {
+        if (value != null && value.length() > length) {
+            throw new DataIntegrityViolationException("Значение длиннее столбца " + column + " (" + length + ")");
+        }
+    }
+
+        private void store(User user) {
+        StoredUser stored = new StoredUser(user);
+        synchronized (users.lock(stored.id)) {
+            journal.append(JOURNAL_NAME, out -> {
+                out.writeByte(PUT);
+                stored.write(out);
+            }, () -> users.put(stored.id, stored));
+        }
+    }
+
+    private void updateFriends(User user) {
+        replaceFriends(user.getId(), user.getFriends() == null ? Set.of() : user.getFriends());
+    }
+
+    private void replaceFriends(int id, Collection<Integer> friendIds) {
+        Set<Integer> current = new HashSet<>();
+        for (int friendId : friendGraph.getFriends(id)) {
+            current.add(friendId);
+        }
+        for (int friendId : friendIds) {
+            if (!current.contains(friendId)) {
+                link(id, friendId);
+            }
+        }
+        current.removeAll(friendIds);
+        current.forEach(friendId -> unlink(id, friendId));
+    }
+
+    //false, если связь уже была
+    private boolean link(int id, int friendId) {
+        synchronized (users.lock(id)) {
+            if (friendGraph.contains(id, friendId)) {
+                return false;
+            }
+            journal.append(JOURNAL_NAME, out -> writeFriendship(out, ADD_FRIEND, id, friendId),
+                    () -> friendGraph.add(id, friendId));
+            return true;
+        }
+    }
+
+    //false, если связи не было
+    private boolean unlink(int id, int friendId) {
+        synchronized (users.lock(id)) {
+            if (!friendGraph.contains(id, friendId)) {
+                return false;
+            }
+            journal.append(JOURNAL_NAME, out -> writeFriendship(out, REMOVE_FRIEND, id, friendId),
+                    () -> friendGraph.remove(id, friendId));
+            return true;
+        }
+    }
+
+    private static void writeFriendship(DataOutput out, byte type, int id, int friendId) throws IOException {
+        out.writeByte(type);
+        out.writeInt(id);
+        out.writeInt(friendId);
+    }
+
+    @Override
+    public User getUser(int id) {
+        StoredUser stored = users.get(id);
+        if (stored == null) {
+            throw new UserNotExistException("Пользователя с id: " + id + " не существует");
+        }
+        User user = stored.toUser();
+        loadFriends(List.of(user));
+        return user;
+    }
+
+    @Override
+    public void exportAll(Consumer<User> consumer) {
+        users.forEach(0, user -> {
+            consumer.accept(user.toUser());
+            return true;
+        });
+    }
+
+    @Override
+    public void loadFriends(List<User> users) {
+        users.forEach(user -> {
+            for (int friendId : friendGraph.getFriends(user.getId())) {
+                user.getFriends().add(friendId);
+            }
+        });
+    }
+
+    @Override
+    public List<User> getFriends(int id) {
+        return getUsers(friendGraph.getFriends(id));
+    }
+
+    //массивы графа отсортированы, поэтому пользователи идут по возрастанию id
+    private List<User> getUsers(int[] userIds) {
+        List<User> result = new ArrayList<>(userIds.length);
+        for (int userId : userIds) {
+            StoredUser user = users.get(userId);
+            if (user != null) {
+                result.add(user.toUser());
+            }
+        }
+        return result;
+    }
+
+    private void checkUsersExist(int id, int friendId) {
+        for (int userId : new int[]{friendId, id}) {
+            if (users.get(userId) == null) {
+                throw new UserNotExistException("Пользователя с id: " + userId + " не существует");
+            }
+        }
+    }
+
+    @Override
+    public void addFriend(int id, int friendId) {
+        if (id <= 0) {
+            throw new UserDataException("Передан отрицательный id " + id);
+        }
+        if (friendId <= 0) {
+            throw new UserDataException("Передан отрицательный id " + friendId);
+        }
+        checkUsersExist(id, friendId);
+        if (!link(id, friendId)) {
+            throw new UserDataException("Этот пользователь уже ваш друг");
+        }
+    }
+
+    @Override
+    public void addFriends(List<Friendship> friendships) {
+        for (Friendship friendship : friendships) {
+            link(friendship.getUserId(), friendship.getFriendId());
+        }
+    }
+
+    @Override
+    public void setFriends(int id, Collection<Integer> friendIds) {
+        if (friendIds.contains(id)) {
+            throw new UserDataException("Нельзя добавить в друзья самого себя");
+        }
+        if (users.get(id) == null) {
+            throw new UserNotExistException("Пользователя с id: " + id + " не существует");
+        }
+        Set<Integer> missing = new HashSet<>(friendIds);
+        missing.removeAll(findExistingIds(friendIds));
+        if (!missing.isEmpty()) {
+            throw new UserNotExistException("Пользователей с id: " + missing + " не существует");
+        }
+        replaceFriends(id, new HashSet<>(friendIds));
+    }
+
+    @Override
+    public Set<Integer> findExistingIds(Collection<Integer> ids) {
+        return ids.stream()
+                .filter(id -> users.get(id) != null)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public void deleteFriend(int id, int friendId) {
+        if (id <= 0) {
+            throw new UserDataException("Передан отрицательный id " + id);
+        }
+        if (friendId <= 0) {
+            throw new UserDataException("Передан отрицательный id " + friendId);
+        }
+        checkUsersExist(id, friendId);
+        if (!unlink(id, friendId)) {
+            throw new UserDataException("Этот пользователь не является вашим другом");
+        }
+    }
+
+    @Override
+    public List<User> getMutualFriends(int id, int friendId) {
+        return getUsers(friendGraph.getMutualFriends(id, friendId));
+    }
+
+    @Override
+    public List<User> getFriendSuggestions(int id, int limit) {
+        getUser(id);
+        //порядок рейтинга сохраняется: пользователи читаются по одному
+        return getUsers(friendGraph.getSuggestions(id, limit));
+    }
+
+    //снимок: пользователи, затем списки друзей; конец каждого списка отмечается нулевым id
+    @Override
+    public void writeSnapshot(DataOutput out) throws IOException {
+        List<IOException> failures = new ArrayList<>();
+        users.forEach(0, user -> write(failures, () -> user.write(out)));
+        out.writeInt(0);
+        friendGraph.forEachUser((friendIds, id) -> write(failures, () -> {
+            out.writeInt(id);
+            out.writeInt(friendIds.length);
+            for (int friendId : friendIds) {
+                out.writeInt(friendId);
+            }
+        }));
+        out.writeInt(0);
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+    }
+
+    private static boolean write(List<IOException> failures, IoAction action) {
+        if (!failures.isEmpty()) {
+            return false;
+        }
+        try {
+            action.run();
+            return true;
+        } catch (IOException e) {
+            failures.add(e);
+            return false;
+        }
+    }
+
+    @Override
+    public void readSnapshot(DataInput in) throws IOException {
+        for (int id = in.readInt(); id != 0; id = in.readInt()) {
+            users.put(id, StoredUser.read(id, in));
+        }
+        int[] userIds = new int[1024];
+        int[] friendIds = new int[1024];
+        int size = 0;
+        for (int id = in.readInt(); id != 0; id = in.readInt()) {
+            int friends = in.readInt();
+            if (size + friends > userIds.length) {
+                userIds = Arrays.copyOf(userIds, Math.max(userIds.length * 2, size + friends));
+                friendIds = Arrays.copyOf(friendIds, userIds.length);
+            }
+            for (int i = 0; i < friends; i++) {
+                userIds[size] = id;
+                friendIds[size++] = in.readInt();
+            }
+        }
+        friendGraph.rebuild(userIds, friendIds, size);
+    }
+
+    @Override
+    public void replay(DataInput in) throws IOException {
+        byte type = in.readByte();
+        int id = in.readInt();
+        if (type == PUT) {
+            users.put(id, StoredUser.read(id, in));
+        } else if (type == ADD_FRIEND) {
+            friendGraph.add(id, in.readInt());
+        } else {
+            friendGraph.remove(id, in.readInt());
+        }
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    private static final class StoredUser {
+        private final int id;
+        private final String name;
+        private final String login;
+        private final String email;
+        private final LocalDate birthday;
+
+        private StoredUser(int id, String name, String login, String email, LocalDate birthday) {
+            this.id = id;
+            this.name = name;
+            this.login = login;
+            this.email = email;
+            this.birthday = birthday;
+        }
+
+        private StoredUser(User user) {
+            this(user.getId(), user.getName(), user.getLogin(), user.getEmail(), user.getBirthday());
+        }
+
+        private User toUser() {
+            return new User(id, name, login, email, birthday, new HashSet<>());
+        }
+
+        private void write(DataOutput out) throws IOException {
+            out.writeInt(id);
+            writeNullable(out, name);
+            writeNullable(out, login);
+            writeNullable(out, email);
+            out.writeBoolean(birthday != null);
+            if (birthday != null) {
+                out.writeLong(birthday.toEpochDay());
+            }
+        }
+
+        //id записан первым и уже прочитан
+        private static StoredUser read(int id, DataInput in) throws IOException {
+            String name = readNullable(in);
+            String login = readNullable(in);
+            String email = readNullable(in);
+            LocalDate birthday = in.readBoolean() ? LocalDate.ofEpochDay(in.readLong()) : null;
+            return new StoredUser(id, name, login, email, birthday);
+        }
+
+        private static void writeNullable(DataOutput out, String value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+
+        private static String readNullable(DataInput in) throws IOException {
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+    }
+}
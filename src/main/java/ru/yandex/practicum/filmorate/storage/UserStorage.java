@@ -1,15 +1,23 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface UserStorage {
 
     List<User> findAll();
 
+    List<User> findAll(int limit, int afterId);
+
     User create(User user);
 
+    void createAll(List<User> users);
+
     User update(User user);
 
     User getUser(int id);
@@ -18,7 +26,19 @@ public interface UserStorage {
 
     void deleteFriend(int id, int friendId);
 
+    void addFriends(List<Friendship> friendships);
+
+    void setFriends(int id, Collection<Integer> friendIds);
+
+    Set<Integer> findExistingIds(Collection<Integer> ids);
+
     List<User> getFriends(int id);
 
     List<User> getMutualFriends(int id, int friendId);
+
+    List<User> getFriendSuggestions(int id, int limit);
+
+    void loadFriends(List<User> users);
+
+    void exportAll(Consumer<User> consumer);
 }
@@ -81,3 +81,21 @@ CREATE TABLE IF NOT EXISTS film_likes
     FOREIGN KEY (film_id) REFERENCES film (film_id),
     FOREIGN KEY (user_id) REFERENCES users (user_id)
 );
+
+CREATE SEQUENCE IF NOT EXISTS film_seq START WITH 1 INCREMENT BY 50;
+
+CREATE SEQUENCE IF NOT EXISTS user_seq START WITH 1 INCREMENT BY 50;
+
+-- лайки, поставленные до появления столбца, остаются без времени и в популярное за период не попадают
+ALTER TABLE film_likes ADD COLUMN IF NOT EXISTS liked_at TIMESTAMP;
+
+ALTER TABLE film_likes ALTER COLUMN liked_at SET DEFAULT LOCALTIMESTAMP;
+
+CREATE INDEX IF NOT EXISTS film_likes_liked_at ON film_likes (liked_at);
+
+-- метка времени, которую основная БД периодически обновляет: по ней измеряется отставание реплик
+CREATE TABLE IF NOT EXISTS replication_heartbeat
+(
+    id   INT PRIMARY KEY,
+    beat BIGINT NOT NULL
+);
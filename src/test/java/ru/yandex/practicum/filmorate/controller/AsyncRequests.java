@@ -0,0 +1,38 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.test.web.servlet.*;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+
+public final class AsyncRequests {
+
+    private AsyncRequests() {
+    }
+
+    //контроллеры выполняют работу в пулах RequestExecutors, поэтому ответ формируется в асинхронной диспетчеризации;
+    //ответы без асинхронной части (например, 304) проверяются как есть
+    public static ResultActions perform(MockMvc mockMvc, RequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request).andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            return mockMvc.perform(asyncDispatch(result));
+        }
+        return new ResultActions() {
+            @Override
+            public ResultActions andExpect(ResultMatcher matcher) throws Exception {
+                matcher.match(result);
+                return this;
+            }
+
+            @Override
+            public ResultActions andDo(ResultHandler handler) throws Exception {
+                handler.handle(result);
+                return this;
+            }
+
+            @Override
+            public MvcResult andReturn() {
+                return result;
+            }
+        };
+    }
+}
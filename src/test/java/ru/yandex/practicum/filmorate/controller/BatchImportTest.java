@@ -0,0 +1,148 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.hamcrest.Matchers.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static ru.yandex.practicum.filmorate.controller.AsyncRequests.perform;
+
+//сценарии выполняются для каждого движка хранилища, см. наследников
+@AutoConfigureMockMvc
+public abstract class BatchImportTest {
+    @Autowired
+    protected MockMvc mockMvc;
+
+    @Test
+    public void testImportFilms() throws Exception {
+        String response = batch("/films/batch", "[" +
+                film("Первый", "2000-01-01") + "," +
+                film("Ранний", "1800-01-01") + "," +
+                film("", "2000-01-01") + "," +
+                film("Второй", "2000-01-01") + "]")
+                .andExpect(jsonPath("$.total").value(4))
+                .andExpect(jsonPath("$.succeeded").value(2))
+                .andExpect(jsonPath("$.failed").value(2))
+                .andExpect(jsonPath("$.items[1].id").value(nullValue()))
+                .andExpect(jsonPath("$.items[1].error")
+                        .value("Дата релиза фильма не может быть раньше 28 декабря 1895 года."))
+                .andExpect(jsonPath("$.items[2].error").value("Имя фильма не может быть пустым."))
+                .andReturn().getResponse().getContentAsString();
+        perform(mockMvc, get("/films/" + JsonPath.read(response, "$.items[0].id")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Первый"));
+        perform(mockMvc, get("/films/" + JsonPath.read(response, "$.items[3].id")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Второй"));
+    }
+
+    @Test
+    public void testImportUsers() throws Exception {
+        String response = batch("/users/batch", "[" +
+                user("importer1") + "," +
+                "{\"login\":\"bad\",\"email\":\"not an email\",\"birthday\":\"1990-01-01\"}," +
+                user("importer2") + "]")
+                .andExpect(jsonPath("$.total").value(3))
+                .andExpect(jsonPath("$.succeeded").value(2))
+                .andExpect(jsonPath("$.items[1].error").value("Email задан некорректно."))
+                .andReturn().getResponse().getContentAsString();
+        perform(mockMvc, get("/users/" + JsonPath.read(response, "$.items[2].id")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.login").value("importer2"));
+    }
+
+    @Test
+    public void testImportLikesAndFriends() throws Exception {
+        String films = batch("/films/batch", "[" + film("Для лайков 1", "2001-01-01") + ","
+                + film("Для лайков 2", "2001-01-01") + "]")
+                .andReturn().getResponse().getContentAsString();
+        int first = JsonPath.read(films, "$.items[0].id");
+        int second = JsonPath.read(films, "$.items[1].id");
+        String users = batch("/users/batch", "[" + user("liker1") + "," + user("liker2") + "]")
+                .andReturn().getResponse().getContentAsString();
+        int fan = JsonPath.read(users, "$.items[0].id");
+        int other = JsonPath.read(users, "$.items[1].id");
+
+        batch("/films/likes/batch", "[" +
+                like(first, fan) + "," +
+                like(first, 999_999) + "," +
+                like(999_999, fan) + "," +
+                like(0, fan) + "," +
+                like(second, other) + "]")
+                .andExpect(jsonPath("$.succeeded").value(2))
+                .andExpect(jsonPath("$.items[1].error").value("Пользователя с id: 999999 не существует"))
+                .andExpect(jsonPath("$.items[2].error").value("Фильма с id: 999999 не существует"))
+                .andExpect(jsonPath("$.items[3].error").value("ID фильма должен быть положительным."));
+        perform(mockMvc, get("/films/" + first)).andExpect(jsonPath("$.likes").value(1));
+        perform(mockMvc, get("/films/" + second)).andExpect(jsonPath("$.likes").value(1));
+
+        batch("/users/friends/batch", "[" +
+                friendship(fan, other) + "," +
+                friendship(fan, fan) + "," +
+                friendship(fan, 999_999) + "," +
+                friendship(other, fan) + "]")
+                .andExpect(jsonPath("$.succeeded").value(2))
+                .andExpect(jsonPath("$.items[1].error").value("Нельзя добавить в друзья самого себя"))
+                .andExpect(jsonPath("$.items[2].error").value("Пользователя с id: 999999 не существует"));
+        perform(mockMvc, get("/users/" + fan + "/friends"))
+                .andExpect(jsonPath("$[*].id", contains(other)));
+        perform(mockMvc, get("/users/" + other + "/friends"))
+                .andExpect(jsonPath("$[*].id", contains(fan)));
+    }
+
+    //значения длиннее столбцов проходят валидацию, но не запись: пачка откатывается и пишется по одному,
+    //а хранилище в памяти отклоняет их по тем же длинам столбцов ещё до записи
+    @Test
+    public void testFailedWriteRetriedItemByItem() throws Exception {
+        String films = batch("/films/batch", "[" +
+                film("До длинного", "2000-01-01") + "," +
+                film("Фильм с названием длиннее шестидесяти четырёх символов, которое не влезет", "2000-01-01") +
+                "," + film("После длинного", "2000-01-01") + "]")
+                .andExpect(jsonPath("$.succeeded").value(2))
+                .andExpect(jsonPath("$.items[1].error", startsWith("Ошибка записи")))
+                .andReturn().getResponse().getContentAsString();
+        perform(mockMvc, get("/films/" + JsonPath.read(films, "$.items[0].id")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("До длинного"));
+        perform(mockMvc, get("/films/" + JsonPath.read(films, "$.items[2].id")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("После длинного"));
+        batch("/users/batch", "[" + user("short1") + "," + user("importer_with_long_login") + ","
+                + user("short2") + "]")
+                .andExpect(jsonPath("$.succeeded").value(2))
+                .andExpect(jsonPath("$.items[0].id").isNumber())
+                .andExpect(jsonPath("$.items[1].error", startsWith("Ошибка записи")))
+                .andExpect(jsonPath("$.items[2].id").isNumber());
+    }
+
+    protected ResultActions batch(String url, String body) throws Exception {
+        return perform(mockMvc, post(url).contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isOk());
+    }
+
+    protected static String film(String name, String releaseDate) {
+        return "{\"name\":\"" + name + "\",\"description\":\"Импорт\",\"releaseDate\":\"" + releaseDate +
+                "\",\"duration\":100,\"mpa\":{\"id\":1}}";
+    }
+
+    protected static String user(String login) {
+        return "{\"login\":\"" + login + "\",\"email\":\"" + login.substring(0, Math.min(login.length(), 9)) +
+                "@mail.ru\",\"birthday\":\"1990-01-01\"}";
+    }
+
+    private static String like(int filmId, int userId) {
+        return "{\"filmId\":" + filmId + ",\"userId\":" + userId + "}";
+    }
+
+    private static String friendship(int userId, int friendId) {
+        return "{\"userId\":" + userId + ",\"friendId\":" + friendId + "}";
+    }
+}
@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+
+@SpringBootTest(properties = {MemoryEngine.ENGINE, MemoryEngine.NO_SNAPSHOTS})
+@AutoConfigureTestDatabase
+public class ConditionalRequestsMemoryTest extends ConditionalRequestsTest {
+
+    @DynamicPropertySource
+    static void memoryPath(DynamicPropertyRegistry registry) throws IOException {
+        MemoryEngine.register(registry);
+    }
+}
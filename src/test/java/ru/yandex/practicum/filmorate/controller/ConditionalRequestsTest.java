@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static ru.yandex.practicum.filmorate.controller.AsyncRequests.perform;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static ru.yandex.practicum.filmorate.controller.QueryCountAssertions.statementsAtMost;
+
+//сценарии выполняются для каждого движка хранилища, см. наследников
+@AutoConfigureMockMvc
+public abstract class ConditionalRequestsTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void testFilmInformationNotModified() throws Exception {
+        for (String url : new String[]{"/genres", "/genres/1", "/mpa", "/mpa/1"}) {
+            String eTag = eTag(url);
+            perform(mockMvc, get(url).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                    .andExpect(status().isNotModified())
+                    .andExpect(content().string(""))
+                    .andExpect(statementsAtMost(0));
+        }
+        //fail
+        perform(mockMvc, get("/genres/99").header(HttpHeaders.IF_NONE_MATCH, eTag("/genres")))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testFilmNotModified() throws Exception {
+        int id = createFilm();
+        String url = "/films/" + id;
+        String eTag = eTag(url);
+        perform(mockMvc, get(url).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(statementsAtMost(0));
+        //изменение фильма меняет версию
+        perform(mockMvc, put("/films")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\":" + id + ",\"name\":\"ETag\",\"description\":\"changed\"," +
+                        "\"releaseDate\":\"2000-01-01\",\"duration\":100,\"mpa\":{\"id\":1}}"))
+                .andExpect(status().isOk());
+        perform(mockMvc, get(url).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk());
+        String updated = eTag(url);
+        assertNotEquals(eTag, updated);
+        //как и лайк
+        perform(mockMvc, put(url + "/like/" + createUser()))
+                .andExpect(status().isOk());
+        perform(mockMvc, get(url).header(HttpHeaders.IF_NONE_MATCH, updated))
+                .andExpect(status().isOk());
+        assertNotEquals(updated, eTag(url));
+        //fail
+        perform(mockMvc, get("/films/" + (id + 1000)).header(HttpHeaders.IF_NONE_MATCH, "*"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testPopularNotModified() throws Exception {
+        String eTag = eTag("/films/popular");
+        perform(mockMvc, get("/films/popular").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(statementsAtMost(0));
+        assertNotEquals(eTag, eTag("/films/popular?count=1"));
+    }
+
+    private int createFilm() throws Exception {
+        String response = perform(mockMvc, post("/films")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"ETag\",\"description\":\"description\",\"releaseDate\":\"2000-01-01\"," +
+                        "\"duration\":100,\"mpa\":{\"id\":1}}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(response, "$.id");
+    }
+
+    private int createUser() throws Exception {
+        String response = perform(mockMvc, post("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"login\":\"etag\",\"email\":\"etag@mail.ru\",\"birthday\":\"1990-01-01\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(response, "$.id");
+    }
+
+    private String eTag(String url) throws Exception {
+        String eTag = perform(mockMvc, get(url))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(eTag, "Нет ETag у " + url);
+        return eTag;
+    }
+}
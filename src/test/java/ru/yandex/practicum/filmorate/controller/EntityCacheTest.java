@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.CacheConfiguration;
+import ru.yandex.practicum.filmorate.service.EntityCache;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+public class EntityCacheTest {
+
+    @Test
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        EntityCache<User> cache = new CacheConfiguration(registry, 300).userCache(100);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<User> first = CompletableFuture.supplyAsync(() -> cache.get(1, id -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return user(id);
+        }));
+        loading.await(5, TimeUnit.SECONDS);
+        CompletableFuture<User> second = CompletableFuture.supplyAsync(() -> cache.get(1, id -> {
+            loads.incrementAndGet();
+            return user(id);
+        }));
+        release.countDown();
+        //каждый получает свою копию, изменения копии не попадают в кэш
+        User user = first.get(5, TimeUnit.SECONDS);
+        assertNotSame(user, second.get(5, TimeUnit.SECONDS));
+        user.getFriends().add(2);
+        assertEquals(0, cache.get(1, id -> user(id)).getFriends().size());
+        assertEquals(1, loads.get());
+        assertEquals(2, registry.get("cache.gets").tags("cache", "users", "result", "hit").functionCounter().count());
+
+        cache.invalidate(1);
+        cache.get(1, id -> {
+            loads.incrementAndGet();
+            return user(id);
+        });
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testStaleVersionIsReloaded() {
+        EntityCache<User> cache = new CacheConfiguration(new SimpleMeterRegistry(), 300).userCache(100);
+        cache.get(1, 1L, id -> user(id));
+        assertEquals("second", cache.get(1, 2L, id -> {
+            User user = user(id);
+            user.setName("second");
+            return user;
+        }).getName());
+        //запись новее прочитанной версии остаётся в кэше
+        assertEquals("second", cache.get(1, 1L, id -> user(id)).getName());
+    }
+
+    private static User user(int id) {
+        return new User(id, "user", "login", "user@mail.ru", LocalDate.of(2000, 1, 1), new HashSet<>());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
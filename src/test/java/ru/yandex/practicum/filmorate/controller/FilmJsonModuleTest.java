@@ -0,0 +1,67 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.FilmMpa;
+import ru.yandex.practicum.filmorate.model.Page;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FilmJsonModuleTest {
+    //так Spring Boot настраивает Jackson по умолчанию
+    private final ObjectMapper reflective = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final ObjectMapper cached = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .registerModule(new FilmJsonModule(new SimpleMeterRegistry(), 100));
+
+    @Test
+    public void testSameJsonAsReflection() throws Exception {
+        Film film = new Film(1, "Фильм \"в кавычках\"\n", "Описание \\  ", LocalDate.of(1999, 12, 31), 120, 7,
+                new LinkedHashSet<>(List.of(new FilmGenre(2, "Драма"), new FilmGenre(1, "Комедия"))),
+                new FilmMpa(3, "PG-13"));
+        Film empty = new Film(2, null, null, null, 1, 0, null, null);
+        Page<Film> page = new Page<>(List.of(film, empty), "cursor");
+        //второй проход пишет закэшированные байты
+        for (int i = 0; i < 2; i++) {
+            assertSameJson(page);
+            assertSameJson(film);
+            assertSameJson(Set.of(new FilmGenre(1, "Комедия")));
+            assertSameJson(new FilmMpa(3, "PG-13"));
+        }
+    }
+
+    @Test
+    public void testChangedFilmEncodedAgain() throws Exception {
+        Film film = new Film(1, "Фильм", "Описание", LocalDate.of(2000, 1, 1), 100, 0,
+                new LinkedHashSet<>(List.of(new FilmGenre(1, "Комедия"))), new FilmMpa(1, "G"));
+        assertSameJson(film);
+        film.setLikes(1);
+        assertSameJson(film);
+        film.getGenres().add(new FilmGenre(6, "Боевик"));
+        assertSameJson(film);
+        film.getMpa().setName("PG");
+        assertSameJson(film);
+        //fail: жанр с тем же id, но другим названием не берётся из кэша
+        assertSameJson(new FilmGenre(1, "Не комедия"));
+    }
+
+    private void assertSameJson(Object value) throws Exception {
+        assertEquals(reflective.writeValueAsString(value), cached.writeValueAsString(value));
+        assertEquals(new String(reflective.writeValueAsBytes(value), StandardCharsets.UTF_8),
+                new String(cached.writeValueAsBytes(value), StandardCharsets.UTF_8));
+    }
+}
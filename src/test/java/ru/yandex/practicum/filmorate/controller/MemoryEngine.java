@@ -0,0 +1,21 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.test.context.DynamicPropertyRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public final class MemoryEngine {
+    public static final String ENGINE = "filmorate.storage.engine=memory";
+    public static final String NO_SNAPSHOTS = "filmorate.storage.memory.snapshot-interval-seconds=0";
+
+    private MemoryEngine() {
+    }
+
+    //каждый контекст получает свою пустую папку журнала, иначе хранилище восстановило бы данные прошлых запусков
+    public static void register(DynamicPropertyRegistry registry) throws IOException {
+        Path path = Files.createTempDirectory("filmorate-memory");
+        registry.add("filmorate.storage.memory.path", path::toString);
+    }
+}
@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.test.web.servlet.ResultMatcher;
+import ru.yandex.practicum.filmorate.metrics.RequestMetricsInterceptor;
+import ru.yandex.practicum.filmorate.metrics.StatementStatistics;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class QueryCountAssertions {
+
+    private QueryCountAssertions() {
+    }
+
+    public static ResultMatcher statementsAtMost(int max) {
+        return result -> {
+            StatementStatistics statistics = (StatementStatistics) result.getRequest()
+                    .getAttribute(RequestMetricsInterceptor.STATISTICS_ATTRIBUTE);
+            assertNotNull(statistics, "Запрос не прошёл через RequestMetricsInterceptor");
+            assertAtMost(max, statistics);
+        };
+    }
+
+    public static StatementStatistics assertStatementsAtMost(int max, Runnable action) {
+        StatementStatistics statistics = StatementStatistics.measure(action);
+        assertAtMost(max, statistics);
+        return statistics;
+    }
+
+    private static void assertAtMost(int max, StatementStatistics statistics) {
+        assertTrue(statistics.getStatements() <= max, "Ожидалось не больше " + max + " SQL-запросов, выполнено "
+                + statistics.getStatements() + ": " + statistics.getQueries());
+    }
+}
@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.metrics.QueryMetrics;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class QueryMetricsTest {
+
+    @Test
+    public void testNormalizeParameterLists() {
+        assertEquals("SELECT * FROM film WHERE film_id IN (?...) AND mpa_id = ?",
+                QueryMetrics.normalize("SELECT *  FROM film\n WHERE film_id IN (?, ?,?) AND mpa_id = 5"));
+        assertEquals("SELECT * FROM film WHERE film_id = ?",
+                QueryMetrics.normalize("SELECT * FROM film WHERE film_id = ?"));
+        //список из тысяч параметров, как в loadGenre по всем фильмам
+        String sql = "SELECT film_id, genre_id FROM film_genres WHERE film_id IN (" +
+                String.join(",", Collections.nCopies(20_000, "?")) + ") ORDER BY film_id";
+        assertEquals("SELECT film_id, genre_id FROM film_genres WHERE film_id IN (?...) ORDER BY film_id",
+                QueryMetrics.normalize(sql));
+    }
+}
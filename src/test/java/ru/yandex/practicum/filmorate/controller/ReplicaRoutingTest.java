@@ -0,0 +1,178 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.jayway.jsonpath.JsonPath;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import ru.yandex.practicum.filmorate.datasource.DataSourceReplicas;
+import ru.yandex.practicum.filmorate.datasource.ReadConsistencyInterceptor;
+
+import javax.servlet.http.Cookie;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static ru.yandex.practicum.filmorate.controller.AsyncRequests.perform;
+
+//основную БД и реплики изображают отдельные H2 в памяти. Пользователь-метка есть только на репликах,
+//поэтому по ответу видно, откуда было прочитано. Метки репликации задаются вручную, фоновая запись меток
+//в тесте не успевает сработать
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1",
+        "filmorate.datasource.replicas.urls=" + ReplicaRoutingTest.REPLICA_1 + "," + ReplicaRoutingTest.REPLICA_2,
+        "filmorate.datasource.replicas.max-lag-ms=60000",
+        "filmorate.datasource.replicas.heartbeat-interval-ms=3600000"})
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class ReplicaRoutingTest {
+    static final String REPLICA_1 = "jdbc:h2:mem:routing-replica1;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_2 = "jdbc:h2:mem:routing-replica2;DB_CLOSE_DELAY=-1";
+
+    private final MockMvc mockMvc;
+    private final DataSourceReplicas replicas;
+
+    @BeforeEach
+    public void createReplicas() throws SQLException {
+        for (String url : new String[]{REPLICA_1, REPLICA_2}) {
+            execute(url, "RUNSCRIPT FROM 'classpath:schema.sql'");
+            execute(url, "MERGE INTO users (user_id, name, login, email, birthday) KEY (user_id) " +
+                    "VALUES (5000, 'replica', 'replica', 'replica@mail.ru', '1990-01-01')");
+        }
+    }
+
+    @AfterEach
+    public void dropReplicas() throws SQLException {
+        for (String url : new String[]{REPLICA_1, REPLICA_2}) {
+            execute(url, "DROP ALL OBJECTS");
+        }
+    }
+
+    @Test
+    public void testReadFromFreshReplica() throws Exception {
+        setReplicatedBeat(System.currentTimeMillis());
+        findAll(null).andExpect(jsonPath("$[*].login", hasItem("replica")));
+        //fail: реплики отстали больше допустимого, чтение идёт с основной БД
+        setReplicatedBeat(System.currentTimeMillis() - 120_000);
+        findAll(null).andExpect(jsonPath("$[*].login", not(hasItem("replica"))));
+    }
+
+    @Test
+    public void testReadYourWrites() throws Exception {
+        setReplicatedBeat(System.currentTimeMillis() - 1000);
+        Cookie lastWrite = perform(mockMvc, post("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"login\":\"writer\",\"email\":\"writer@mail.ru\",\"birthday\":\"1990-01-01\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getCookie(ReadConsistencyInterceptor.COOKIE);
+        assertNotNull(lastWrite);
+        //реплики ещё не получили запись клиента, поэтому он читает с основной БД и видит своего пользователя
+        findAll(lastWrite).andExpect(jsonPath("$[*].login", hasItem("writer")))
+                .andExpect(jsonPath("$[*].login", not(hasItem("replica"))));
+        //остальным клиентам подходят реплики
+        findAll(null).andExpect(jsonPath("$[*].login", hasItem("replica")));
+        //реплики догнали запись
+        setReplicatedBeat(System.currentTimeMillis() + 1000);
+        findAll(lastWrite).andExpect(jsonPath("$[*].login", hasItem("replica")));
+    }
+
+    @Test
+    public void testUnreachableReplicaSkipped() throws Exception {
+        setReplicatedBeat(System.currentTimeMillis());
+        //вторая реплика потеряла данные: метку с неё не прочитать, чтение идёт только с первой
+        execute(REPLICA_2, "DROP ALL OBJECTS");
+        replicas.refresh();
+        for (int i = 0; i < 4; i++) {
+            findAll(null).andExpect(jsonPath("$[*].login", hasItem("replica")));
+        }
+        //недоступны обе реплики, читаем с основной БД
+        execute(REPLICA_1, "DROP ALL OBJECTS");
+        replicas.refresh();
+        findAll(null).andExpect(jsonPath("$[*].login", not(hasItem("replica"))));
+    }
+
+    @Test
+    public void testFriendsReadFromPrimary() throws Exception {
+        setReplicatedBeat(System.currentTimeMillis());
+        int user = createUser("graph");
+        int friend = createUser("graphfriend");
+        perform(mockMvc, put("/users/" + user + "/friends/" + friend))
+                .andExpect(status().isOk());
+        //id друзей берутся из графа узла, а на репликах этих пользователей нет
+        perform(mockMvc, get("/users/" + user + "/friends"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].login", hasItem("graphfriend")));
+    }
+
+    @Test
+    public void testIndexedFilmReadsFromPrimary() throws Exception {
+        setReplicatedBeat(System.currentTimeMillis());
+        String response = perform(mockMvc, post("/films")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"Lagging\",\"description\":\"description\"," +
+                        "\"releaseDate\":\"2000-01-01\",\"duration\":100,\"mpa\":{\"id\":1}}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        int film = JsonPath.read(response, "$.id");
+        perform(mockMvc, put("/films/" + film + "/like/" + createUser("lagging")))
+                .andExpect(status().isOk());
+        //id фильмов берутся из индексов узла, а на репликах этого фильма нет
+        perform(mockMvc, get("/films/search?q=lagging"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", hasItem(film)));
+        perform(mockMvc, get("/films?mpa=1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Total-Count", "1"))
+                .andExpect(jsonPath("$[*].id", hasItem(film)));
+        perform(mockMvc, get("/films/trending?window=1h"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", hasItem(film)));
+    }
+
+    private int createUser(String login) throws Exception {
+        String response = perform(mockMvc, post("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"login\":\"" + login + "\",\"email\":\"" + login + "@mail.ru\"," +
+                        "\"birthday\":\"1990-01-01\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(response, "$.id");
+    }
+
+    private ResultActions findAll(Cookie cookie) throws Exception {
+        return perform(mockMvc, cookie == null ? get("/users") : get("/users").cookie(cookie))
+                .andExpect(status().isOk());
+    }
+
+    private void setReplicatedBeat(long beat) throws SQLException {
+        for (String url : new String[]{REPLICA_1, REPLICA_2}) {
+            execute(url, "MERGE INTO replication_heartbeat (id, beat) KEY (id) VALUES (1, " + beat + ")");
+        }
+        replicas.refresh();
+    }
+
+    private static void execute(String url, String sql) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, "sa", "password");
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
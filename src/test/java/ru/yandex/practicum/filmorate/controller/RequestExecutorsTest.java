@@ -0,0 +1,46 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.executor.RequestExecutors;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RequestExecutorsTest {
+
+    @Test
+    public void testWritesDoNotBlockReads() throws Exception {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        RequestExecutors executors = new RequestExecutors(registry, true, 1, 1, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            //единственный поток записи занят, очередь записи заполнена
+            CompletableFuture<Void> running = executors.write(() -> await(release));
+            CompletableFuture<Void> queued = executors.write(() -> await(release));
+            assertThrows(RejectedExecutionException.class, () -> executors.write(() -> await(release)));
+            assertEquals(1, registry.counter("filmorate.executor.rejected", "pool", "write").count());
+            //чтение обслуживается своим пулом
+            assertEquals("read", executors.read(() -> "read").get());
+            release.countDown();
+            running.get();
+            queued.get();
+        } finally {
+            release.countDown();
+            executors.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
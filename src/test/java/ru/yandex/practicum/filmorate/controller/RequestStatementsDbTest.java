@@ -0,0 +1,9 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(properties = "filmorate.storage.engine=db")
+@AutoConfigureTestDatabase
+public class RequestStatementsDbTest extends RequestStatementsTest {
+}
@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static ru.yandex.practicum.filmorate.controller.AsyncRequests.perform;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static ru.yandex.practicum.filmorate.controller.QueryCountAssertions.statementsAtMost;
+
+//сценарии выполняются для каждого движка хранилища; хранилищу в памяти запросы к БД не нужны вовсе
+@AutoConfigureMockMvc
+public abstract class RequestStatementsTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    public void testListEndpointsIssueConstantStatements() throws Exception {
+        int first = createUser("first");
+        int second = createUser("second");
+        perform(mockMvc, get("/users"))
+                .andExpect(status().isOk())
+                .andExpect(statementsAtMost(1));
+        perform(mockMvc, get("/films"))
+                .andExpect(status().isOk())
+                .andExpect(statementsAtMost(2));
+        perform(mockMvc, get("/films/popular"))
+                .andExpect(status().isOk())
+                .andExpect(statementsAtMost(2));
+        //списки друзей берутся из графа в памяти, запрос нужен только за самими пользователями
+        perform(mockMvc, get("/users/" + first + "/friends"))
+                .andExpect(status().isOk())
+                .andExpect(statementsAtMost(1));
+        perform(mockMvc, get("/users/" + first + "/friends/common/" + second))
+                .andExpect(status().isOk())
+                .andExpect(statementsAtMost(1));
+    }
+
+    @Test
+    public void testReferenceDataIssuesNoStatements() throws Exception {
+        perform(mockMvc, get("/genres"))
+                .andExpect(status().isOk())
+                .andExpect(statementsAtMost(0));
+        perform(mockMvc, get("/mpa/1"))
+                .andExpect(status().isOk())
+                .andExpect(statementsAtMost(0));
+    }
+
+    @Test
+    public void testTrendingHugeCount() throws Exception {
+        int user = createUser("trending");
+        String response = perform(mockMvc, post("/films")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"name\":\"Trending\",\"description\":\"description\"," +
+                        "\"releaseDate\":\"2000-01-01\",\"duration\":100,\"mpa\":{\"id\":1}}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        int film = JsonPath.read(response, "$.id");
+        perform(mockMvc, put("/films/" + film + "/like/" + user))
+                .andExpect(status().isOk());
+        //count ограничивается filmorate.trending.max-limit, а не выделяет кучу под запрошенный размер
+        perform(mockMvc, get("/films/trending?window=1h&count=" + Integer.MAX_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(film));
+        perform(mockMvc, get("/films/trending?count=500000000"))
+                .andExpect(status().isOk());
+    }
+
+    private int createUser(String login) throws Exception {
+        String response = perform(mockMvc, post("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"login\":\"" + login + "\",\"email\":\"" + login + "@mail.ru\"," +
+                        "\"birthday\":\"1990-01-01\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return JsonPath.read(response, "$.id");
+    }
+}
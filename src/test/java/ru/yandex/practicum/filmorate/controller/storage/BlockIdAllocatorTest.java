@@ -0,0 +1,124 @@
+package ru.yandex.practicum.filmorate.controller.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmMpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//второй экземпляр приложения изображают хранилища, созданные поверх той же БД со своими индексами.
+//созданные фильмы и пользователи остаются в БД, поэтому контекст не переиспользуется другими тестами
+@SpringBootTest(properties = "filmorate.storage.engine=db")
+@AutoConfigureTestDatabase
+@DirtiesContext
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class BlockIdAllocatorTest {
+    private static final int THREADS = 4;
+    private static final int CREATES_PER_THREAD = 150;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final FilmInformation filmInformation;
+    private final LikeWriteBehind likeWriteBehind;
+    private final PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testConcurrentCreate() throws Exception {
+        List<FilmStorage> filmNodes = List.of(filmStorage, newFilmStorage());
+        List<UserStorage> userNodes = List.of(userStorage, new UserDbStorage(jdbcTemplate,
+                new FriendGraph(100, 1000, 20000), 500));
+        int filmsBefore = count("film");
+        int usersBefore = count("users");
+        Set<Integer> filmIds = ConcurrentHashMap.newKeySet();
+        Set<Integer> userIds = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(filmNodes.size() * THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int node = 0; node < filmNodes.size(); node++) {
+                FilmStorage films = filmNodes.get(node);
+                UserStorage users = userNodes.get(node);
+                for (int i = 0; i < THREADS; i++) {
+                    String prefix = "n" + node + "t" + i + "u";
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        for (int j = 0; j < CREATES_PER_THREAD; j++) {
+                            int filmId = films.create(film(prefix + j)).getId();
+                            assertTrue(filmIds.add(filmId), "Повторно выдан id фильма " + filmId);
+                            int userId = users.create(user(prefix + j)).getId();
+                            assertTrue(userIds.add(userId), "Повторно выдан id пользователя " + userId);
+                        }
+                        return null;
+                    }));
+                }
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        int created = filmNodes.size() * THREADS * CREATES_PER_THREAD;
+        assertEquals(created, filmIds.size());
+        assertEquals(created, userIds.size());
+        assertEquals(filmsBefore + created, count("film"));
+        assertEquals(usersBefore + created, count("users"));
+    }
+
+    @Test
+    public void testExistingIdsSkipped() {
+        //строка записана в обход последовательности, например до её появления
+        jdbcTemplate.update("INSERT INTO film (film_id, name, description, release_date, duration, mpa_id) " +
+                "VALUES (5000, 'Старый', 'Без последовательности', '2000-01-01', 100, 1)");
+        int id = 0;
+        try {
+            id = newFilmStorage().create(film("Новый")).getId();
+            assertTrue(id > 5000);
+        } finally {
+            jdbcTemplate.update("DELETE FROM film WHERE film_id IN (5000, ?)", id);
+        }
+    }
+
+    private FilmDbStorage newFilmStorage() {
+        return new FilmDbStorage(jdbcTemplate, filmInformation, new FilmPopularityIndex(),
+                new FilmLikeIndex(50, 1000), new FilmVersions(), new FilmSearchIndex(100, 64, 0.5f, 10000),
+                new FilmFacetIndex(), new FilmTrendingIndex(100), likeWriteBehind, transactionManager,
+                false, 1000, 500);
+    }
+
+    private int count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+
+    private static Film film(String name) {
+        return new Film(0, name, "Параллельное создание", LocalDate.of(2000, 1, 1), 100, 0,
+                new HashSet<>(), new FilmMpa(1, "G"));
+    }
+
+    private static User user(String login) {
+        return new User(0, null, login, login + "@mail.ru", LocalDate.of(1990, 1, 1), new HashSet<>());
+    }
+}
@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.controller.storage;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.FacetedPage;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.FilmSort;
+import ru.yandex.practicum.filmorate.storage.FilmFacetIndex;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FilmFacetIndexTest {
+    private static final Map<Integer, Integer> LIKES = Map.of(1, 5, 2, 1, 3, 9, 4, 0, 5, 5);
+    private static final int[] RANKED = {3, 1, 5, 2, 4};
+
+    @Test
+    public void testFilter() {
+        FilmFacetIndex index = new FilmFacetIndex();
+        index.rebuild(List.of(
+                film(1, new int[]{1, 2}, 1, 1994, 120),
+                film(2, new int[]{2}, 2, 1999, 90),
+                film(3, new int[]{3}, 1, 2005, 150),
+                film(4, new int[]{}, 3, 1994, 100),
+                film(5, new int[]{1}, 2, 2010, 110)));
+        FacetedPage<Integer> page = filter(index, new FilmFilter(null, null, null, null, FilmSort.ID), 0, 10);
+        assertEquals(List.of(1, 2, 3, 4, 5), page.getItems());
+        assertEquals(Map.of(1, 2, 2, 2, 3, 1), page.getFacets().get(FilmFacetIndex.GENRE_FACET));
+        //жанры внутри фильтра объединяются, разные фильтры пересекаются
+        page = filter(index, new FilmFilter(Set.of(1, 2), Set.of(2), null, null, FilmSort.ID), 0, 10);
+        assertEquals(List.of(2, 5), page.getItems());
+        assertEquals(2, page.getTotal());
+        //счётчики фасета не учитывают фильтр по самому фасету
+        assertEquals(Map.of(1, 1, 2, 2), page.getFacets().get(FilmFacetIndex.MPA_FACET));
+        assertEquals(Map.of(1, 1, 2, 1), page.getFacets().get(FilmFacetIndex.GENRE_FACET));
+        assertEquals(Map.of(1999, 1, 2010, 1), page.getFacets().get(FilmFacetIndex.YEAR_FACET));
+        page = filter(index, new FilmFilter(null, null, 1994, 2005, FilmSort.LIKES), 0, 10);
+        assertEquals(List.of(3, 1, 2, 4), page.getItems());
+        page = filter(index, new FilmFilter(null, null, null, 2000, FilmSort.RELEASE_DATE), 1, 2);
+        assertEquals(List.of(4, 2), page.getItems());
+        assertEquals(3, page.getTotal());
+        page = filter(index, new FilmFilter(Set.of(3), null, null, null, FilmSort.DURATION), 0, 10);
+        assertEquals(List.of(3), page.getItems());
+        //изменённый фильм переезжает в другие карты
+        index.index(film(3, new int[]{1}, 3, 1990, 80));
+        page = filter(index, new FilmFilter(Set.of(1), null, null, null, FilmSort.DURATION), 0, 10);
+        assertEquals(List.of(3, 5, 1), page.getItems());
+        page = filter(index, new FilmFilter(Set.of(3), null, null, null, FilmSort.ID), 0, 10);
+        assertEquals(List.of(), page.getItems());
+        assertEquals(Map.of(1, 3, 2, 2), page.getFacets().get(FilmFacetIndex.GENRE_FACET));
+    }
+
+    private static FacetedPage<Integer> filter(FilmFacetIndex index, FilmFilter filter, int offset, int limit) {
+        return index.filter(filter, offset, limit, id -> LIKES.getOrDefault(id, 0), FilmFacetIndexTest::ranked);
+    }
+
+    private static void ranked(IntPredicate consumer) {
+        for (int filmId : RANKED) {
+            if (!consumer.test(filmId)) {
+                return;
+            }
+        }
+    }
+
+    private static FilmFacetIndex.Attributes film(int id, int[] genres, int mpa, int year, int duration) {
+        return new FilmFacetIndex.Attributes(id, genres, mpa, LocalDate.of(year, 6, 1), duration);
+    }
+}
@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.controller.storage;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.FilmLikeIndex;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class FilmLikeIndexTest {
+
+    @Test
+    public void testRecommend() {
+        FilmLikeIndex index = new FilmLikeIndex(50, 1000);
+        int[] users = {1, 1, 1, 2, 2, 2, 2, 3, 3, 4};
+        int[] films = {10, 11, 12, 10, 11, 12, 13, 10, 14, 15};
+        index.rebuild(users, films, users.length);
+        //у второго пользователя сходство 3/4, у третьего 1/4, четвёртый не пересекается с первым
+        assertArrayEquals(new int[]{13, 14}, index.recommend(1, 10));
+        assertArrayEquals(new int[]{13}, index.recommend(1, 1));
+        index.remove(2, 13);
+        assertArrayEquals(new int[]{14}, index.recommend(1, 10));
+        index.add(4, 10);
+        index.add(4, 11);
+        assertArrayEquals(new int[]{15, 14}, index.recommend(1, 10));
+        //без лайков рекомендовать не на чем
+        assertArrayEquals(new int[0], index.recommend(5, 10));
+    }
+}
@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.controller.storage;
+
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ru.yandex.practicum.filmorate.controller.MemoryEngine;
+
+import java.io.IOException;
+
+@SpringBootTest(properties = {MemoryEngine.ENGINE, MemoryEngine.NO_SNAPSHOTS})
+@AutoConfigureTestDatabase
+public class FilmMemoryStorageTest extends FilmStorageTest {
+
+    @DynamicPropertySource
+    static void memoryPath(DynamicPropertyRegistry registry) throws IOException {
+        MemoryEngine.register(registry);
+    }
+}
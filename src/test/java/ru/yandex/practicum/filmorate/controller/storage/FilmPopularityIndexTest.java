@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.controller.storage;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.FilmPopularityIndex;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FilmPopularityIndexTest {
+    private static final int FILMS = 1000;
+
+    @Test
+    public void testReadersNeverSeePartialRebuild() throws Exception {
+        Map<Integer, Integer> likes = new HashMap<>();
+        for (int id = 1; id <= FILMS; id++) {
+            likes.put(id, id);
+        }
+        FilmPopularityIndex index = new FilmPopularityIndex();
+        index.rebuild(likes);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread rebuilder = new Thread(() -> {
+            while (running.get()) {
+                index.rebuild(likes);
+            }
+        });
+        rebuilder.start();
+        try {
+            for (int i = 0; i < 2000; i++) {
+                assertEquals(List.of(FILMS, FILMS - 1, FILMS - 2), index.top(3));
+                assertEquals(FILMS, index.getLikes(FILMS));
+            }
+        } finally {
+            running.set(false);
+            rebuilder.join();
+        }
+    }
+
+    @Test
+    public void testReadersNeverMissMovingFilm() throws Exception {
+        Map<Integer, Integer> likes = new HashMap<>();
+        for (int id = 1; id <= FILMS; id++) {
+            likes.put(id, id * 2);
+        }
+        FilmPopularityIndex index = new FilmPopularityIndex();
+        index.rebuild(likes);
+        int moving = FILMS / 2;
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread liker = new Thread(() -> {
+            while (running.get()) {
+                index.change(moving, 1);
+                index.change(moving, -1);
+            }
+        });
+        liker.start();
+        try {
+            for (int i = 0; i < 2000; i++) {
+                assertEquals(FILMS, index.top(FILMS).size());
+            }
+        } finally {
+            running.set(false);
+            liker.join();
+        }
+    }
+
+    @Test
+    public void testUnchangedLikesKeepFilm() {
+        FilmPopularityIndex index = new FilmPopularityIndex();
+        index.update(1, 5);
+        index.update(1, 5);
+        index.change(1, 0);
+        assertEquals(List.of(1), index.top(10));
+        assertEquals(5, index.getLikes(1));
+    }
+}
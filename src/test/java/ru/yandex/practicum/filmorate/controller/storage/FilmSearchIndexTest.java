@@ -0,0 +1,42 @@
+package ru.yandex.practicum.filmorate.controller.storage;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.FilmSearchIndex;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class FilmSearchIndexTest {
+
+    @Test
+    public void testSearch() {
+        //маленький кусок сборки, чтобы индекс собирался из нескольких частей параллельно
+        FilmSearchIndex index = new FilmSearchIndex(100, 64, 0.5f, 2);
+        int[] ids = {1, 2, 3, 4, 5};
+        String[] names = {"Крёстный отец", "Отель «Гранд Будапешт»", "The Godfather", "Ёлки", "Матрица"};
+        String[] descriptions = {"Семейная сага", "Комедия о консьерже", "Crime family saga", "Новогодняя комедия",
+                "Нео узнаёт правду о матрице"};
+        index.rebuild(ids, names, descriptions, ids.length);
+        Map<Integer, Integer> likes = Map.of(2, 100, 4, 0);
+        //«ё» и регистр не различаются
+        assertArrayEquals(new int[]{1}, index.search("КРЕСТНЫЙ", 10, id -> 0));
+        assertArrayEquals(new int[]{4}, index.search("елки", 10, id -> 0));
+        //префикс для автодополнения, при прочих равных выше фильм с большим числом лайков
+        assertArrayEquals(new int[]{2, 4}, index.search("коме", 10, id -> likes.getOrDefault(id, 0)));
+        assertArrayEquals(new int[]{2}, index.search("коме", 1, id -> likes.getOrDefault(id, 0)));
+        //совпадение в названии важнее совпадения в описании
+        assertArrayEquals(new int[]{5}, index.search("матриц", 10, id -> 0));
+        assertArrayEquals(new int[]{1, 2}, index.search("от", 10, id -> 0));
+        //фильм должен подходить под все слова запроса
+        assertArrayEquals(new int[]{3}, index.search("god saga", 10, id -> 0));
+        assertArrayEquals(new int[0], index.search("god комедия", 10, id -> 0));
+        assertArrayEquals(new int[0], index.search("  !! ", 10, id -> 0));
+        //изменения применяются к индексу сразу
+        index.index(3, "Крёстный отец 2", "Продолжение саги");
+        assertArrayEquals(new int[0], index.search("godfather", 10, id -> 0));
+        assertArrayEquals(new int[]{1, 3}, index.search("крестный отец", 10, id -> 0));
+        index.index(6, "Матрица: перезагрузка", null);
+        assertArrayEquals(new int[]{5, 6}, index.search("матрица", 10, id -> 0));
+    }
+}
@@ -0,0 +1,218 @@
+package ru.yandex.practicum.filmorate.controller.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.exception.FilmAlreadyExistException;
+import ru.yandex.practicum.filmorate.exception.FilmDataException;
+import ru.yandex.practicum.filmorate.exception.FilmNotExistException;
+import ru.yandex.practicum.filmorate.model.FacetedPage;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFilter;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.FilmMpa;
+import ru.yandex.practicum.filmorate.model.FilmSort;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmFacetIndex;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static ru.yandex.practicum.filmorate.controller.QueryCountAssertions.assertStatementsAtMost;
+
+//одни и те же сценарии для каждого движка хранилища. Хранилище в памяти не откатывается вместе с транзакцией
+//теста, поэтому каждый тест получает свой контекст с пустым хранилищем и фильмами 1 и 2
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public abstract class FilmStorageTest {
+    @Autowired
+    protected FilmStorage filmStorage;
+    @Autowired
+    protected UserStorage userStorage;
+    private Set<FilmGenre> filmGenres;
+
+    @BeforeEach
+    public void createFilms() {
+        //add 2 films
+        Set<FilmGenre> genres = new HashSet<>();
+        Film film = new Film(0, "nisi eiusmod", "adipisicing",
+                LocalDate.of(1967, 3, 25), 100, 0,
+                genres, new FilmMpa(1, "G"));
+        filmStorage.create(film);
+        genres.add(new FilmGenre(1, "Драма"));
+        Film film2 = new Film(0, "New film", "New film about friends",
+                LocalDate.of(1999, 4, 30), 120, 0,
+                genres, new FilmMpa(3, "PG-13"));
+        filmStorage.create(film2);
+    }
+
+    @Test
+    public void testFindFilmById() {
+        filmGenres = new LinkedHashSet<>();
+        //1
+        assertThat(filmStorage.getFilm(1))
+                .hasFieldOrPropertyWithValue("id", 1)
+                .hasFieldOrPropertyWithValue("name", "nisi eiusmod")
+                .hasFieldOrPropertyWithValue("releaseDate", LocalDate.of(1967, 3, 25))
+                .hasFieldOrPropertyWithValue("description", "adipisicing")
+                .hasFieldOrPropertyWithValue("duration", 100)
+                .hasFieldOrPropertyWithValue("mpa", new FilmMpa(1, "G"));
+        //2
+        filmGenres.add(new FilmGenre(1, "Комедия"));
+        assertThat(filmStorage.getFilm(2))
+                .hasFieldOrPropertyWithValue("id", 2)
+                .hasFieldOrPropertyWithValue("name", "New film")
+                .hasFieldOrPropertyWithValue("releaseDate", LocalDate.of(1999, 4, 30))
+                .hasFieldOrPropertyWithValue("description", "New film about friends")
+                .hasFieldOrPropertyWithValue("duration", 120)
+                .hasFieldOrPropertyWithValue("mpa", new FilmMpa(3, "PG-13"));
+        //ошибка
+        assertThrows(FilmNotExistException.class, () -> filmStorage.getFilm(99));
+    }
+
+    @Test
+    public void testFindAllFilms() {
+        assertThat(filmStorage.findAll())
+                .contains(filmStorage.getFilm(1), filmStorage.getFilm(2));
+    }
+
+    @Test
+    public void testFindAllFilmsPage() {
+        assertThat(filmStorage.findAll(1, 0))
+                .containsExactly(filmStorage.getFilm(1));
+        assertThat(filmStorage.findAll(1, 1))
+                .containsExactly(filmStorage.getFilm(2));
+        assertThat(filmStorage.findAll(10, 2)).isEmpty();
+    }
+
+    @Test
+    public void testExportAllFilms() {
+        List<Film> exported = new ArrayList<>();
+        filmStorage.exportAll(exported::add);
+        List<Film> films = filmStorage.findAll();
+        filmStorage.loadGenre(films);
+        assertThat(exported).containsExactlyInAnyOrderElementsOf(films);
+        assertThat(exported.get(1).getGenres()).containsExactly(new FilmGenre(1, "Комедия"));
+    }
+
+    @Test
+    public void testCreateFilm() {
+        filmGenres = new LinkedHashSet<>();
+        //ok
+        filmGenres.add(new FilmGenre(1, "Комедия"));
+        filmGenres.add(new FilmGenre(2, "Драма"));
+        Film film = new Film(0, "Test film 3", "New test film",
+                LocalDate.of(2000, 1, 1), 300, 0, filmGenres,
+                new FilmMpa(5, "NC-17"));
+        //вставка фильма и жанров, плюс резервирование диапазона id, когда текущий исчерпан
+        assertStatementsAtMost(3, () -> filmStorage.create(film));
+        assertEquals(List.of(new FilmGenre(1, "Комедия"), new FilmGenre(2, "Драма")),
+                new ArrayList<>(film.getGenres()));
+        assertThat(filmStorage.getFilm(3))
+                .hasFieldOrPropertyWithValue("id", 3)
+                .hasFieldOrPropertyWithValue("name", "Test film 3")
+                .hasFieldOrPropertyWithValue("releaseDate", LocalDate.of(2000, 1, 1))
+                .hasFieldOrPropertyWithValue("description", "New test film")
+                .hasFieldOrPropertyWithValue("duration", 300)
+                .hasFieldOrPropertyWithValue("mpa", new FilmMpa(5, "NC-17"));
+        //already added fail
+        assertThrows(FilmAlreadyExistException.class, () -> filmStorage.create(film));
+        //release_date fail
+        film.setId(0);
+        film.setReleaseDate(LocalDate.of(1800, 1, 1));
+        assertThrows(FilmDataException.class, () -> filmStorage.create(film));
+    }
+
+    @Test
+    public void testLikes() {
+        int liker = createUser("liker");
+        filmStorage.setLike(1, liker);
+        filmStorage.setLike(1, liker);
+        assertEquals(1, filmStorage.getFilm(1).getLikes(), "Повторный лайк не должен учитываться");
+        filmStorage.deleteLike(1, liker);
+        filmStorage.deleteLike(1, liker);
+        assertEquals(0, filmStorage.getFilm(1).getLikes(), "Повторное удаление лайка не должно учитываться");
+    }
+
+    @Test
+    public void testTopLikedFilms() {
+        //при равном количестве лайков выше фильм с меньшим id
+        assertThat(filmStorage.topLikedFilms(10))
+                .extracting(Film::getId)
+                .containsExactly(1, 2);
+        assertThat(filmStorage.topLikedFilms(1))
+                .containsExactly(filmStorage.getFilm(1));
+    }
+
+    @Test
+    public void testTrendingFilms() {
+        int trend = createUser("trend");
+        filmStorage.setLike(2, trend);
+        assertThat(filmStorage.trendingFilms(TrendingWindow.HOUR, 10))
+                .extracting(Film::getId)
+                .containsExactly(2);
+        filmStorage.deleteLike(2, trend);
+        assertThat(filmStorage.trendingFilms(TrendingWindow.WEEK, 10)).isEmpty();
+    }
+
+    @Test
+    public void testFilterFilms() {
+        FacetedPage<Film> page = filmStorage.findAll(new FilmFilter(Set.of(1), null, 1990, null, FilmSort.ID), 0, 10);
+        assertThat(page.getItems())
+                .extracting(Film::getId)
+                .containsExactly(2);
+        assertEquals(Map.of(1, 1), page.getFacets().get(FilmFacetIndex.GENRE_FACET));
+        assertEquals(Map.of(1999, 1), page.getFacets().get(FilmFacetIndex.YEAR_FACET));
+        page = filmStorage.findAll(new FilmFilter(null, Set.of(1, 3), null, null, FilmSort.DURATION), 1, 10);
+        assertEquals(2, page.getTotal());
+        assertThat(page.getItems())
+                .extracting(Film::getId)
+                .containsExactly(2);
+    }
+
+    @Test
+    public void testSearch() {
+        assertThat(filmStorage.search("new fil", 10))
+                .extracting(Film::getId)
+                .containsExactly(2);
+        assertThat(filmStorage.search("ADIPISICING", 10))
+                .extracting(Film::getId)
+                .containsExactly(1);
+        assertThat(filmStorage.search("friends nisi", 10)).isEmpty();
+    }
+
+    @Test
+    public void testPutFilm() {
+        filmGenres = new LinkedHashSet<>();
+        //ok
+        Film film = new Film(1, "Film Updated", "New test film",
+                LocalDate.of(1984, 4, 17), 190, 0, filmGenres,
+                new FilmMpa(2, "PG"));
+        //UPDATE с возвратом лайков и один MERGE жанров, без повторного чтения фильма
+        film.setGenres(Set.of(new FilmGenre(3, null), new FilmGenre(2, null)));
+        assertStatementsAtMost(2, () -> filmStorage.put(film));
+        assertEquals(List.of(new FilmGenre(2, "Драма"), new FilmGenre(3, "Мультфильм")),
+                new ArrayList<>(film.getGenres()));
+        film.setGenres(Set.of(new FilmGenre(3, null)));
+        assertStatementsAtMost(2, () -> filmStorage.put(film));
+        List<Film> stored = List.of(filmStorage.getFilm(1));
+        filmStorage.loadGenre(stored);
+        assertEquals(film, stored.get(0));
+        film.setGenres(filmGenres);
+        filmStorage.put(film);
+        assertEquals(film, filmStorage.getFilm(1), "Фильм не был обновлён");
+        //fail
+        film.setId(99);
+        assertThrows(FilmNotExistException.class, () -> filmStorage.put(film));
+    }
+
+    protected int createUser(String login) {
+        return userStorage.create(new User(0, null, login, login + "@mail.ru", LocalDate.of(1990, 1, 1),
+                new HashSet<>())).getId();
+    }
+}
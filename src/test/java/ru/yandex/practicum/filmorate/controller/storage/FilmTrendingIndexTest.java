@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.controller.storage;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
+import ru.yandex.practicum.filmorate.storage.FilmTrendingIndex;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FilmTrendingIndexTest {
+    private static final Instant NOW = Instant.parse("2024-03-10T12:00:00Z");
+
+    @Test
+    public void testWindows() {
+        FilmTrendingIndex index = new FilmTrendingIndex(100);
+        index.add(1, NOW.minus(Duration.ofMinutes(10)));
+        index.add(2, NOW.minus(Duration.ofHours(3)));
+        index.add(2, NOW.minus(Duration.ofHours(5)));
+        index.add(3, NOW.minus(Duration.ofDays(2)));
+        index.add(3, NOW.minus(Duration.ofDays(3)));
+        index.add(3, NOW.minus(Duration.ofDays(4)));
+        //старше недели — не учитывается
+        index.add(4, NOW.minus(Duration.ofDays(8)));
+        assertEquals(List.of(1), index.top(TrendingWindow.HOUR, 10, NOW));
+        assertEquals(List.of(2, 1), index.top(TrendingWindow.DAY, 10, NOW));
+        assertEquals(List.of(3, 2, 1), index.top(TrendingWindow.WEEK, 10, NOW));
+        assertEquals(List.of(3), index.top(TrendingWindow.WEEK, 1, NOW));
+        //снятый лайк вычитается из интервала, в котором был поставлен
+        index.remove(2, NOW.minus(Duration.ofHours(5)));
+        index.add(1, NOW.minus(Duration.ofMinutes(1)));
+        assertEquals(List.of(1, 2), index.top(TrendingWindow.DAY, 10, NOW));
+    }
+
+    @Test
+    public void testStaleBucketsExpire() {
+        FilmTrendingIndex index = new FilmTrendingIndex(100);
+        index.add(1, NOW);
+        index.add(1, NOW);
+        index.add(2, NOW);
+        //через неделю старые интервалы фильма 1 переиспользуются, а не суммируются с новыми
+        Instant later = NOW.plus(Duration.ofDays(7)).plus(Duration.ofHours(1));
+        index.add(2, later);
+        assertEquals(List.of(2), index.top(TrendingWindow.HOUR, 10, later));
+        assertEquals(List.of(2), index.top(TrendingWindow.WEEK, 10, later));
+        //равное число лайков — выше фильм с меньшим id
+        index.add(1, later);
+        assertEquals(List.of(1, 2), index.top(TrendingWindow.DAY, 10, later));
+    }
+}
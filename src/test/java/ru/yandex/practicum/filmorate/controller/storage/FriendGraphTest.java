@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.controller.storage;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.FriendGraph;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class FriendGraphTest {
+
+    @Test
+    public void testParallelSuggestionsMatchSequential() {
+        int users = 300;
+        int edges = 6000;
+        Random random = new Random(42);
+        int[] userIds = new int[edges];
+        int[] friendIds = new int[edges];
+        int size = 0;
+        FriendGraph sequential = new FriendGraph(100, 1000, Integer.MAX_VALUE);
+        FriendGraph parallel = new FriendGraph(100, 1000, 1);
+        for (int i = 0; i < edges; i++) {
+            int userId = random.nextInt(users) + 1;
+            int friendId = random.nextInt(users) + 1;
+            if (userId != friendId && !sequential.contains(userId, friendId)) {
+                sequential.add(userId, friendId);
+                userIds[size] = userId;
+                friendIds[size++] = friendId;
+            }
+        }
+        parallel.rebuild(userIds, friendIds, size);
+        for (int userId = 1; userId <= users; userId++) {
+            assertArrayEquals(sequential.getSuggestions(userId, 100), parallel.getSuggestions(userId, 100),
+                    "Рекомендации для пользователя " + userId + " не совпадают");
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package ru.yandex.practicum.filmorate.controller.storage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmMpa;
+import ru.yandex.practicum.filmorate.model.TrendingWindow;
+import ru.yandex.practicum.filmorate.storage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.FilmLikeIndex;
+import ru.yandex.practicum.filmorate.storage.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.LikeWriteBehind;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "filmorate.likes.write-behind.enabled=true",
+        "filmorate.likes.write-behind.path=target/likes-test.log",
+        "filmorate.likes.write-behind.flush-interval-ms=60000"})
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class LikeWriteBehindDbTest {
+    private final FilmDbStorage filmStorage;
+    private final LikeWriteBehind likeWriteBehind;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmLikeIndex likeIndex;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry registry;
+
+    @Test
+    public void testLikesReachDatabase() {
+        int filmId = filmStorage.create(new Film(0, "Write-behind", "Лайки пишутся в журнал",
+                LocalDate.of(2001, 1, 1), 100, 0, new HashSet<>(), new FilmMpa(1, "G"))).getId();
+        jdbcTemplate.update("INSERT INTO users (user_id, login, email) VALUES " +
+                "(2001, 'first', 'first@mail.ru'), (2002, 'second', 'second@mail.ru')");
+        filmStorage.setLike(filmId, 2001);
+        filmStorage.setLike(filmId, 2002);
+        filmStorage.setLike(filmId, 2002);
+        filmStorage.deleteLike(filmId, 2001);
+        filmStorage.setLike(filmId, 2001);
+        filmStorage.deleteLike(filmId, 2002);
+        //до переноса в БД лайки видны через журнал
+        assertEquals(1, filmStorage.getFilm(filmId).getLikes());
+        assertEquals(0, likes(filmId));
+
+        likeWriteBehind.drain();
+        assertEquals(1, likes(filmId));
+        assertEquals(1, filmStorage.getFilm(filmId).getLikes());
+        assertEquals(2001, jdbcTemplate.queryForObject(
+                "SELECT user_id FROM film_likes WHERE film_id = ?", Integer.class, filmId));
+
+        filmStorage.deleteLike(filmId, 2001);
+        likeWriteBehind.drain();
+        assertEquals(0, likes(filmId));
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM film_likes WHERE film_id = ?", Integer.class, filmId));
+    }
+
+    @Test
+    public void testDrainSurvivesCallerRollback() {
+        int filmId = createFilm("Откат импорта");
+        jdbcTemplate.update("INSERT INTO users (user_id, login, email) VALUES (2003, 'third', 'third@mail.ru')");
+        filmStorage.setLike(filmId, 2003);
+        //так журнал переносится при импорте лайков: внутри транзакции пачки, которая затем откатывается
+        transactionTemplate.executeWithoutResult(status -> {
+            likeWriteBehind.drain();
+            status.setRollbackOnly();
+        });
+        assertEquals(1, likes(filmId));
+        assertEquals(1, filmStorage.getFilm(filmId).getLikes());
+    }
+
+    @Test
+    public void testFailingEventQuarantined() {
+        int filmId = createFilm("Удалённый пользователь");
+        jdbcTemplate.update("INSERT INTO users (user_id, login, email) VALUES " +
+                "(2004, 'fourth', 'fourth@mail.ru'), (2005, 'fifth', 'fifth@mail.ru')");
+        filmStorage.setLike(filmId, 2004);
+        filmStorage.setLike(filmId, 2005);
+        //пользователь удалён до переноса лайка в БД: это событие не применится никогда
+        jdbcTemplate.update("DELETE FROM users WHERE user_id = 2005");
+        double quarantined = registry.counter("filmorate.likes.write-behind.quarantined").count();
+        likeWriteBehind.drain();
+        assertEquals(quarantined + 1, registry.counter("filmorate.likes.write-behind.quarantined").count());
+        assertEquals(1, likes(filmId));
+        assertEquals(2004, jdbcTemplate.queryForObject(
+                "SELECT user_id FROM film_likes WHERE film_id = ?", Integer.class, filmId));
+        //журнал не застрял: следующие события применяются
+        filmStorage.deleteLike(filmId, 2004);
+        likeWriteBehind.drain();
+        assertEquals(0, likes(filmId));
+    }
+
+    @Test
+    public void testQuarantinedEventReverted() {
+        int filmId = createFilm("Откат отклонённого лайка");
+        jdbcTemplate.update("INSERT INTO users (user_id, login, email) VALUES " +
+                "(2006, 'sixth', 'sixth@mail.ru'), (2007, 'seventh', 'seventh@mail.ru')");
+        filmStorage.setLike(filmId, 2006);
+        filmStorage.setLike(filmId, 2007);
+        assertEquals(2, popularityIndex.getLikes(filmId));
+        jdbcTemplate.update("DELETE FROM users WHERE user_id = 2007");
+        likeWriteBehind.drain();
+        //индексы в памяти совпадают с БД, а не с журналом
+        assertEquals(1, likes(filmId));
+        assertEquals(1, popularityIndex.getLikes(filmId));
+        assertEquals(1, filmStorage.getFilm(filmId).getLikes());
+        assertTrue(likeIndex.contains(2006, filmId));
+        assertFalse(likeIndex.contains(2007, filmId));
+        //лайк первого пользователя остаётся в трендах
+        assertTrue(filmStorage.trendingFilms(TrendingWindow.HOUR, 100).stream()
+                .anyMatch(film -> film.getId() == filmId));
+    }
+
+    private int createFilm(String name) {
+        return filmStorage.create(new Film(0, name, "Лайки пишутся в журнал",
+                LocalDate.of(2001, 1, 1), 100, 0, new HashSet<>(), new FilmMpa(1, "G"))).getId();
+    }
+
+    private int likes(int filmId) {
+        return jdbcTemplate.queryForObject("SELECT likes FROM film WHERE film_id = ?", Integer.class, filmId);
+    }
+}
@@ -0,0 +1,103 @@
+package ru.yandex.practicum.filmorate.controller.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.filmorate.storage.LikeWriteBehind;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LikeWriteBehindTest {
+    //в этих сценариях БД не отклоняет событий
+    private static final LikeWriteBehind.Compensator NO_COMPENSATION = (filmId, userId, like) -> {
+    };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void testReplayAfterCrash() {
+        Likes db = new Likes();
+        //интервал больше времени теста: фоновый поток не успевает ничего применить
+        LikeWriteBehind log = writeBehind();
+        log.start(db, NO_COMPENSATION);
+        Set<Long> liked = new TreeSet<>();
+        submit(log, liked, 1, 10, true);
+        submit(log, liked, 1, 11, true);
+        submit(log, liked, 2, 10, true);
+        submit(log, liked, 1, 10, false);
+        submit(log, liked, 1, 10, true);
+        //повторный лайк не меняет состояние и не попадает в журнал
+        submit(log, liked, 2, 10, true);
+        assertEquals(2, log.pendingDelta(1));
+        assertEquals(1, log.pendingDelta(2));
+        assertEquals(0, db.likes.size());
+
+        //экземпляр брошен без shutdown, как при падении процесса
+        LikeWriteBehind restarted = writeBehind();
+        restarted.start(db, NO_COMPENSATION);
+        assertEquals(Map.of(pair(1, 10), true, pair(1, 11), true, pair(2, 10), true), db.likes);
+        assertEquals(1, db.batches);
+        assertEquals(0, restarted.pendingDelta(1));
+        restarted.shutdown();
+    }
+
+    @Test
+    public void testResetDoesNotReplayOldEvents() {
+        Likes db = new Likes();
+        LikeWriteBehind log = writeBehind();
+        log.start(db, NO_COMPENSATION);
+        Set<Long> liked = new TreeSet<>();
+        submit(log, liked, 1, 10, true);
+        submit(log, liked, 1, 11, true);
+        log.drain();
+        assertEquals(2, db.likes.size());
+        //журнал начат заново: новое событие записано поверх старых
+        submit(log, liked, 1, 10, false);
+
+        Likes replayed = new Likes();
+        LikeWriteBehind restarted = writeBehind();
+        restarted.start(replayed, NO_COMPENSATION);
+        assertEquals(Map.of(pair(1, 10), false), replayed.likes);
+        restarted.shutdown();
+    }
+
+    private LikeWriteBehind writeBehind() {
+        return new LikeWriteBehind(new SimpleMeterRegistry(), true, dir.resolve("likes.log").toString(), 4096, 60_000, 100);
+    }
+
+    private static void submit(LikeWriteBehind log, Set<Long> liked, int filmId, int userId, boolean like) {
+        long pair = pair(filmId, userId);
+        log.submit(filmId, userId, like, () -> liked.contains(pair) != like,
+                () -> {
+                    if (like) {
+                        liked.add(pair);
+                    } else {
+                        liked.remove(pair);
+                    }
+                });
+    }
+
+    private static long pair(int filmId, int userId) {
+        return (long) filmId << 32 | userId;
+    }
+
+    private static class Likes implements LikeWriteBehind.BatchApplier {
+        private final Map<Long, Boolean> likes = new HashMap<>();
+        private int batches;
+
+        @Override
+        public void apply(int[] filmIds, int[] userIds, boolean[] liked, int size) {
+            batches++;
+            for (int i = 0; i < size; i++) {
+                likes.put(pair(filmIds[i], userIds[i]), liked[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ru.yandex.practicum.filmorate.controller.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ru.yandex.practicum.filmorate.controller.MemoryEngine;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = {MemoryEngine.ENGINE, MemoryEngine.NO_SNAPSHOTS})
+@AutoConfigureTestDatabase
+public class MemoryStorageContractTest extends StorageContractTest {
+    @Autowired
+    private FilmInformation filmInformation;
+
+    @DynamicPropertySource
+    static void memoryPath(DynamicPropertyRegistry registry) throws IOException {
+        MemoryEngine.register(registry);
+    }
+
+    @Test
+    public void testRecoverFromSnapshotAndJournal(@TempDir Path directory) throws IOException {
+        MemoryJournal journal = new MemoryJournal(directory.toString(), 0, false);
+        UserMemoryStorage users = userStorage(journal);
+        FilmMemoryStorage films = filmStorage(journal);
+        int first = users.create(user("first")).getId();
+        int second = users.create(user("second")).getId();
+        int kept = films.create(film("До снимка", LocalDate.of(1970, 1, 1), 1, 2)).getId();
+        int unliked = films.create(film("Лайк снят после снимка", LocalDate.of(1970, 1, 1), 1)).getId();
+        users.addFriend(first, second);
+        films.setLike(kept, first);
+        films.setLike(kept, second);
+        films.setLike(unliked, first);
+        journal.snapshot();
+
+        int added = films.create(film("После снимка", LocalDate.of(1971, 1, 1), 2, 3, 1)).getId();
+        Film changed = film("Изменён после снимка", LocalDate.of(1970, 1, 1), 4);
+        changed.setId(kept);
+        films.put(changed);
+        films.deleteLike(unliked, first);
+        films.setLike(added, second);
+        users.deleteFriend(first, second);
+        users.addFriend(second, first);
+        //запись, оборванная при сбое, не мешает восстановлению
+        try (Stream<Path> files = Files.list(directory)) {
+            Path segment = files.filter(file -> file.getFileName().toString().startsWith("wal-"))
+                    .max(Path::compareTo)
+                    .orElseThrow();
+            Files.write(segment, new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+        }
+
+        //прежний экземпляр брошен без остановки, как при сбое процесса
+        MemoryJournal recovered = new MemoryJournal(directory.toString(), 0, false);
+        UserMemoryStorage recoveredUsers = userStorage(recovered);
+        FilmMemoryStorage recoveredFilms = filmStorage(recovered);
+        assertEquals(export(films), export(recoveredFilms));
+        assertEquals(films.findAll(), recoveredFilms.findAll());
+        assertEquals(users.findAll(), recoveredUsers.findAll());
+        assertEquals(Set.of(first), recoveredUsers.getUser(second).getFriends());
+        assertEquals(Set.of(), recoveredUsers.getUser(first).getFriends());
+        assertEquals(2, recoveredFilms.getFilm(kept).getLikes());
+        assertEquals(0, recoveredFilms.getFilm(unliked).getLikes());
+        assertThat(recoveredFilms.getRecommendations(first, 10)).extracting(Film::getId).containsExactly(added);
+        assertThat(recoveredFilms.create(film("Новый", LocalDate.of(1972, 1, 1), 1)).getId()).isGreaterThan(added);
+    }
+
+    @Test
+    public void testFailedJournalWriteNotApplied(@TempDir Path directory) {
+        MemoryJournal journal = new MemoryJournal(directory.toString(), 0, false);
+        UserMemoryStorage users = userStorage(journal);
+        FilmMemoryStorage films = filmStorage(journal);
+        int fan = users.create(user("fan")).getId();
+        int other = users.create(user("other")).getId();
+        int filmId = films.create(film("Журнал", LocalDate.of(1970, 1, 1), 1)).getId();
+        films.setLike(filmId, fan);
+        //запись в журнал больше не проходит: изменения не должны появиться в памяти
+        journal.shutdown();
+        Film changed = film("Не записан", LocalDate.of(1970, 1, 1), 2);
+        changed.setId(filmId);
+        assertThrows(UncheckedIOException.class, () -> films.put(changed));
+        assertThrows(UncheckedIOException.class, () -> films.setLike(filmId, other));
+        assertThrows(UncheckedIOException.class, () -> films.deleteLike(filmId, fan));
+        assertThrows(UncheckedIOException.class, () -> users.addFriend(fan, other));
+        assertThrows(UncheckedIOException.class, () -> users.create(user("lost")));
+        assertEquals("Журнал", films.getFilm(filmId).getName());
+        assertEquals(1, films.getFilm(filmId).getLikes());
+        assertEquals(Set.of(), users.getUser(fan).getFriends());
+        assertThat(users.findAll()).extracting(User::getLogin).containsExactly("fan", "other");
+    }
+
+    private UserMemoryStorage userStorage(MemoryJournal journal) {
+        return new UserMemoryStorage(journal, new FriendGraph(100, 1000, 20000));
+    }
+
+    private FilmMemoryStorage filmStorage(MemoryJournal journal) {
+        return new FilmMemoryStorage(journal, filmInformation, new FilmPopularityIndex(), new FilmLikeIndex(50, 1000),
+                new FilmVersions(), new FilmSearchIndex(100, 64, 0.5f, 10000), new FilmFacetIndex(),
+                new FilmTrendingIndex(100));
+    }
+
+    private static List<Film> export(FilmStorage storage) {
+        List<Film> films = new ArrayList<>();
+        storage.exportAll(films::add);
+        return films;
+    }
+}
@@ -0,0 +1,210 @@
+package ru.yandex.practicum.filmorate.controller.storage;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import ru.yandex.practicum.filmorate.exception.FilmDataException;
+import ru.yandex.practicum.filmorate.exception.FilmNotExistException;
+import ru.yandex.practicum.filmorate.exception.UserDataException;
+import ru.yandex.practicum.filmorate.exception.UserNotExistException;
+import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.storage.FilmFacetIndex;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//одни и те же сценарии для каждого движка хранилища; сценарии создают свои фильмы и пользователей,
+//поэтому не зависят от порядка запуска
+public abstract class StorageContractTest {
+    @Autowired
+    protected FilmStorage filmStorage;
+    @Autowired
+    protected UserStorage userStorage;
+
+    @Test
+    public void testFilmLifecycle() {
+        Film created = filmStorage.create(film("Жизненный цикл", LocalDate.of(1980, 5, 5), 3, 2, 1));
+        assertEquals(0, created.getLikes());
+        assertEquals(List.of("Комедия", "Драма"), genreNames(created));
+        Film stored = filmStorage.getFilm(created.getId());
+        assertEquals("Жизненный цикл", stored.getName());
+        assertEquals(new FilmMpa(3, "PG-13"), stored.getMpa());
+        filmStorage.loadGenre(List.of(stored));
+        assertEquals(List.of("Комедия", "Драма"), genreNames(stored));
+
+        Film changed = film("Жизненный цикл 2", LocalDate.of(1981, 5, 5), 1, 6);
+        changed.setId(created.getId());
+        filmStorage.put(changed);
+        stored = filmStorage.getFilm(created.getId());
+        filmStorage.loadGenre(List.of(stored));
+        assertEquals("Жизненный цикл 2", stored.getName());
+        assertEquals(List.of("Боевик"), genreNames(stored));
+
+        Film missing = film("Нет такого", LocalDate.of(1981, 5, 5), 1);
+        missing.setId(Integer.MAX_VALUE - 1);
+        assertThrows(FilmNotExistException.class, () -> filmStorage.put(missing));
+        assertThrows(FilmDataException.class, () -> filmStorage.create(film("Слишком рано",
+                LocalDate.of(1800, 1, 1), 1)));
+        assertThrows(FilmNotExistException.class, () -> filmStorage.getFilm(Integer.MAX_VALUE - 1));
+    }
+
+    @Test
+    public void testFilmPages() {
+        Film first = filmStorage.create(film("Страница 1", LocalDate.of(1990, 1, 1), 1));
+        Film second = filmStorage.create(film("Страница 2", LocalDate.of(1990, 1, 1), 1));
+        assertThat(filmStorage.findAll(2, first.getId() - 1))
+                .extracting(Film::getId)
+                .containsExactly(first.getId(), second.getId());
+        assertThat(filmStorage.getFilms(List.of(second.getId(), Integer.MAX_VALUE - 1, first.getId())))
+                .extracting(Film::getId)
+                .containsExactly(second.getId(), first.getId());
+        assertThat(filmStorage.findExistingIds(List.of(first.getId(), Integer.MAX_VALUE - 1)))
+                .containsExactly(first.getId());
+        List<Film> exported = new ArrayList<>();
+        filmStorage.exportAll(exported::add);
+        assertThat(exported).extracting(Film::getId).contains(first.getId(), second.getId()).isSorted();
+    }
+
+    @Test
+    public void testLikesTopAndRecommendations() {
+        int first = filmStorage.create(film("Лайки 1", LocalDate.of(2000, 1, 1), 1)).getId();
+        int second = filmStorage.create(film("Лайки 2", LocalDate.of(2000, 1, 1), 1)).getId();
+        int fan = userStorage.create(user("fan")).getId();
+        int other = userStorage.create(user("other")).getId();
+        filmStorage.setLike(first, fan);
+        filmStorage.setLike(first, fan);
+        filmStorage.setLike(second, fan);
+        filmStorage.setLike(second, other);
+        assertEquals(1, filmStorage.getFilm(first).getLikes());
+        assertEquals(2, filmStorage.getFilm(second).getLikes());
+        List<Integer> top = filmStorage.topLikedFilms(1000).stream().map(Film::getId).collect(Collectors.toList());
+        assertThat(top.indexOf(second)).isNotNegative().isLessThan(top.indexOf(first));
+        assertThat(filmStorage.getRecommendations(other, 10)).extracting(Film::getId).containsExactly(first);
+        assertThat(filmStorage.trendingFilms(TrendingWindow.HOUR, 1000)).extracting(Film::getId)
+                .contains(first, second);
+
+        long version = filmStorage.getTopLikedFilmsVersion(1000);
+        filmStorage.deleteLike(second, other);
+        filmStorage.deleteLike(second, other);
+        assertEquals(1, filmStorage.getFilm(second).getLikes());
+        assertThat(filmStorage.getTopLikedFilmsVersion(1000)).isNotEqualTo(version);
+        assertThat(filmStorage.getRecommendations(other, 10)).isEmpty();
+
+        filmStorage.setLikes(List.of(new FilmLike(first, other), new FilmLike(second, fan)));
+        assertEquals(2, filmStorage.getFilm(first).getLikes());
+        assertEquals(1, filmStorage.getFilm(second).getLikes());
+    }
+
+    @Test
+    public void testFriends() {
+        int first = userStorage.create(user("first")).getId();
+        int second = userStorage.create(user("second")).getId();
+        int third = userStorage.create(user("third")).getId();
+        userStorage.addFriend(first, second);
+        userStorage.addFriend(first, third);
+        userStorage.addFriend(second, third);
+        assertThat(userStorage.getFriends(first)).extracting(User::getId).containsExactly(second, third);
+        assertThat(userStorage.getMutualFriends(first, second)).extracting(User::getId).containsExactly(third);
+        assertThat(userStorage.getFriendSuggestions(third, 10)).isEmpty();
+        assertThrows(UserDataException.class, () -> userStorage.addFriend(first, second));
+        assertThrows(UserNotExistException.class, () -> userStorage.addFriend(first, Integer.MAX_VALUE - 1));
+
+        userStorage.deleteFriend(first, third);
+        assertThrows(UserDataException.class, () -> userStorage.deleteFriend(first, third));
+        assertEquals(Set.of(second), userStorage.getUser(first).getFriends());
+        assertThat(userStorage.getFriendSuggestions(first, 10)).extracting(User::getId).containsExactly(third);
+
+        userStorage.setFriends(first, List.of(third));
+        assertEquals(Set.of(third), userStorage.getUser(first).getFriends());
+        assertThrows(UserNotExistException.class, () -> userStorage.setFriends(first, List.of(Integer.MAX_VALUE - 1)));
+        assertThrows(UserDataException.class, () -> userStorage.setFriends(first, List.of(first)));
+        assertEquals("third", userStorage.getUser(third).getName());
+    }
+
+    @Test
+    public void testBatchWrites() {
+        List<Film> films = List.of(film("Пачка 1", LocalDate.of(1995, 1, 1), 1, 2, 1),
+                film("Пачка 2", LocalDate.of(1995, 1, 1), 2));
+        filmStorage.createAll(films);
+        int first = films.get(0).getId();
+        int second = films.get(1).getId();
+        assertThat(second).isGreaterThan(first).isGreaterThan(0);
+        Film stored = filmStorage.getFilm(first);
+        filmStorage.loadGenre(List.of(stored));
+        assertEquals("Пачка 1", stored.getName());
+        assertEquals(List.of("Комедия", "Драма"), genreNames(stored));
+
+        List<User> users = List.of(user("batch1"), user("batch2"));
+        userStorage.createAll(users);
+        int fan = users.get(0).getId();
+        int other = users.get(1).getId();
+        assertEquals("batch1", userStorage.getUser(fan).getName());
+        assertEquals(Set.of(fan, other), userStorage.findExistingIds(List.of(fan, other, Integer.MAX_VALUE - 1)));
+
+        //повторы в пачке и уже поставленные лайки не учитываются дважды
+        filmStorage.setLike(second, other);
+        filmStorage.setLikes(List.of(new FilmLike(first, fan), new FilmLike(first, other),
+                new FilmLike(first, fan), new FilmLike(second, other)));
+        assertEquals(2, filmStorage.getFilm(first).getLikes());
+        assertEquals(1, filmStorage.getFilm(second).getLikes());
+
+        userStorage.addFriends(List.of(new Friendship(fan, other), new Friendship(fan, other)));
+        userStorage.addFriends(List.of(new Friendship(fan, other), new Friendship(other, fan)));
+        assertEquals(Set.of(other), userStorage.getUser(fan).getFriends());
+        assertEquals(Set.of(fan), userStorage.getUser(other).getFriends());
+    }
+
+    //оба движка отклоняют значения длиннее столбцов schema.sql, а пачка с таким значением не получает id
+    @Test
+    public void testColumnLengths() {
+        String longName = "Название длиннее шестидесяти четырёх символов, которое не влезет в столбец";
+        List<Film> films = List.of(film("Перед длинным", LocalDate.of(1995, 1, 1), 1),
+                film(longName, LocalDate.of(1995, 1, 1), 1));
+        assertThrows(DataIntegrityViolationException.class, () -> filmStorage.createAll(films));
+        assertEquals(List.of(0, 0), films.stream().map(Film::getId).collect(Collectors.toList()));
+        Film created = filmStorage.create(film("Длина столбцов", LocalDate.of(1995, 1, 1), 1));
+        created.setName(longName);
+        assertThrows(DataIntegrityViolationException.class, () -> filmStorage.put(created));
+        assertThrows(DataIntegrityViolationException.class, () -> filmStorage.create(film(longName,
+                LocalDate.of(1995, 1, 1), 1)));
+
+        List<User> users = List.of(user("short"), user("login_longer_than_20"));
+        assertThrows(DataIntegrityViolationException.class, () -> userStorage.createAll(users));
+        assertEquals(List.of(0, 0), users.stream().map(User::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testSearchAndFilter() {
+        int found = filmStorage.create(film("Квазипроцессор", LocalDate.of(1902, 3, 3), 4, 6)).getId();
+        filmStorage.create(film("Квазипроцессор", LocalDate.of(1902, 3, 3), 2, 6));
+        assertThat(filmStorage.search("квазипроц", 10)).extracting(Film::getId).contains(found);
+        FacetedPage<Film> page = filmStorage.findAll(new FilmFilter(Set.of(6), Set.of(4), 1902, 1902,
+                FilmSort.ID), 0, 10);
+        assertEquals(1, page.getTotal());
+        assertThat(page.getItems()).extracting(Film::getId).containsExactly(found);
+        assertEquals(Map.of(2, 1, 4, 1), page.getFacets().get(FilmFacetIndex.MPA_FACET));
+    }
+
+    protected static Film film(String name, LocalDate releaseDate, int mpaId, int... genreIds) {
+        Set<FilmGenre> genres = new LinkedHashSet<>();
+        for (int genreId : genreIds) {
+            genres.add(new FilmGenre(genreId, null));
+        }
+        return new Film(0, name, "Описание " + name, releaseDate, 100, 0, genres, new FilmMpa(mpaId, null));
+    }
+
+    protected static User user(String login) {
+        return new User(0, null, login, login + "@mail.ru", LocalDate.of(1990, 1, 1), new HashSet<>());
+    }
+
+    protected static List<String> genreNames(Film film) {
+        return film.getGenres().stream().map(FilmGenre::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,190 @@
+package ru.yandex.practicum.filmorate.controller.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.exception.*;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.yandex.practicum.filmorate.controller.QueryCountAssertions.assertStatementsAtMost;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+//одни и те же сценарии для каждого движка хранилища; как и в FilmStorageTest, каждый тест получает
+//свой контекст с пользователями 1 и 2
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public abstract class UserStorageTest {
+    @Autowired
+    protected UserStorage userStorage;
+
+    @BeforeEach
+    public void createUsers() {
+        //add 2 users
+        User user = new User(0, "Nick Name", "dolore", "mail@mail.ru",
+                LocalDate.of(1946, 8, 20), new HashSet<>());
+        userStorage.create(user);
+        User user2 = new User(0, "friend adipisicing", "friend", "friend@mail.ru",
+                LocalDate.of(1976, 8, 20), new HashSet<>());
+        userStorage.create(user2);
+    }
+
+    @Test
+    public void testGetUser() {
+        assertThat(userStorage.getUser(1))
+                .hasFieldOrPropertyWithValue("id", 1)
+                .hasFieldOrPropertyWithValue("name", "Nick Name")
+                .hasFieldOrPropertyWithValue("login", "dolore")
+                .hasFieldOrPropertyWithValue("birthday", LocalDate.of(1946, 8, 20))
+                .hasFieldOrPropertyWithValue("email", "mail@mail.ru");
+        assertThat(userStorage.getUser(2))
+                .hasFieldOrPropertyWithValue("id", 2)
+                .hasFieldOrPropertyWithValue("name", "friend adipisicing")
+                .hasFieldOrPropertyWithValue("login", "friend")
+                .hasFieldOrPropertyWithValue("birthday", LocalDate.of(1976, 8, 20))
+                .hasFieldOrPropertyWithValue("email", "friend@mail.ru");
+    }
+
+    @Test
+    public void testFindAllUsers() {
+        assertThat(userStorage.findAll())
+                .contains(userStorage.getUser(1), userStorage.getUser(2));
+    }
+
+    @Test
+    public void testCreateUser() {
+        //ok
+        User user = new User(0, "Test Name", "test", "test@mail.ru",
+                LocalDate.of(2000, 1, 1), new HashSet<>());
+        userStorage.create(user);
+        assertThat(userStorage.getUser(3))
+                .hasFieldOrPropertyWithValue("id", 3)
+                .hasFieldOrPropertyWithValue("name", "Test Name")
+                .hasFieldOrPropertyWithValue("login", "test")
+                .hasFieldOrPropertyWithValue("birthday", LocalDate.of(2000, 1, 1))
+                .hasFieldOrPropertyWithValue("email", "test@mail.ru");
+        //already added fail
+        assertThrows(UserAlreadyExistException.class, () -> userStorage.create(user));
+    }
+
+    @Test
+    public void testPutUser() {
+        //ok
+        User user = new User(1, "Updated Name", "dolore", "mail_updated@mail.ru",
+                LocalDate.of(1946, 8, 20), new HashSet<>());
+        userStorage.update(user);
+        assertEquals(user, userStorage.getUser(1), "Фильм не был обновлён");
+        //fail
+        user.setId(99);
+        assertThrows(UserNotExistException.class, () -> userStorage.update(user));
+    }
+
+    @Test
+    public void testFriends() {
+        userStorage.addFriend(1, 2);
+        assertEquals(Set.of(2), userStorage.getUser(1).getFriends(), "Друг не был добавлен");
+        assertThat(userStorage.getFriends(1))
+                .extracting(User::getId)
+                .containsExactly(2);
+        List<User> users = userStorage.findAll();
+        userStorage.loadFriends(users);
+        assertThat(users)
+                .filteredOn(user -> user.getId() == 1)
+                .extracting(User::getFriends)
+                .containsExactly(Set.of(2));
+        userStorage.addFriend(2, 1);
+        assertThat(userStorage.getMutualFriends(1, 2)).isEmpty();
+        //общий друг
+        int mutual = createUser("mutual");
+        userStorage.addFriend(1, mutual);
+        userStorage.addFriend(2, mutual);
+        assertThat(userStorage.getMutualFriends(1, 2))
+                .extracting(User::getId)
+                .containsExactly(mutual);
+        assertThat(userStorage.getFriends(1))
+                .extracting(User::getId)
+                .containsExactly(2, mutual);
+        userStorage.deleteFriend(2, mutual);
+        assertThat(userStorage.getMutualFriends(1, 2)).isEmpty();
+        //fail
+        assertThrows(UserDataException.class, () -> userStorage.addFriend(1, 2));
+        assertThrows(UserNotExistException.class, () -> userStorage.addFriend(1, 99));
+        userStorage.deleteFriend(1, 2);
+        assertThat(userStorage.getFriends(1))
+                .extracting(User::getId)
+                .containsExactly(mutual);
+    }
+
+    @Test
+    public void testFriendSuggestions() {
+        int first = createUser("first");
+        int second = createUser("second");
+        int third = createUser("third");
+        userStorage.addFriend(1, 2);
+        userStorage.addFriend(1, third);
+        userStorage.addFriend(2, 1);
+        userStorage.addFriend(2, first);
+        userStorage.addFriend(2, second);
+        userStorage.addFriend(third, second);
+        assertThat(userStorage.getFriendSuggestions(1, 10))
+                .extracting(User::getId)
+                .containsExactly(second, first);
+        assertThat(userStorage.getFriendSuggestions(1, 1))
+                .extracting(User::getId)
+                .containsExactly(second);
+        //изменение у друга сбрасывает закэшированные рекомендации
+        userStorage.addFriend(third, first);
+        assertThat(userStorage.getFriendSuggestions(1, 10))
+                .extracting(User::getId)
+                .containsExactly(first, second);
+        userStorage.addFriend(1, first);
+        assertThat(userStorage.getFriendSuggestions(1, 10))
+                .extracting(User::getId)
+                .containsExactly(second);
+        //fail
+        assertThrows(UserNotExistException.class, () -> userStorage.getFriendSuggestions(99, 10));
+    }
+
+    @Test
+    public void testSetFriends() {
+        List<Integer> ids = createUsers(20);
+        int id = ids.get(0);
+        userStorage.addFriend(ids.get(1), id);
+        //число запросов не зависит от количества друзей
+        assertStatementsAtMost(4, () -> userStorage.setFriends(id, List.of(ids.get(1))));
+        assertStatementsAtMost(4, () -> userStorage.setFriends(id, ids.subList(2, 20)));
+        assertThat(userStorage.getFriends(id)).hasSize(18);
+        //замена списка: часть друзей удаляется, часть добавляется
+        userStorage.setFriends(id, List.of(ids.get(1), ids.get(2)));
+        assertThat(userStorage.getFriends(id))
+                .extracting(User::getId)
+                .containsExactly(ids.get(1), ids.get(2));
+        userStorage.setFriends(id, List.of());
+        assertThat(userStorage.getFriends(id)).isEmpty();
+        //fail
+        assertThrows(UserDataException.class, () -> userStorage.setFriends(id, List.of(id)));
+        assertThrows(UserNotExistException.class, () -> userStorage.setFriends(id, List.of(99)));
+        assertThrows(UserNotExistException.class, () -> userStorage.setFriends(99, List.of(id)));
+    }
+
+    protected int createUser(String login) {
+        return userStorage.create(new User(0, null, login, login + "@mail.ru", LocalDate.of(1990, 1, 1),
+                new HashSet<>())).getId();
+    }
+
+    protected List<Integer> createUsers(int count) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(createUser("user" + i));
+        }
+        return ids;
+    }
+}